@@ -0,0 +1,73 @@
+package com.edorogush.debijenkorftask.service;
+
+import com.edorogush.debijenkorftask.model.ImageType.ScalingQuality;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of {@link ImageScaler#scale} for every {@link ScalingQuality} compared with {@code
+ * Image.getScaledInstance} which was used to scale images before.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ImageScalerBenchmark {
+  private static final int WIDTH_PX = 200;
+  private static final int HEIGHT_PX = 200;
+
+  @Param({"1000", "3000", "8000"})
+  private int widthPx;
+
+  private BufferedImage image;
+
+  @Setup
+  public void setUp() throws IOException {
+    image = ImageIO.read(new ByteArrayInputStream(SyntheticImages.generate(widthPx, "jpg")));
+  }
+
+  @Benchmark
+  public BufferedImage scaledInstance() {
+    final Image scaledInstance =
+        image.getScaledInstance(WIDTH_PX, HEIGHT_PX, Image.SCALE_DEFAULT);
+    final BufferedImage scaled =
+        new BufferedImage(WIDTH_PX, HEIGHT_PX, BufferedImage.TYPE_INT_ARGB);
+    final Graphics2D graphics = scaled.createGraphics();
+    graphics.drawImage(scaledInstance, 0, 0, null);
+    graphics.dispose();
+    return scaled;
+  }
+
+  @Benchmark
+  public BufferedImage fast() {
+    return ImageScaler.scale(image, WIDTH_PX, HEIGHT_PX, ScalingQuality.FAST);
+  }
+
+  @Benchmark
+  public BufferedImage balanced() {
+    return ImageScaler.scale(image, WIDTH_PX, HEIGHT_PX, ScalingQuality.BALANCED);
+  }
+
+  @Benchmark
+  public BufferedImage high() {
+    return ImageScaler.scale(image, WIDTH_PX, HEIGHT_PX, ScalingQuality.HIGH);
+  }
+}
@@ -0,0 +1,55 @@
+package com.edorogush.debijenkorftask.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of {@link ImageSizeProcessor#processImage} for every predefined imageType, i.e. for
+ * every {@link com.edorogush.debijenkorftask.model.ImageType.ScaleType}, over synthetic originals
+ * of different size and format.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ImageSizeProcessorBenchmark {
+  @Param({"thumbnail", "technical-drawing", "icon"})
+  private String imageType;
+
+  @Param({"200", "1000", "3000", "8000"})
+  private int widthPx;
+
+  @Param({"jpg", "png"})
+  private String format;
+
+  private final ImageSizeProcessor imageProcessor =
+      new ImageSizeProcessor(new SimpleMeterRegistry());
+  private Resource original;
+
+  @Setup
+  public void setUp() throws IOException {
+    original = new ByteArrayResource(SyntheticImages.generate(widthPx, format));
+  }
+
+  @Benchmark
+  public Resource processImage() {
+    return imageProcessor.processImage(original, imageType);
+  }
+}
@@ -0,0 +1,31 @@
+package com.edorogush.debijenkorftask.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/** Benchmark of {@link StorageLocationResolver#resolve} for file names of different length. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StorageLocationResolverBenchmark {
+  @Param({"abc.jpg", "abcdef.jpg", "abcdefghijklmnop.jpg", "abc_defg_hijklmnop_qrstuvwxyz.jpeg"})
+  private String fileName;
+
+  @Benchmark
+  public String resolve() {
+    return StorageLocationResolver.resolve(fileName);
+  }
+}
@@ -0,0 +1,44 @@
+package com.edorogush.debijenkorftask.service;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/** Utility class to generate encoded images used as benchmark input. */
+final class SyntheticImages {
+  private static final long SEED = 42;
+
+  private SyntheticImages() {}
+
+  /**
+   * Method to generate image of 4:3 aspect ratio. Image consists of gradient background with
+   * random shapes over it, so that it is compressed like a photo rather than a flat picture.
+   *
+   * @param width width of the image in pixels.
+   * @param format image format name, e.g. "jpg" or "png".
+   * @return encoded image.
+   */
+  static byte[] generate(int width, String format) throws IOException {
+    final int height = width * 3 / 4;
+    final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    final Graphics2D graphics = image.createGraphics();
+    graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+    graphics.setPaint(new GradientPaint(0, 0, Color.ORANGE, width, height, Color.BLUE));
+    graphics.fillRect(0, 0, width, height);
+    final Random random = new Random(SEED);
+    final int shapes = Math.max(16, width / 8);
+    for (int i = 0; i < shapes; i++) {
+      graphics.setColor(new Color(random.nextInt(0x1000000)));
+      final int size = 1 + random.nextInt(Math.max(1, width / 10));
+      graphics.fillOval(random.nextInt(width), random.nextInt(height), size, size);
+    }
+    graphics.dispose();
+    try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
+      ImageIO.write(image, format, outputStream);
+      return outputStream.toByteArray();
+    }
+  }
+}
@@ -6,11 +6,12 @@ import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
 import org.springframework.context.annotation.Bean;
-
-import java.net.http.HttpClient;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /** Main entry point. */
 @SpringBootApplication(exclude = {DataSourceAutoConfiguration.class})
+@EnableScheduling
 public class Application {
 
   public static void main(String[] args) {
@@ -18,11 +19,7 @@ public class Application {
   }
 
   @Bean
-  public HttpClient httpClient() {
-    return HttpClient.newHttpClient();
-  }
-
-  @Bean
+  @Lazy
   public AmazonS3 amazonS3() {
     return AmazonS3ClientBuilder.standard().build();
   }
@@ -0,0 +1,150 @@
+package com.edorogush.debijenkorftask;
+
+import com.edorogush.debijenkorftask.service.AmazonS3FileStorage;
+import com.edorogush.debijenkorftask.service.DiskCacheFileStorage;
+import com.edorogush.debijenkorftask.service.EvictionPolicy;
+import com.edorogush.debijenkorftask.service.FileStorage;
+import com.edorogush.debijenkorftask.service.IndexedFileStorage;
+import com.edorogush.debijenkorftask.service.LocalFileStorage;
+import com.edorogush.debijenkorftask.service.LruEvictionPolicy;
+import com.edorogush.debijenkorftask.service.MemoryCacheFileStorage;
+import com.edorogush.debijenkorftask.service.MeteredFileStorage;
+import com.edorogush.debijenkorftask.service.TinyLfuEvictionPolicy;
+import com.edorogush.debijenkorftask.service.WriteBehindFileStorage;
+import com.edorogush.debijenkorftask.service.WriteBehindUploader;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Configuration of {@link FileStorage} used by application. Images are kept by the backend chosen
+ * with {@code fileStorage.backend} property: {@link AmazonS3FileStorage} or {@link
+ * LocalFileStorage}. Cache tiers enabled by properties are stacked over the backend: memory cache
+ * is checked first, then disk cache. Items are put to the backend through {@link
+ * WriteBehindFileStorage}, in background if write-behind is enabled, otherwise only items the
+ * caller does not wait for. Requests to the backend, and to the whole stack if any tier is enabled,
+ * are measured by {@link MeteredFileStorage}. If index is enabled, names of all items are kept by
+ * {@link IndexedFileStorage} above all tiers, so requests for absent items skip them all. The index
+ * is built again periodically.
+ */
+@Configuration
+public class FileStorageConfiguration {
+  private static final Logger logger = LogManager.getLogger();
+  /** Expected average size of processed image, used to size frequency sketch of the cache. */
+  private static final long AVERAGE_ITEM_SIZE_BYTES = 32 * 1024;
+
+  @Bean
+  @Primary
+  public FileStorage fileStorage(
+      ObjectProvider<AmazonS3FileStorage> amazonS3FileStorage,
+      WriteBehindUploader writeBehindUploader,
+      MeterRegistry meterRegistry,
+      @Value("${fileStorage.backend}") String backend,
+      @Value("${fileStorage.local.root-dir}") String localRootDir,
+      @Value("${fileStorage.write-behind.enabled}") boolean writeBehindEnabled,
+      @Value("${fileStorage.memory-cache.enabled}") boolean memoryCacheEnabled,
+      @Value("${fileStorage.memory-cache.max-size-mb}") long memoryCacheMaxSizeMb,
+      @Value("${fileStorage.memory-cache.max-item-size-kb}") long memoryCacheMaxItemSizeKb,
+      @Value("${fileStorage.memory-cache.eviction-policy}") String memoryCacheEvictionPolicy,
+      @Value("${fileStorage.disk-cache.enabled}") boolean diskCacheEnabled,
+      @Value("${fileStorage.disk-cache.root-dir}") String diskCacheRootDir,
+      @Value("${fileStorage.disk-cache.max-size-mb}") long diskCacheMaxSizeMb,
+      @Value("${fileStorage.index.enabled}") boolean indexEnabled,
+      @Value("${fileStorage.index.rebuild-interval-seconds}") long indexRebuildIntervalSeconds) {
+    FileStorage fileStorage =
+        new MeteredFileStorage(
+            backend(backend, amazonS3FileStorage, localRootDir), backend, meterRegistry);
+    // images processed ahead of requests are put in background even if write-behind is disabled
+    fileStorage = new WriteBehindFileStorage(fileStorage, writeBehindUploader, writeBehindEnabled);
+    if (diskCacheEnabled) {
+      final DiskCacheFileStorage diskCache =
+          new DiskCacheFileStorage(
+              fileStorage, Paths.get(diskCacheRootDir), diskCacheMaxSizeMb * 1024 * 1024);
+      diskCache.bindTo(meterRegistry);
+      fileStorage = diskCache;
+    }
+    if (memoryCacheEnabled) {
+      final long maxSizeBytes = memoryCacheMaxSizeMb * 1024 * 1024;
+      final MemoryCacheFileStorage memoryCache =
+          new MemoryCacheFileStorage(
+              fileStorage,
+              evictionPolicy(memoryCacheEvictionPolicy, maxSizeBytes),
+              maxSizeBytes,
+              memoryCacheMaxItemSizeKb * 1024);
+      memoryCache.bindTo(meterRegistry);
+      fileStorage = memoryCache;
+    }
+    if (writeBehindEnabled || diskCacheEnabled || memoryCacheEnabled) {
+      fileStorage = new MeteredFileStorage(fileStorage, "tiered", meterRegistry);
+    }
+    if (indexEnabled) {
+      final Duration rebuildInterval = Duration.ofSeconds(indexRebuildIntervalSeconds);
+      // absence of item is trusted until the next rebuild is late
+      final IndexedFileStorage index =
+          new IndexedFileStorage(fileStorage, rebuildInterval.multipliedBy(2));
+      index.bindTo(meterRegistry);
+      buildInBackground(index, rebuildInterval);
+      fileStorage = index;
+    }
+    return fileStorage;
+  }
+
+  private FileStorage backend(
+      String name, ObjectProvider<AmazonS3FileStorage> amazonS3FileStorage, String localRootDir) {
+    switch (name) {
+      case "amazon-s3":
+        return amazonS3FileStorage.getObject();
+      case "local":
+        return new LocalFileStorage(Paths.get(localRootDir));
+      default:
+        throw new IllegalArgumentException(
+            String.format(
+                "Unknown storage backend: %s. Should be one of [amazon-s3, local].", name));
+    }
+  }
+
+  /**
+   * Index is built without delaying startup, requests are delegated to storage meanwhile. It is
+   * built again periodically to see items put and deleted by other instances.
+   */
+  private void buildInBackground(IndexedFileStorage index, Duration rebuildInterval) {
+    final CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("storage-index-");
+    threadFactory.setDaemon(true);
+    Executors.newSingleThreadScheduledExecutor(threadFactory)
+        .scheduleWithFixedDelay(
+            () -> {
+              try {
+                index.build();
+              } catch (RuntimeException e) {
+                logger.error("Storage index is not built, the previous one is used.", e);
+              }
+            },
+            0,
+            rebuildInterval.toMillis(),
+            TimeUnit.MILLISECONDS);
+  }
+
+  private EvictionPolicy evictionPolicy(String name, long maxSizeBytes) {
+    switch (name) {
+      case "lru":
+        return new LruEvictionPolicy();
+      case "tiny-lfu":
+        return new TinyLfuEvictionPolicy(
+            (int) Math.min(Integer.MAX_VALUE, maxSizeBytes / AVERAGE_ITEM_SIZE_BYTES));
+      default:
+        throw new IllegalArgumentException(
+            String.format("Unknown eviction policy: %s. Should be one of [lru, tiny-lfu].", name));
+    }
+  }
+}
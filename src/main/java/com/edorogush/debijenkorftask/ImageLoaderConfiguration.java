@@ -0,0 +1,42 @@
+package com.edorogush.debijenkorftask;
+
+import com.edorogush.debijenkorftask.service.HttpRequestImageLoader;
+import com.edorogush.debijenkorftask.service.ImageLoader;
+import com.edorogush.debijenkorftask.service.ResilientImageLoader;
+import io.micrometer.core.instrument.MeterRegistry;
+import net.jodah.failsafe.CircuitBreaker;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.io.Resource;
+
+import java.time.Duration;
+
+/**
+ * Configuration of {@link ImageLoader} used by application: {@link HttpRequestImageLoader} behind
+ * circuit breaker and hedged requests of {@link ResilientImageLoader}.
+ */
+@Configuration
+public class ImageLoaderConfiguration {
+
+  @Bean
+  @Primary
+  public ImageLoader imageLoader(
+      HttpRequestImageLoader httpRequestImageLoader,
+      MeterRegistry meterRegistry,
+      @Value("${imageLoader.circuit-breaker.failure-threshold}") int failureThreshold,
+      @Value("${imageLoader.circuit-breaker.failure-threshold-requests}")
+          int failureThresholdRequests,
+      @Value("${imageLoader.circuit-breaker.success-threshold}") int successThreshold,
+      @Value("${imageLoader.circuit-breaker.delay-ms}") long delayMs,
+      @Value("${imageLoader.hedge.delay-ms}") long hedgeDelayMs) {
+    final CircuitBreaker<Resource> circuitBreaker =
+        new CircuitBreaker<Resource>()
+            .withFailureThreshold(failureThreshold, failureThresholdRequests)
+            .withSuccessThreshold(successThreshold)
+            .withDelay(Duration.ofMillis(delayMs));
+    return new ResilientImageLoader(
+        httpRequestImageLoader, circuitBreaker, Duration.ofMillis(hedgeDelayMs), meterRegistry);
+  }
+}
@@ -0,0 +1,127 @@
+package com.edorogush.debijenkorftask.controller;
+
+import com.edorogush.debijenkorftask.exception.BadRequestException;
+import com.edorogush.debijenkorftask.model.Job;
+import com.edorogush.debijenkorftask.service.ImageService;
+import com.edorogush.debijenkorftask.service.JobRunner;
+import com.edorogush.debijenkorftask.service.RequestValidator;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.net.URI;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/** REST controller for {@code /admin} endpoints managing background jobs. */
+@RestController
+@RequestMapping(value = "/admin")
+public class AdminController {
+  private static final String PREWARM = "prewarm";
+  private static final String FLUSH = "flush";
+  /** The max number of images deleted by one storage request. */
+  private static final int FLUSH_BATCH_SIZE = 1000;
+  private final ImageService imageService;
+  private final RequestValidator requestValidator;
+  private final JobRunner jobRunner;
+
+  public AdminController(
+      ImageService imageService, RequestValidator requestValidator, JobRunner jobRunner) {
+    this.imageService = imageService;
+    this.requestValidator = requestValidator;
+    this.jobRunner = jobRunner;
+  }
+
+  /**
+   * Method to start background job adding images of all imageTypes to storage for every image
+   * referenced in manifest. Images already in storage are skipped, so the job interrupted could be
+   * resumed by submitting the same manifest again.
+   *
+   * @param references image names, the same as {@code reference} of {@code /image/show}.
+   * @return {@code 202 Accepted} with job progress, and its url in {@code Location} header.
+   */
+  @PostMapping(value = "/prewarm", consumes = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<Job> prewarm(@RequestBody List<String> references) {
+    if (references.isEmpty()) {
+      throw new BadRequestException("Manifest should contain at least one reference.");
+    }
+    final Job job =
+        jobRunner.submit(
+            PREWARM,
+            references,
+            reference -> {
+              requestValidator.checkImageName(reference);
+              return imageService.prewarm(reference);
+            });
+    return ResponseEntity.accepted().location(URI.create("/admin/jobs/" + job.getId())).body(job);
+  }
+
+  /**
+   * Method to start prewarm job for manifest in plain text format: one reference per line. Blank
+   * lines are ignored.
+   *
+   * @see #prewarm(List)
+   */
+  @PostMapping(value = "/prewarm", consumes = MediaType.TEXT_PLAIN_VALUE)
+  public ResponseEntity<Job> prewarm(@RequestBody String manifest) {
+    return prewarm(
+        manifest
+            .lines()
+            .map(String::strip)
+            .filter(line -> !line.isEmpty())
+            .collect(Collectors.toList()));
+  }
+
+  /**
+   * Method to start background job deleting all images of {@code imageType} from storage, or only
+   * images which references start with {@code referencePrefix}. Images are listed and deleted by
+   * the job in batches, request returns immediately. Images deleted are processed again by next
+   * request.
+   *
+   * @param imageType name of predefined type, or "original" to delete originals together with
+   *     images of all predefined types processed from them.
+   * @param referencePrefix the beginning of image names, the same as {@code reference} of {@code
+   *     /image/show}. All images of the type are deleted if empty.
+   * @return {@code 202 Accepted} with job progress, and its url in {@code Location} header.
+   */
+  @PostMapping("/flush/{imageType}")
+  public ResponseEntity<Job> flush(
+      @PathVariable("imageType") String imageType,
+      @RequestParam(value = "referencePrefix", defaultValue = "") String referencePrefix) {
+    requestValidator.checkImageTypeForDelete(imageType);
+    final Job job =
+        jobRunner.submitBatches(
+            FLUSH,
+            pageConsumer -> imageService.listStored(imageType, referencePrefix, pageConsumer),
+            FLUSH_BATCH_SIZE,
+            imageService::deleteStored);
+    return ResponseEntity.accepted().location(URI.create("/admin/jobs/" + job.getId())).body(job);
+  }
+
+  @GetMapping("/jobs")
+  public List<Job> findJobs() {
+    return jobRunner.findAll();
+  }
+
+  @GetMapping("/jobs/{id}")
+  public ResponseEntity<Job> findJob(@PathVariable("id") String id) {
+    return ResponseEntity.of(jobRunner.find(id));
+  }
+
+  /** Method to stop job. Images being processed are completed. */
+  @DeleteMapping("/jobs/{id}")
+  public ResponseEntity<Job> cancelJob(@PathVariable("id") String id) {
+    return jobRunner
+        .cancel(id)
+        .map(job -> ResponseEntity.status(HttpStatus.ACCEPTED).body(job))
+        .orElseGet(() -> ResponseEntity.notFound().build());
+  }
+}
@@ -3,8 +3,10 @@ package com.edorogush.debijenkorftask.controller;
 import com.edorogush.debijenkorftask.exception.BadRequestException;
 import com.edorogush.debijenkorftask.exception.ImageTypeNotExistException;
 import com.edorogush.debijenkorftask.exception.NotFoundInSourceException;
+import com.edorogush.debijenkorftask.exception.ServiceUnavailableException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -28,6 +30,17 @@ public class ControllerAdvice extends ResponseEntityExceptionHandler {
     return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
   }
 
+  @ExceptionHandler(ServiceUnavailableException.class)
+  public ResponseEntity<Object> serviceUnavailableException(ServiceUnavailableException e) {
+    logger.warn(e.getMessage(), e);
+    final ResponseEntity.BodyBuilder response =
+        ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE);
+    if (e.getRetryAfterSeconds() > 0) {
+      response.header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()));
+    }
+    return response.body(null);
+  }
+
   @ExceptionHandler(Exception.class)
   public ResponseEntity<Object> all(Exception e) {
     logger.error(e.getMessage(), e);
@@ -1,44 +1,304 @@
 package com.edorogush.debijenkorftask.controller;
 
+import com.edorogush.debijenkorftask.exception.BadRequestException;
+import com.edorogush.debijenkorftask.exception.ImageTypeNotExistException;
+import com.edorogush.debijenkorftask.exception.NotFoundException;
+import com.edorogush.debijenkorftask.exception.NotFoundInSourceException;
+import com.edorogush.debijenkorftask.exception.ServiceUnavailableException;
+import com.edorogush.debijenkorftask.model.BatchItem;
+import com.edorogush.debijenkorftask.model.BatchItemResult;
+import com.edorogush.debijenkorftask.model.FileMetadata;
 import com.edorogush.debijenkorftask.model.ImageType;
+import com.edorogush.debijenkorftask.service.ImageBatchService;
 import com.edorogush.debijenkorftask.service.ImageService;
 import com.edorogush.debijenkorftask.service.RequestValidator;
+import com.edorogush.debijenkorftask.service.StoredResource;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
 import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.MimeTypeUtils;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /** REST controller for {@code /image} endpoints. */
 @RestController
 @RequestMapping(value = "/image")
 public class ImageController {
+  private static final Logger logger = LogManager.getLogger();
+  private static final String SENDFILE_SUPPORT_ATTR = "org.apache.tomcat.sendfile.support";
+  private static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+  private static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+  private static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+  private static final String CACHE_CONTROL_PROPERTY_PREFIX = "imageController.cache-control.";
+  private static final String BATCH_STATUS_HEADER = "X-Image-Status";
   private final ImageService imageService;
+  private final ImageBatchService imageBatchService;
   private final RequestValidator requestValidator;
+  private final Map<String, String> cacheControlByImageType;
+  private final int batchMaxItems;
 
-  public ImageController(ImageService imageService, RequestValidator requestValidator) {
+  public ImageController(
+      ImageService imageService,
+      ImageBatchService imageBatchService,
+      RequestValidator requestValidator,
+      Environment environment,
+      @Value("${imageController.cache-control.default}") String defaultCacheControl,
+      @Value("${imageController.batch.max-items}") int batchMaxItems) {
     this.imageService = imageService;
+    this.imageBatchService = imageBatchService;
     this.requestValidator = requestValidator;
+    this.batchMaxItems = batchMaxItems;
+    this.cacheControlByImageType =
+        Arrays.stream(ImageType.values())
+            .map(ImageType::getName)
+            .collect(
+                Collectors.toMap(
+                    Function.identity(),
+                    name ->
+                        environment.getProperty(
+                            CACHE_CONTROL_PROPERTY_PREFIX + name, defaultCacheControl)));
   }
 
+  /**
+   * Method to return image. Response contains ETag and Last-Modified headers of the image stored,
+   * if storage returned them with the image. Metadata of the image is requested from storage
+   * separately only for conditional or range requests. If the request is conditional and image
+   * stored is not modified, {@code 304 Not Modified} is returned without reading the image. If
+   * single range of image stored is requested, only that range is read from storage and returned
+   * with {@code 206 Partial Content}.
+   */
   @GetMapping(value = {"/show/{imageType}/{dummySeoName}", "/show/{imageType}"})
   public ResponseEntity<Resource> searchByName(
       @PathVariable("imageType") String imageType,
       @PathVariable(required = false, name = "dummySeoName") String dummySeoName,
-      @RequestParam("reference") String imageName) {
+      @RequestParam("reference") String imageName,
+      ServletWebRequest webRequest) {
     requestValidator.checkImageTypeForSearch(imageType);
     requestValidator.checkImageName(imageName);
-    Resource resource = imageService.findByName(imageName, imageType);
-    return ResponseEntity.ok()
+    final Optional<FileMetadata> metadata =
+        isConditional(webRequest)
+            ? imageService.findMetadata(imageName, imageType)
+            : Optional.empty();
+    if (metadata.isPresent()
+        && webRequest.checkNotModified(
+            metadata.get().getETag(), metadata.get().getLastModified())) {
+      return withCacheHeaders(ResponseEntity.status(HttpStatus.NOT_MODIFIED), imageType, metadata)
+          .build();
+    }
+    if (metadata.isPresent()) {
+      final ResponseEntity<Resource> rangeResponse =
+          rangeResponse(imageName, imageType, metadata.get(), webRequest);
+      if (rangeResponse != null) {
+        return rangeResponse;
+      }
+    }
+    final Resource resource = imageService.findByName(imageName, imageType);
+    // metadata read with the image matches its content even if image was replaced meanwhile
+    final Optional<FileMetadata> resourceMetadata =
+        StoredResource.metadataOf(resource).or(() -> metadata);
+    ResponseEntity.BodyBuilder response =
+        withCacheHeaders(ResponseEntity.ok(), imageType, resourceMetadata)
+            .contentType(ImageType.findByName(imageType).getImageExtension().getMediaType());
+    final HttpServletRequest request = webRequest.getRequest();
+    if (resource.isFile() && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTR))) {
+      return sendFile(resource, request, response);
+    }
+    return response.body(resource);
+  }
+
+  private static boolean isConditional(ServletWebRequest webRequest) {
+    return webRequest.getHeader(HttpHeaders.IF_NONE_MATCH) != null
+        || webRequest.getHeader(HttpHeaders.IF_MODIFIED_SINCE) != null
+        || webRequest.getHeader(HttpHeaders.RANGE) != null;
+  }
+
+  /**
+   * Method to build response for request of single range of image stored.
+   *
+   * @return response, or {@code null} if whole image should be returned.
+   */
+  private ResponseEntity<Resource> rangeResponse(
+      String imageName, String imageType, FileMetadata metadata, ServletWebRequest webRequest) {
+    final List<HttpRange> ranges = requestedRanges(webRequest, metadata);
+    if (ranges.size() != 1) {
+      // multiple ranges are sliced from whole image
+      return null;
+    }
+    final long length = metadata.getContentLength();
+    final long start = ranges.get(0).getRangeStart(length);
+    final long end = ranges.get(0).getRangeEnd(length);
+    if (start >= length || start > end) {
+      return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+          .header(HttpHeaders.CONTENT_RANGE, "bytes */" + length)
+          .build();
+    }
+    final Resource resource;
+    try {
+      resource = imageService.findRangeByName(imageName, imageType, metadata, start, end);
+    } catch (NotFoundException e) {
+      // image has been deleted or replaced meanwhile, whole current image is returned
+      return null;
+    }
+    return withCacheHeaders(
+            ResponseEntity.status(HttpStatus.PARTIAL_CONTENT), imageType, Optional.of(metadata))
         .contentType(ImageType.findByName(imageType).getImageExtension().getMediaType())
+        .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+        .header(HttpHeaders.CONTENT_RANGE, String.format("bytes %d-%d/%d", start, end, length))
+        .contentLength(end - start + 1)
         .body(resource);
   }
 
+  /**
+   * Method to parse {@code Range} header. Ranges are ignored if the header is malformed, or if
+   * {@code If-Range} header does not match ETag of the image stored.
+   */
+  private List<HttpRange> requestedRanges(ServletWebRequest webRequest, FileMetadata metadata) {
+    final String range = webRequest.getHeader(HttpHeaders.RANGE);
+    final String ifRange = webRequest.getHeader(HttpHeaders.IF_RANGE);
+    if (range == null || (ifRange != null && !ifRange.equals("\"" + metadata.getETag() + "\""))) {
+      return List.of();
+    }
+    try {
+      return HttpRange.parseRanges(range);
+    } catch (IllegalArgumentException e) {
+      return List.of();
+    }
+  }
+
+  private ResponseEntity.BodyBuilder withCacheHeaders(
+      ResponseEntity.BodyBuilder response, String imageType, Optional<FileMetadata> metadata) {
+    response.header(HttpHeaders.CACHE_CONTROL, cacheControlByImageType.get(imageType));
+    metadata.ifPresent(
+        value -> response.eTag(value.getETag()).lastModified(value.getLastModified()));
+    return response;
+  }
+
+  /**
+   * Method to let servlet container send the file directly from disk, so that file content is not
+   * copied through application's heap.
+   */
+  private ResponseEntity<Resource> sendFile(
+      Resource resource, HttpServletRequest request, ResponseEntity.BodyBuilder response) {
+    try {
+      final long contentLength = resource.contentLength();
+      request.setAttribute(SENDFILE_FILENAME_ATTR, resource.getFile().getAbsolutePath());
+      request.setAttribute(SENDFILE_START_ATTR, 0L);
+      request.setAttribute(SENDFILE_END_ATTR, contentLength);
+      return response.contentLength(contentLength).build();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Method to return many images within one response. Images are searched concurrently and
+   * returned as {@code multipart/mixed} parts in the order searches complete, each part is written
+   * to client as soon as it is ready. Every part has {@code Content-Location} header identifying
+   * the image requested and {@code X-Image-Status} header with the status the same image would be
+   * returned with by {@code /image/show}, so that one missing image does not fail the whole batch.
+   *
+   * @param items images to return, not more than {@code imageController.batch.max-items}.
+   */
+  @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+  public void searchBatch(@RequestBody List<BatchItem> items, HttpServletResponse response)
+      throws IOException {
+    if (items.isEmpty() || items.size() > batchMaxItems) {
+      throw new BadRequestException(
+          String.format("Batch should contain from 1 to %d items.", batchMaxItems));
+    }
+    final String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+    response.setContentType(MediaType.MULTIPART_MIXED_VALUE + "; boundary=" + boundary);
+    final OutputStream outputStream = response.getOutputStream();
+    imageBatchService.findAll(items, result -> writePart(outputStream, boundary, result));
+    outputStream.write(("--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+  }
+
+  private void writePart(OutputStream outputStream, String boundary, BatchItemResult result) {
+    final BatchItem item = result.getItem();
+    final HttpHeaders headers = new HttpHeaders();
+    headers.set(
+        HttpHeaders.CONTENT_LOCATION,
+        String.format(
+            "/image/show/%s?reference=%s",
+            URLEncoder.encode(String.valueOf(item.getImageType()), StandardCharsets.UTF_8),
+            URLEncoder.encode(String.valueOf(item.getReference()), StandardCharsets.UTF_8)));
+    final RuntimeException error = result.getError();
+    final byte[] body;
+    if (error == null) {
+      body = result.getImage();
+      headers.set(BATCH_STATUS_HEADER, String.valueOf(HttpStatus.OK.value()));
+      headers.setContentType(
+          ImageType.findByName(item.getImageType()).getImageExtension().getMediaType());
+      headers.setCacheControl(cacheControlByImageType.get(item.getImageType()));
+    } else {
+      body = new byte[0];
+      headers.set(BATCH_STATUS_HEADER, String.valueOf(batchStatus(error).value()));
+      if (error instanceof ServiceUnavailableException
+          && ((ServiceUnavailableException) error).getRetryAfterSeconds() > 0) {
+        headers.set(
+            HttpHeaders.RETRY_AFTER,
+            String.valueOf(((ServiceUnavailableException) error).getRetryAfterSeconds()));
+      }
+    }
+    headers.setContentLength(body.length);
+    final StringBuilder part = new StringBuilder("--").append(boundary).append("\r\n");
+    headers.forEach(
+        (name, values) -> part.append(name).append(": ").append(values.get(0)).append("\r\n"));
+    part.append("\r\n");
+    try {
+      outputStream.write(part.toString().getBytes(StandardCharsets.UTF_8));
+      outputStream.write(body);
+      outputStream.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+      outputStream.flush();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** Statuses are the same as {@link ControllerAdvice} returns for {@code /image/show}. */
+  private static HttpStatus batchStatus(RuntimeException error) {
+    if (error instanceof BadRequestException) {
+      return HttpStatus.BAD_REQUEST;
+    }
+    if (error instanceof ServiceUnavailableException) {
+      return HttpStatus.SERVICE_UNAVAILABLE;
+    }
+    if (!(error instanceof NotFoundInSourceException)
+        && !(error instanceof ImageTypeNotExistException)) {
+      logger.error(error.getMessage(), error);
+    }
+    return HttpStatus.NOT_FOUND;
+  }
+
   @DeleteMapping("/flush/{imageType}")
   @ResponseStatus(HttpStatus.NO_CONTENT)
   public void deleteImage(
@@ -0,0 +1,25 @@
+package com.edorogush.debijenkorftask.exception;
+
+/** Exception class to represent temporary inability to serve request. */
+public class ServiceUnavailableException extends RuntimeException {
+  private final long retryAfterSeconds;
+
+  public ServiceUnavailableException(String message, Throwable cause) {
+    this(message, cause, 0);
+  }
+
+  /**
+   * @param message the detail message.
+   * @param cause the cause.
+   * @param retryAfterSeconds the time (seconds) client is advised to wait before repeating
+   *     request. Not advised if value is not positive.
+   */
+  public ServiceUnavailableException(String message, Throwable cause, long retryAfterSeconds) {
+    super(message, cause);
+    this.retryAfterSeconds = retryAfterSeconds;
+  }
+
+  public long getRetryAfterSeconds() {
+    return retryAfterSeconds;
+  }
+}
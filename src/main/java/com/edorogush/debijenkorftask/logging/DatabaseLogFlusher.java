@@ -0,0 +1,57 @@
+package com.edorogush.debijenkorftask.logging;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.Appender;
+import org.apache.logging.log4j.core.LoggerContext;
+import org.apache.logging.log4j.core.appender.AsyncAppender;
+import org.apache.logging.log4j.core.appender.db.jdbc.JdbcAppender;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+
+/**
+ * Component to write batched log events to the database periodically. {@link JdbcAppender} of
+ * {@code prod} profile buffers events and writes them in one batch when the buffer is full, so
+ * without periodic flush events could wait for a long time when there are few of them. Also
+ * publishes metrics of asynchronous logging.
+ */
+@Component
+@Profile("prod")
+public class DatabaseLogFlusher {
+
+  public DatabaseLogFlusher(MeterRegistry meterRegistry) {
+    FunctionCounter.builder(
+            "log.events.dropped", this, flusher -> DiscardingLogQueueFullPolicy.discardedCount())
+        .description("The number of log events dropped because logging queue was full.")
+        .register(meterRegistry);
+    Gauge.builder("log.queue.size", this, DatabaseLogFlusher::queueSize)
+        .description("The number of log events waiting to be written.")
+        .register(meterRegistry);
+  }
+
+  @Scheduled(fixedDelayString = "${logging.jdbc.flush-interval-ms}")
+  public void flush() {
+    for (Appender appender : appenders()) {
+      if (appender instanceof JdbcAppender && appender.isStarted()) {
+        ((JdbcAppender) appender).getManager().flush();
+      }
+    }
+  }
+
+  private double queueSize() {
+    return appenders().stream()
+        .filter(AsyncAppender.class::isInstance)
+        .mapToInt(appender -> ((AsyncAppender) appender).getQueueSize())
+        .sum();
+  }
+
+  private Collection<Appender> appenders() {
+    final LoggerContext context = (LoggerContext) LogManager.getContext(false);
+    return context.getConfiguration().getAppenders().values();
+  }
+}
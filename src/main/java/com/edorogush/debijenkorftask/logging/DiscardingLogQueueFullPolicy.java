@@ -0,0 +1,50 @@
+package com.edorogush.debijenkorftask.logging;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.async.AsyncQueueFullPolicy;
+import org.apache.logging.log4j.core.async.EventRoute;
+import org.apache.logging.log4j.util.PropertiesUtil;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The class is implementation of {@link AsyncQueueFullPolicy} interface which decides what to do
+ * with log event when queue of asynchronous appender is full. Events of {@code
+ * log4j2.DiscardThreshold} level or less severe are dropped, so that request threads are not
+ * blocked by slow appender. More severe events wait for free space in the queue. Events logged by
+ * the appender's own thread are written synchronously to prevent deadlock.
+ *
+ * <p>The policy is instantiated by log4j, so number of dropped events is kept in static counter.
+ */
+public class DiscardingLogQueueFullPolicy implements AsyncQueueFullPolicy {
+  private static final LongAdder discardedCount = new LongAdder();
+  private final Level threshold;
+
+  public DiscardingLogQueueFullPolicy() {
+    this(
+        Level.toLevel(
+            PropertiesUtil.getProperties().getStringProperty("log4j2.DiscardThreshold"),
+            Level.WARN));
+  }
+
+  DiscardingLogQueueFullPolicy(Level threshold) {
+    this.threshold = threshold;
+  }
+
+  @Override
+  public EventRoute getRoute(long backgroundThreadId, Level level) {
+    if (Thread.currentThread().getId() == backgroundThreadId) {
+      return EventRoute.SYNCHRONOUS;
+    }
+    if (level.isLessSpecificThan(threshold)) {
+      discardedCount.increment();
+      return EventRoute.DISCARD;
+    }
+    return EventRoute.ENQUEUE;
+  }
+
+  /** @return number of log events dropped since application start. */
+  public static long discardedCount() {
+    return discardedCount.sum();
+  }
+}
@@ -0,0 +1,29 @@
+package com.edorogush.debijenkorftask.model;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/** Image requested within batch request: the same pair as in {@code /image/show} request. */
+public final class BatchItem {
+  private final String imageType;
+  private final String reference;
+
+  /**
+   * @param imageType name of predefined type.
+   * @param reference unique file name and/or relative path of original image on the source.
+   */
+  @JsonCreator
+  public BatchItem(
+      @JsonProperty("imageType") String imageType, @JsonProperty("reference") String reference) {
+    this.imageType = imageType;
+    this.reference = reference;
+  }
+
+  public String getImageType() {
+    return imageType;
+  }
+
+  public String getReference() {
+    return reference;
+  }
+}
@@ -0,0 +1,36 @@
+package com.edorogush.debijenkorftask.model;
+
+/** Result of {@link BatchItem} search: either image data, or the error image search failed with. */
+public final class BatchItemResult {
+  private final BatchItem item;
+  private final byte[] image;
+  private final RuntimeException error;
+
+  private BatchItemResult(BatchItem item, byte[] image, RuntimeException error) {
+    this.item = item;
+    this.image = image;
+    this.error = error;
+  }
+
+  public static BatchItemResult found(BatchItem item, byte[] image) {
+    return new BatchItemResult(item, image, null);
+  }
+
+  public static BatchItemResult failed(BatchItem item, RuntimeException error) {
+    return new BatchItemResult(item, null, error);
+  }
+
+  public BatchItem getItem() {
+    return item;
+  }
+
+  /** @return image data, or {@code null} if search failed. */
+  public byte[] getImage() {
+    return image;
+  }
+
+  /** @return the error search failed with, or {@code null} if image is found. */
+  public RuntimeException getError() {
+    return error;
+  }
+}
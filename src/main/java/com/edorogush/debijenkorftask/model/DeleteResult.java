@@ -0,0 +1,49 @@
+package com.edorogush.debijenkorftask.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Result of deleting many items from storage, reported for every item requested. */
+public final class DeleteResult {
+  private final List<String> deleted;
+  private final Map<String, String> failed;
+
+  /**
+   * @param deleted names of items deleted, or absent in storage already.
+   * @param failed error messages by names of items which could not be deleted.
+   */
+  public DeleteResult(List<String> deleted, Map<String, String> failed) {
+    this.deleted = Collections.unmodifiableList(deleted);
+    this.failed = Collections.unmodifiableMap(failed);
+  }
+
+  public static DeleteResult deleted(List<String> fileNames) {
+    return new DeleteResult(fileNames, Map.of());
+  }
+
+  /** Method to combine results of deleting separate batches of items. */
+  public static DeleteResult merge(List<DeleteResult> results) {
+    final List<String> deleted = new ArrayList<>();
+    final Map<String, String> failed = new LinkedHashMap<>();
+    for (DeleteResult result : results) {
+      deleted.addAll(result.deleted);
+      failed.putAll(result.failed);
+    }
+    return new DeleteResult(deleted, failed);
+  }
+
+  public List<String> getDeleted() {
+    return deleted;
+  }
+
+  public Map<String, String> getFailed() {
+    return failed;
+  }
+
+  public boolean isSuccessful() {
+    return failed.isEmpty();
+  }
+}
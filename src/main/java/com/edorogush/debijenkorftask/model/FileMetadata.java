@@ -0,0 +1,54 @@
+package com.edorogush.debijenkorftask.model;
+
+import java.util.Objects;
+
+/** Metadata of item kept in storage, which allows to validate item without reading its content. */
+public final class FileMetadata {
+  private final String eTag;
+  private final long lastModified;
+  private final long contentLength;
+  private final String version;
+
+  /**
+   * @param eTag hash of item's content, without quotes.
+   * @param lastModified time (ms since epoch) item was stored.
+   * @param contentLength size of item's content in bytes.
+   */
+  public FileMetadata(String eTag, long lastModified, long contentLength) {
+    this(eTag, lastModified, contentLength, null);
+  }
+
+  /**
+   * @param version identifier of item's content in underlying storage which its conditional
+   *     requests accept, e.g. ETag of Amazon S3 object, or {@code null} if storage has none.
+   */
+  public FileMetadata(String eTag, long lastModified, long contentLength, String version) {
+    this.eTag = eTag;
+    this.lastModified = lastModified;
+    this.contentLength = contentLength;
+    this.version = version;
+  }
+
+  public String getETag() {
+    return eTag;
+  }
+
+  public long getLastModified() {
+    return lastModified;
+  }
+
+  public long getContentLength() {
+    return contentLength;
+  }
+
+  public String getVersion() {
+    return version;
+  }
+
+  /** @return {@code true} if {@code other} describes the same content of item. */
+  public boolean matches(FileMetadata other) {
+    return other != null
+        && Objects.equals(eTag, other.eTag)
+        && contentLength == other.contentLength;
+  }
+}
@@ -3,6 +3,9 @@ package com.edorogush.debijenkorftask.model;
 import org.springframework.http.MediaType;
 
 import java.awt.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.Map;
 import java.util.function.Function;
@@ -10,21 +13,41 @@ import java.util.stream.Collectors;
 
 /**
  * Enumeration of predefined image's types. Each type contains set of properties which are used to
- * optimize image.
+ * optimize image. Each type also has a version derived from these properties, so changing the
+ * definition of type changes its version.
  */
 public enum ImageType {
-  THUMBNAIL("thumbnail", 500, 1000, 10, ScaleType.CROP, null, ImageExtension.JPG),
-  TECH_DRAWING("technical-drawing", 1000, 1000, 10, ScaleType.FILL, "#00ff00", ImageExtension.PNG),
-  ICON("icon", 200, 200, 10, ScaleType.SKEW, null, ImageExtension.PNG);
-
+  THUMBNAIL(
+      "thumbnail",
+      500,
+      1000,
+      10,
+      ScaleType.CROP,
+      ScalingQuality.BALANCED,
+      null,
+      ImageExtension.JPG),
+  TECH_DRAWING(
+      "technical-drawing",
+      1000,
+      1000,
+      10,
+      ScaleType.FILL,
+      ScalingQuality.BALANCED,
+      "#00ff00",
+      ImageExtension.PNG),
+  ICON("icon", 200, 200, 10, ScaleType.SKEW, ScalingQuality.HIGH, null, ImageExtension.PNG);
+
+  private static final int VERSION_LENGTH = 8;
   private final String name;
   private final int heightPx;
 
   private final int widthPx;
   private final int quality;
   private final ScaleType scaleType;
+  private final ScalingQuality scalingQuality;
   private final String fillColorHexValue;
   private final ImageExtension imageExtension;
+  private final String version;
 
   private static final Map<String, ImageType> map =
       Arrays.stream(ImageType.values())
@@ -36,6 +59,7 @@ public enum ImageType {
       int width,
       int quality,
       ScaleType scaleType,
+      ScalingQuality scalingQuality,
       String fillColorHexValue,
       ImageExtension imageExtension) {
     validateScaleType(scaleType, fillColorHexValue);
@@ -46,7 +70,19 @@ public enum ImageType {
     this.widthPx = width;
     this.quality = quality;
     this.scaleType = scaleType;
+    this.scalingQuality = scalingQuality;
     this.fillColorHexValue = fillColorHexValue;
+    this.version =
+        hash(
+            String.join(
+                ":",
+                String.valueOf(heightPx),
+                String.valueOf(width),
+                String.valueOf(quality),
+                scaleType.name(),
+                scalingQuality.name(),
+                String.valueOf(fillColorHexValue),
+                imageExtension.name()));
   }
 
   public String getName() {
@@ -69,6 +105,10 @@ public enum ImageType {
     return scaleType;
   }
 
+  public ScalingQuality getScalingQuality() {
+    return scalingQuality;
+  }
+
   public String getFillColorHexValue() {
     return fillColorHexValue;
   }
@@ -77,10 +117,43 @@ public enum ImageType {
     return imageExtension;
   }
 
+  /**
+   * Version of type definition, the beginning of hash of all properties which affect processed
+   * image. The same definition always has the same version, also after application restart.
+   */
+  public String getVersion() {
+    return version;
+  }
+
+  /**
+   * Directory in storage where images of this type are kept. Images processed with different
+   * definitions of the same type are kept in different directories, so images processed with
+   * previous definition are not found and are processed again.
+   *
+   * @return type name and version, e.g. {@code thumbnail/v1a2b3c4d}.
+   */
+  public String getStorageDirectory() {
+    return name + "/v" + version;
+  }
+
   public static ImageType findByName(String name) {
     return map.get(name);
   }
 
+  private static String hash(String definition) {
+    try {
+      final byte[] digest =
+          MessageDigest.getInstance("SHA-256").digest(definition.getBytes(StandardCharsets.UTF_8));
+      final StringBuilder hex = new StringBuilder();
+      for (int i = 0; i < VERSION_LENGTH / 2; i++) {
+        hex.append(String.format("%02x", digest[i]));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
   private void validateQuality(int quality) {
     if (quality < 0 || quality > 100) {
       throw new IllegalArgumentException("Wrong quality value. Must be in range 0 - 100.");
@@ -108,6 +181,16 @@ public enum ImageType {
     SKEW
   }
 
+  /** Enumeration of trade-offs between speed and quality of image scaling. */
+  public enum ScalingQuality {
+    /** Image is scaled in one bilinear step. Fastest, but downscaled image could be aliased. */
+    FAST,
+    /** Image is halved in bilinear steps until close to the new size, then scaled bilinearly. */
+    BALANCED,
+    /** Image is halved in bilinear steps until close to the new size, then scaled bicubically. */
+    HIGH
+  }
+
   /** Enumeration of file extensions that can be processed in application. */
   public enum ImageExtension {
     JPG(MediaType.IMAGE_JPEG),
@@ -123,5 +206,23 @@ public enum ImageType {
     public MediaType getMediaType() {
       return mediaType;
     }
+
+    /**
+     * Method to find extension of file.
+     *
+     * @param fileName file name with extension.
+     * @return {@link ImageExtension} or {@code null} if file extension is not supported.
+     */
+    public static ImageExtension findByFileName(String fileName) {
+      final int dotIndex = fileName.lastIndexOf(".");
+      if (dotIndex < 0) {
+        return null;
+      }
+      try {
+        return ImageExtension.valueOf(fileName.substring(dotIndex + 1).toUpperCase());
+      } catch (IllegalArgumentException e) {
+        return null;
+      }
+    }
   }
 }
@@ -0,0 +1,185 @@
+package com.edorogush.debijenkorftask.model;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of background job processing a list of items. Counters are updated by job threads
+ * while job is running, so the values returned are a snapshot. Only the first {@code maxFailures}
+ * failures are kept with their items, the others are only counted.
+ */
+public final class Job {
+  private final String id;
+  private final String type;
+  private final AtomicLong total;
+  private volatile boolean listed;
+  private final int maxFailures;
+  private final Instant createdAt = Instant.now();
+  private final AtomicLong succeeded = new AtomicLong();
+  private final AtomicLong skipped = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
+  private final List<Failure> failures = new ArrayList<>();
+  private volatile State state = State.QUEUED;
+  private volatile Instant startedAt;
+  private volatile Instant finishedAt;
+  private volatile boolean cancelRequested;
+
+  /**
+   * @param id unique id of the job.
+   * @param type kind of processing, e.g. "prewarm".
+   * @param total number of items to process, grows while items are listed by the job.
+   * @param maxFailures max number of failures kept with their items.
+   */
+  public Job(String id, String type, long total, int maxFailures) {
+    this.id = id;
+    this.type = type;
+    this.total = new AtomicLong(total);
+    this.maxFailures = maxFailures;
+  }
+
+  public enum State {
+    QUEUED,
+    RUNNING,
+    COMPLETED,
+    CANCELLED
+  }
+
+  /** Item the job failed to process. */
+  public static final class Failure {
+    private final String item;
+    private final String message;
+
+    private Failure(String item, String message) {
+      this.item = item;
+      this.message = message;
+    }
+
+    public String getItem() {
+      return item;
+    }
+
+    public String getMessage() {
+      return message;
+    }
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public String getType() {
+    return type;
+  }
+
+  public State getState() {
+    return state;
+  }
+
+  public long getTotal() {
+    return total.get();
+  }
+
+  /** @return {@code false} while items are still being listed and total is not final. */
+  public boolean isListed() {
+    return listed;
+  }
+
+  public long getSucceeded() {
+    return succeeded.get();
+  }
+
+  /** @return number of items which did not need processing, e.g. done by previous job. */
+  public long getSkipped() {
+    return skipped.get();
+  }
+
+  public long getFailed() {
+    return failed.get();
+  }
+
+  public long getProcessed() {
+    return getSucceeded() + getSkipped() + getFailed();
+  }
+
+  public synchronized List<Failure> getFailures() {
+    return List.copyOf(failures);
+  }
+
+  public Instant getCreatedAt() {
+    return createdAt;
+  }
+
+  public Instant getStartedAt() {
+    return startedAt;
+  }
+
+  public Instant getFinishedAt() {
+    return finishedAt;
+  }
+
+  /** @return average number of items processed per second since job started. */
+  public double getItemsPerSecond() {
+    final Instant from = startedAt;
+    if (from == null) {
+      return 0;
+    }
+    final Instant to = finishedAt != null ? finishedAt : Instant.now();
+    final long elapsedMillis = Math.max(1, Duration.between(from, to).toMillis());
+    return getProcessed() * 1000.0 / elapsedMillis;
+  }
+
+  public boolean isFinished() {
+    return state == State.COMPLETED || state == State.CANCELLED;
+  }
+
+  public boolean isCancelRequested() {
+    return cancelRequested;
+  }
+
+  /** Method to request job to stop. Items being processed are completed. */
+  public void cancel() {
+    cancelRequested = true;
+  }
+
+  /** Method to add items listed by the job after it started to the number of items to process. */
+  public void listed(long count) {
+    total.addAndGet(count);
+  }
+
+  /** Method to mark that all items to process are listed. */
+  public void listingCompleted() {
+    listed = true;
+  }
+
+  public void start() {
+    startedAt = Instant.now();
+    state = State.RUNNING;
+  }
+
+  public void finish() {
+    finishedAt = Instant.now();
+    state = cancelRequested ? State.CANCELLED : State.COMPLETED;
+  }
+
+  public void succeeded() {
+    succeeded.incrementAndGet();
+  }
+
+  public void succeeded(long count) {
+    succeeded.addAndGet(count);
+  }
+
+  public void skipped() {
+    skipped.incrementAndGet();
+  }
+
+  public synchronized void failed(String item, String message) {
+    failed.incrementAndGet();
+    if (failures.size() < maxFailures) {
+      failures.add(new Failure(item, message));
+    }
+  }
+}
@@ -2,70 +2,302 @@ package com.edorogush.debijenkorftask.service;
 
 import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
 import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
 import com.amazonaws.services.s3.model.DeleteObjectRequest;
 import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException;
 import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
 import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.services.s3.model.UploadPartRequest;
 import com.edorogush.debijenkorftask.exception.NotFoundException;
+import com.edorogush.debijenkorftask.model.DeleteResult;
+import com.edorogush.debijenkorftask.model.FileMetadata;
+import com.edorogush.debijenkorftask.model.ImageType;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import net.jodah.failsafe.Failsafe;
 import net.jodah.failsafe.RetryPolicy;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.Resource;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UncheckedIOException;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 /**
  * The class is implementation of {@link FileStorage} interface and manages CRUD operations for
- * Amazon S3 file storage within selected bucket.
+ * Amazon S3 file storage within selected bucket. If {@code streaming} mode is enabled, objects are
+ * not read into memory, content is streamed from Amazon S3 when resource is read. Hash of object's
+ * content is kept in object's user metadata and is returned as object's ETag. The storage is only
+ * created if it is chosen as backend by {@code fileStorage.backend} property.
  */
 @Service
+@Lazy
 public class AmazonS3FileStorage implements FileStorage {
   private static final Logger logger = LogManager.getLogger();
+  private static final String CONTENT_HASH_METADATA = "content-sha256";
+  /** Amazon S3 rejects smaller parts, except the last one. */
+  private static final long MIN_PART_SIZE_BYTES = 5 * 1024 * 1024;
+  private static final int MAX_DELETE_BATCH_SIZE = 1000;
   private final int retryDelay;
   private final int maxRetries;
   private final AmazonS3 amazonS3;
   private final String bucketName;
+  private final boolean streaming;
+  private final long multipartThresholdBytes;
+  private final long partSizeBytes;
+  private final ThreadPoolExecutor partUploadExecutor;
+  private final ThreadPoolExecutor deleteExecutor;
 
+  /**
+   * @param multipartThresholdMb items bigger than this size (MB) are uploaded in parts.
+   * @param partSizeMb size (MB) of every part but the last one, at least 5 MB.
+   * @param partUploadThreads number of threads uploading parts, shared by all uploads.
+   * @param partUploadQueueCapacity max number of parts waiting for upload. When exceeded, part is
+   *     uploaded by the thread putting the item.
+   * @param deleteThreads number of threads deleting batches of items, shared by all requests. When
+   *     all are busy, batch is deleted by the thread requesting deletion.
+   */
   public AmazonS3FileStorage(
       AmazonS3 amazonS3,
       @Value("${fileStorage.amazonS3.bucket}") String bucketName,
       @Value("${fileStorage.retry.await-before-retry-ms}") int delay,
-      @Value("${fileStorage.retry.max-attempts}") int maxAttempts) {
+      @Value("${fileStorage.retry.max-attempts}") int maxAttempts,
+      @Value("${fileStorage.amazonS3.streaming-enabled}") boolean streaming,
+      @Value("${fileStorage.amazonS3.multipart.threshold-mb}") long multipartThresholdMb,
+      @Value("${fileStorage.amazonS3.multipart.part-size-mb}") long partSizeMb,
+      @Value("${fileStorage.amazonS3.multipart.threads}") int partUploadThreads,
+      @Value("${fileStorage.amazonS3.multipart.queue-capacity}") int partUploadQueueCapacity,
+      @Value("${fileStorage.amazonS3.delete.threads}") int deleteThreads,
+      MeterRegistry meterRegistry) {
     this.amazonS3 = amazonS3;
     this.bucketName = bucketName;
     this.retryDelay = delay;
     this.maxRetries = maxAttempts - 1;
+    this.streaming = streaming;
+    this.multipartThresholdBytes = multipartThresholdMb * 1024 * 1024;
+    this.partSizeBytes = Math.max(MIN_PART_SIZE_BYTES, partSizeMb * 1024 * 1024);
+    this.partUploadExecutor =
+        new ThreadPoolExecutor(
+            partUploadThreads,
+            partUploadThreads,
+            0L,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(partUploadQueueCapacity),
+            new CustomizableThreadFactory("s3-part-upload-"),
+            AmazonS3FileStorage::runInCallerUntilShutdown);
+    this.deleteExecutor =
+        new ThreadPoolExecutor(
+            deleteThreads,
+            deleteThreads,
+            0L,
+            TimeUnit.MILLISECONDS,
+            new SynchronousQueue<>(),
+            new CustomizableThreadFactory("s3-delete-"),
+            AmazonS3FileStorage::runInCallerUntilShutdown);
+    Gauge.builder(
+            "image.storage.multipart.queue.size", partUploadExecutor, e -> e.getQueue().size())
+        .description("The number of parts waiting for upload to Amazon S3.")
+        .register(meterRegistry);
+    Gauge.builder(
+            "image.storage.multipart.active",
+            partUploadExecutor,
+            ThreadPoolExecutor::getActiveCount)
+        .description("The number of parts being uploaded to Amazon S3.")
+        .register(meterRegistry);
   }
 
+  /**
+   * {@inheritDoc} Object is requested once, its metadata is taken from the response. In {@code
+   * streaming} mode content is not read into memory, it is streamed from the response when returned
+   * {@link Resource} is read. Returned resource carries the object's metadata.
+   *
+   * @param fileName absolute path name of item.
+   */
   @Override
   public Resource get(String fileName) {
-    try (S3Object object = amazonS3.getObject(this.bucketName, fileName)) {
-      return new ByteArrayResource(object.getObjectContent().readAllBytes());
+    final GetObjectRequest request = new GetObjectRequest(bucketName, fileName);
+    if (streaming) {
+      return new S3ObjectResource(amazonS3, bucketName, getObject(request));
+    }
+    return readObject(request);
+  }
+
+  /**
+   * {@inheritDoc} Range is requested from Amazon S3 with {@code Range} header and with ETag of
+   * {@code metadata} as {@code If-Match} constraint. In {@code streaming} mode nothing is requested
+   * until returned {@link Resource} is read, metadata provided is used instead.
+   *
+   * @param fileName absolute path name of item.
+   */
+  @Override
+  public Resource getRange(String fileName, FileMetadata metadata, long start, long end) {
+    // metadata not provided by Amazon S3, e.g. of item waiting for upload, has no object's ETag
+    final FileMetadata stored = metadata.getVersion() != null ? metadata : head(fileName);
+    if (!metadata.matches(stored)) {
+      throw changed(fileName);
+    }
+    if (streaming) {
+      return new S3ObjectResource(amazonS3, bucketName, fileName, stored, start, end);
+    }
+    return readObject(
+        new GetObjectRequest(bucketName, fileName)
+            .withRange(start, end)
+            .withMatchingETagConstraint(stored.getVersion()));
+  }
+
+  /** @throws NotFoundException if object was not found or constraint of request was not met. */
+  private Resource readObject(GetObjectRequest request) {
+    try (S3Object object = getObject(request)) {
+      return new StoredByteArrayResource(
+          object.getObjectContent().readAllBytes(), toFileMetadata(object.getObjectMetadata()));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** @throws NotFoundException if object was not found or constraint of request was not met. */
+  private S3Object getObject(GetObjectRequest request) {
+    final S3Object object;
+    try {
+      object = amazonS3.getObject(request);
+    } catch (AmazonS3Exception e) {
+      if (e.getStatusCode() == HttpStatus.NOT_FOUND.value()) {
+        throw new NotFoundException(
+            String.format("File with name %s not found.", request.getKey()));
+      }
+      throw e;
+    }
+    if (object == null) {
+      throw changed(request.getKey());
+    }
+    return object;
+  }
+
+  /**
+   * {@inheritDoc} Objects stored without content hash in user metadata return ETag provided by
+   * Amazon S3.
+   *
+   * @param fileName absolute path name of item.
+   */
+  @Override
+  public FileMetadata head(String fileName) {
+    return toFileMetadata(getObjectMetadata(fileName));
+  }
+
+  /**
+   * Method to convert metadata returned by Amazon S3 for any request of the object, so that {@link
+   * #get} and {@link #head} return the same validators.
+   */
+  static FileMetadata toFileMetadata(ObjectMetadata metadata) {
+    final String contentHash = metadata.getUserMetaDataOf(CONTENT_HASH_METADATA);
+    return new FileMetadata(
+        contentHash != null ? contentHash : metadata.getETag(),
+        metadata.getLastModified() == null ? 0 : metadata.getLastModified().getTime(),
+        // content length of range response is the length of the range
+        metadata.getInstanceLength(),
+        metadata.getETag());
+  }
+
+  private static NotFoundException changed(String fileName) {
+    return new NotFoundException(String.format("File with name %s was changed.", fileName));
+  }
+
+  private ObjectMetadata getObjectMetadata(String fileName) {
+    try {
+      return amazonS3.getObjectMetadata(bucketName, fileName);
     } catch (AmazonS3Exception e) {
       if (e.getStatusCode() == HttpStatus.NOT_FOUND.value()) {
         throw new NotFoundException(String.format("File with name %s not found.", fileName));
       }
       throw e;
-    } catch (IOException e) {
-      throw new UncheckedIOException(e);
     }
   }
 
+  /**
+   * {@inheritDoc} Names are requested from Amazon S3 page by page, up to 1000 names per request,
+   * and every page received is passed on before the next one is requested.
+   *
+   * @param prefix the beginning of absolute path names, empty to list all items.
+   * @param pageConsumer receiver of absolute path names of items found, page by page.
+   */
+  @Override
+  public void list(String prefix, Consumer<List<String>> pageConsumer) {
+    final ListObjectsV2Request request =
+        new ListObjectsV2Request().withBucketName(bucketName).withPrefix(prefix);
+    ListObjectsV2Result result;
+    do {
+      result = amazonS3.listObjectsV2(request);
+      pageConsumer.accept(
+          result.getObjectSummaries().stream()
+              .map(S3ObjectSummary::getKey)
+              .collect(Collectors.toList()));
+      request.setContinuationToken(result.getNextContinuationToken());
+    } while (result.isTruncated());
+  }
+
+  /**
+   * {@inheritDoc} Directories are requested from Amazon S3 as common prefixes of names with '/'
+   * delimiter, so items under them are not listed.
+   *
+   * @param prefix the beginning of absolute path names, e.g. imageType directory with '/'.
+   */
+  @Override
+  public List<String> listDirectories(String prefix) {
+    final List<String> directories = new ArrayList<>();
+    final ListObjectsV2Request request =
+        new ListObjectsV2Request()
+            .withBucketName(bucketName)
+            .withPrefix(prefix)
+            .withDelimiter("/");
+    ListObjectsV2Result result;
+    do {
+      result = amazonS3.listObjectsV2(request);
+      directories.addAll(result.getCommonPrefixes());
+      request.setContinuationToken(result.getNextContinuationToken());
+    } while (result.isTruncated());
+    return directories;
+  }
+
   /**
    * {@inheritDoc} If attempt to create item is failed not due to client error, retry attempt will
    * be done. Retry policy is configured by {@code this.delay} and {@code this.maxAttempts}
-   * parameters.
+   * parameters. Items bigger than {@code multipartThreshold} are uploaded in parts concurrently,
+   * every part is retried separately. If any part fails after all retries, the upload is aborted.
    *
    * @param resource
    * @param fileName absolute path name of item.
@@ -73,8 +305,18 @@ public class AmazonS3FileStorage implements FileStorage {
   @Override
   public void put(Resource resource, String fileName) {
     RetryPolicy<Object> retryPolicy = initRetryPolicy(bucketName, fileName);
-    try (InputStream inputStream = resource.getInputStream()) {
-      ObjectMetadata metadata = buildMetadata(resource);
+    // content is read twice: to calculate hash and to upload
+    final Resource reusableResource = readIfOpen(resource);
+    try {
+      if (reusableResource.contentLength() > multipartThresholdBytes) {
+        putMultipart(reusableResource, fileName, buildMetadata(reusableResource, fileName));
+        return;
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    try (InputStream inputStream = reusableResource.getInputStream()) {
+      ObjectMetadata metadata = buildMetadata(reusableResource, fileName);
       Failsafe.with(retryPolicy)
           .get(() -> amazonS3.putObject(bucketName, fileName, inputStream, metadata));
     } catch (IOException e) {
@@ -82,23 +324,206 @@ public class AmazonS3FileStorage implements FileStorage {
     }
   }
 
+  private void putMultipart(Resource resource, String fileName, ObjectMetadata metadata)
+      throws IOException {
+    // parts are read at offsets of file or array, any other content is read into memory once
+    final Resource content =
+        resource.isFile() || resource instanceof ByteArrayResource ? resource : readAll(resource);
+    final RetryPolicy<Object> retryPolicy = initRetryPolicy(bucketName, fileName);
+    final String uploadId =
+        Failsafe.with(retryPolicy)
+            .get(
+                () ->
+                    amazonS3
+                        .initiateMultipartUpload(
+                            new InitiateMultipartUploadRequest(bucketName, fileName, metadata))
+                        .getUploadId());
+    final long contentLength = content.contentLength();
+    final List<CompletableFuture<PartETag>> parts = new ArrayList<>();
+    for (long offset = 0; offset < contentLength; offset += partSizeBytes) {
+      final int partNumber = parts.size() + 1;
+      final long partOffset = offset;
+      final long partSize = Math.min(partSizeBytes, contentLength - offset);
+      parts.add(
+          supplyAsync(
+              () ->
+                  Failsafe.with(retryPolicy)
+                      .get(
+                          () ->
+                              amazonS3
+                                  .uploadPart(
+                                      buildUploadPartRequest(
+                                          content,
+                                          fileName,
+                                          uploadId,
+                                          partNumber,
+                                          partOffset,
+                                          partSize))
+                                  .getPartETag()),
+              partUploadExecutor));
+    }
+    try {
+      final List<PartETag> partETags =
+          parts.stream().map(CompletableFuture::join).collect(Collectors.toList());
+      Failsafe.with(retryPolicy)
+          .get(
+              () ->
+                  amazonS3.completeMultipartUpload(
+                      new CompleteMultipartUploadRequest(
+                          bucketName, fileName, uploadId, partETags)));
+    } catch (RuntimeException e) {
+      parts.forEach(part -> part.cancel(false));
+      abortMultipartUpload(fileName, uploadId);
+      throw e instanceof CompletionException && e.getCause() instanceof RuntimeException
+          ? (RuntimeException) e.getCause()
+          : e;
+    }
+  }
+
+  /**
+   * Part content is created for every attempt, so that retry sends it from the beginning. Content
+   * should be either file or byte array.
+   */
+  private UploadPartRequest buildUploadPartRequest(
+      Resource resource,
+      String fileName,
+      String uploadId,
+      int partNumber,
+      long partOffset,
+      long partSize)
+      throws IOException {
+    final UploadPartRequest request =
+        new UploadPartRequest()
+            .withBucketName(bucketName)
+            .withKey(fileName)
+            .withUploadId(uploadId)
+            .withPartNumber(partNumber)
+            .withPartSize(partSize);
+    if (resource.isFile()) {
+      return request.withFile(resource.getFile()).withFileOffset(partOffset);
+    }
+    final byte[] content = ((ByteArrayResource) resource).getByteArray();
+    return request.withInputStream(
+        new ByteArrayInputStream(content, (int) partOffset, (int) partSize));
+  }
+
+  /**
+   * Method to run task asynchronously.
+   *
+   * @return future completed exceptionally with {@link RejectedExecutionException} if executor is
+   *     shut down, instead of the one never completed.
+   */
+  private static <T> CompletableFuture<T> supplyAsync(Supplier<T> task, Executor executor) {
+    try {
+      return CompletableFuture.supplyAsync(task, executor);
+    } catch (RejectedExecutionException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+  }
+
+  /**
+   * Handler of tasks rejected by busy executor, which runs them in the caller's thread to slow down
+   * submission. Unlike {@link ThreadPoolExecutor.CallerRunsPolicy}, tasks rejected by executor shut
+   * down are not discarded silently, as caller would wait for them forever.
+   */
+  private static void runInCallerUntilShutdown(Runnable task, ThreadPoolExecutor executor) {
+    if (executor.isShutdown()) {
+      throw new RejectedExecutionException("Executor " + executor + " is shut down.");
+    }
+    task.run();
+  }
+
+  private void abortMultipartUpload(String fileName, String uploadId) {
+    try {
+      amazonS3.abortMultipartUpload(
+          new AbortMultipartUploadRequest(bucketName, fileName, uploadId));
+    } catch (RuntimeException e) {
+      logger.warn("Failed to abort multipart upload of {}.", bucketName + "/" + fileName, e);
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    partUploadExecutor.shutdown();
+    deleteExecutor.shutdown();
+  }
+
   @Override
   public void deleteOne(String fileName) {
     amazonS3.deleteObject(new DeleteObjectRequest(bucketName, fileName));
   }
 
+  /**
+   * {@inheritDoc} Items are deleted in batches of up to 1000 names, the max allowed by Amazon S3
+   * for one request. Batches are sent concurrently. Errors reported by Amazon S3 for separate items
+   * are returned in {@link DeleteResult}, failure of the whole request is reported for every item
+   * of the batch.
+   *
+   * @param fileNames List of absolute path names of items should be deleted.
+   */
   @Override
-  public void deleteMany(List<String> fileNames) {
-    final DeleteObjectsRequest multiObjectDeleteRequest = buildDeleteObjectsRequest(fileNames);
-    amazonS3.deleteObjects(multiObjectDeleteRequest);
+  public DeleteResult deleteMany(List<String> fileNames) {
+    final List<CompletableFuture<DeleteResult>> batches = new ArrayList<>();
+    for (int from = 0; from < fileNames.size(); from += MAX_DELETE_BATCH_SIZE) {
+      final List<String> batch =
+          fileNames.subList(from, Math.min(from + MAX_DELETE_BATCH_SIZE, fileNames.size()));
+      batches.add(
+          supplyAsync(() -> deleteBatch(batch), deleteExecutor)
+              .exceptionally(e -> failedBatch(batch, e)));
+    }
+    return DeleteResult.merge(
+        batches.stream().map(CompletableFuture::join).collect(Collectors.toList()));
+  }
+
+  private DeleteResult deleteBatch(List<String> fileNames) {
+    try {
+      amazonS3.deleteObjects(buildDeleteObjectsRequest(fileNames));
+      return DeleteResult.deleted(fileNames);
+    } catch (MultiObjectDeleteException e) {
+      final Map<String, String> failed = new LinkedHashMap<>();
+      e.getErrors().forEach(error -> failed.put(error.getKey(), error.getMessage()));
+      final List<String> deleted =
+          fileNames.stream()
+              .filter(fileName -> !failed.containsKey(fileName))
+              .collect(Collectors.toList());
+      logger.warn("Failed to delete {} of {} items.", failed.size(), fileNames.size());
+      return new DeleteResult(deleted, failed);
+    } catch (RuntimeException e) {
+      return failedBatch(fileNames, e);
+    }
+  }
+
+  private static DeleteResult failedBatch(List<String> fileNames, Throwable error) {
+    final Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+    logger.warn("Failed to delete batch of {} items.", fileNames.size(), cause);
+    final Map<String, String> failed = new LinkedHashMap<>();
+    fileNames.forEach(fileName -> failed.put(fileName, cause.getMessage()));
+    return new DeleteResult(List.of(), failed);
   }
 
-  private ObjectMetadata buildMetadata(Resource file) throws IOException {
+  private ObjectMetadata buildMetadata(Resource file, String fileName) throws IOException {
     ObjectMetadata metadata = new ObjectMetadata();
     metadata.setContentLength(file.contentLength());
+    metadata.addUserMetadata(CONTENT_HASH_METADATA, ContentHash.of(file));
+    final ImageType.ImageExtension extension = ImageType.ImageExtension.findByFileName(fileName);
+    if (extension != null) {
+      metadata.setContentType(extension.getMediaType().toString());
+    }
     return metadata;
   }
 
+  private static Resource readIfOpen(Resource resource) {
+    return resource.isOpen() ? readAll(resource) : resource;
+  }
+
+  private static Resource readAll(Resource resource) {
+    try (InputStream inputStream = resource.getInputStream()) {
+      return new ByteArrayResource(inputStream.readAllBytes());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
   private DeleteObjectsRequest buildDeleteObjectsRequest(List<String> fileNames) {
     return new DeleteObjectsRequest(bucketName)
         .withKeys(fileNames.toArray(String[]::new))
@@ -0,0 +1,73 @@
+package com.edorogush.debijenkorftask.service;
+
+import com.edorogush.debijenkorftask.exception.ServiceUnavailableException;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking limiter of concurrent operations. Permit is granted by completion of future, so
+ * caller's thread is not blocked while waiting for it. Waiting callers are kept in the queue of
+ * limited capacity, when the queue is full permit is refused with {@link
+ * ServiceUnavailableException}. Waiting could be abandoned by completing the future returned, e.g.
+ * with timeout, permit is not granted to it then.
+ */
+final class ConcurrencyLimiter {
+  private final int maxWaiting;
+  private final Queue<CompletableFuture<Void>> waiting = new ArrayDeque<>();
+  private int permits;
+
+  /**
+   * @param maxConcurrent max number of permits granted at once.
+   * @param maxWaiting max number of callers waiting for permit.
+   */
+  ConcurrencyLimiter(int maxConcurrent, int maxWaiting) {
+    this.permits = maxConcurrent;
+    this.maxWaiting = maxWaiting;
+  }
+
+  /**
+   * Method to request permit. Permit granted must be released with {@link #release}.
+   *
+   * @return future completed when permit is granted, or completed exceptionally with {@link
+   *     ServiceUnavailableException} if too many callers are waiting already.
+   */
+  synchronized CompletableFuture<Void> acquire() {
+    if (permits > 0) {
+      permits--;
+      return CompletableFuture.completedFuture(null);
+    }
+    waiting.removeIf(CompletableFuture::isDone);
+    if (waiting.size() >= maxWaiting) {
+      return CompletableFuture.failedFuture(
+          new ServiceUnavailableException("Too many requests waiting.", null));
+    }
+    final CompletableFuture<Void> permit = new CompletableFuture<>();
+    waiting.add(permit);
+    return permit;
+  }
+
+  /** Method to release permit, it is granted to the first caller still waiting. */
+  void release() {
+    while (true) {
+      final CompletableFuture<Void> next;
+      synchronized (this) {
+        next = waiting.poll();
+        if (next == null) {
+          permits++;
+          return;
+        }
+      }
+      // completed outside of lock, as it runs caller's continuation
+      if (next.complete(null)) {
+        return;
+      }
+    }
+  }
+
+  synchronized int waiting() {
+    waiting.removeIf(CompletableFuture::isDone);
+    return waiting.size();
+  }
+}
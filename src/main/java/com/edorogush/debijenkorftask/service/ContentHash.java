@@ -0,0 +1,65 @@
+package com.edorogush.debijenkorftask.service;
+
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Utility class to provide static methods to calculate hash of item's content. The hash is used as
+ * ETag of the item, so it does not depend on the storage the item is read from.
+ */
+public final class ContentHash {
+  private static final String ALGORITHM = "SHA-256";
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  private ContentHash() {}
+
+  public static String of(byte[] content) {
+    final MessageDigest digest = newDigest();
+    digest.update(content);
+    return toHex(digest.digest());
+  }
+
+  /**
+   * Method to calculate hash of resource's content. Resource is read once, so resource of {@link
+   * Resource#isOpen()} type cannot be read again afterwards.
+   */
+  public static String of(Resource resource) {
+    if (resource instanceof ByteArrayResource) {
+      return of(((ByteArrayResource) resource).getByteArray());
+    }
+    final MessageDigest digest = newDigest();
+    final byte[] buffer = new byte[8192];
+    try (InputStream inputStream = resource.getInputStream()) {
+      int read;
+      while ((read = inputStream.read(buffer)) >= 0) {
+        digest.update(buffer, 0, read);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return toHex(digest.digest());
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance(ALGORITHM);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static String toHex(byte[] bytes) {
+    final char[] hex = new char[bytes.length * 2];
+    for (int i = 0; i < bytes.length; i++) {
+      hex[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+      hex[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xf];
+    }
+    return new String(hex);
+  }
+}
@@ -0,0 +1,438 @@
+package com.edorogush.debijenkorftask.service;
+
+import com.edorogush.debijenkorftask.model.DeleteResult;
+import com.edorogush.debijenkorftask.model.FileMetadata;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The class is implementation of {@link FileStorage} interface which keeps items on local disk and
+ * delegates all other requests to another {@link FileStorage}. Items are stored under {@code
+ * rootDir} with the same relative path as their name followed by generation number, so the
+ * directory layout follows {@link StorageLocationResolver}. File of cached item is never changed,
+ * new content of the item is written to the file of next generation, so files are read, written
+ * and deleted without the cache being locked. Items are returned as links of {@link PinnedFiles},
+ * which could be sent to client directly from disk, and could be read to the end even if the item
+ * is evicted meanwhile. Metadata of cached items is the one returned by underlying storage, so
+ * validators do not depend on the tier.
+ *
+ * <p>Cache capacity is limited by total size of items in bytes, the least recently used items are
+ * evicted. Items bigger than the whole capacity are never cached. The index of items is rebuilt
+ * from {@code rootDir} content on creation, so cached items survive restart. Items restored after
+ * restart are ordered by last modification time.
+ */
+public class DiskCacheFileStorage implements FileStorage {
+  private static final Logger logger = LogManager.getLogger();
+  private static final String TEMP_FILE_SUFFIX = ".tmp";
+  private static final String PIN_DIR = ".pinned";
+  private static final Pattern GENERATION_SUFFIX = Pattern.compile("\\.([0-9]+)$");
+  private final FileStorage fileStorage;
+  private final Path rootDir;
+  private final long maxSizeBytes;
+  private final PinnedFiles pinnedFiles;
+  private final LinkedHashMap<String, CachedFile> items = new LinkedHashMap<>(16, 0.75f, true);
+  private final Map<String, FileMetadata> metadataByName = new HashMap<>();
+  private final AtomicLong generations = new AtomicLong();
+  private long sizeBytes;
+  private long invalidations;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  public DiskCacheFileStorage(FileStorage fileStorage, Path rootDir, long maxSizeBytes) {
+    this.fileStorage = fileStorage;
+    this.rootDir = rootDir.toAbsolutePath().normalize();
+    this.maxSizeBytes = maxSizeBytes;
+    this.pinnedFiles = new PinnedFiles(this.rootDir.resolve(PIN_DIR));
+    rebuildIndex();
+  }
+
+  /**
+   * {@inheritDoc} Item is searched on local disk first. If it is not there, it is read from
+   * underlying {@link FileStorage} and saved to local disk.
+   */
+  @Override
+  public Resource get(String fileName) {
+    final CachedFile cached;
+    final FileMetadata cachedMetadata;
+    final long invalidationsBeforeRead;
+    synchronized (this) {
+      cached = items.get(fileName);
+      cachedMetadata = metadataByName.get(fileName);
+      invalidationsBeforeRead = invalidations;
+    }
+    if (cached != null) {
+      final Resource pinned = pin(cached.path, cachedMetadata);
+      if (pinned != null) {
+        hits.incrementAndGet();
+        return pinned;
+      }
+    }
+    // item is not cached, or its file was evicted or deleted from disk not by cache meanwhile
+    misses.incrementAndGet();
+    final Resource resource = fileStorage.get(fileName);
+    if (!isCacheable(resource)) {
+      return resource;
+    }
+    final FileMetadata metadata = StoredResource.metadataOf(resource).orElse(null);
+    final CachedFile written = write(resource, fileName);
+    final List<Path> obsolete = new ArrayList<>();
+    final boolean added;
+    synchronized (this) {
+      // item might be changed or deleted while it was being read, it must not be cached then
+      added = invalidations == invalidationsBeforeRead && add(fileName, written, obsolete);
+      if (added && metadata != null) {
+        metadataByName.put(fileName, metadata);
+      }
+    }
+    delete(added ? obsolete : List.of(written.path));
+    final Resource pinned = added ? pin(written.path, metadata) : null;
+    return pinned != null ? pinned : fileStorage.get(fileName);
+  }
+
+  /**
+   * {@inheritDoc} Range of cached item is read from the file if cached item matches {@code
+   * metadata}. Range of item not cached is read from underlying {@link FileStorage} and is not
+   * cached.
+   */
+  @Override
+  public Resource getRange(String fileName, FileMetadata metadata, long start, long end) {
+    final CachedFile cached;
+    synchronized (this) {
+      cached = metadata.matches(metadataByName.get(fileName)) ? items.get(fileName) : null;
+    }
+    if (cached != null) {
+      try {
+        final Resource range = ResourceRanges.read(cached.path, start, end);
+        hits.incrementAndGet();
+        return range;
+      } catch (IOException e) {
+        // file might be evicted meanwhile
+      }
+    }
+    misses.incrementAndGet();
+    return fileStorage.getRange(fileName, metadata, start, end);
+  }
+
+  /**
+   * {@inheritDoc} Metadata of cached item is kept in memory. If it was not known when item was
+   * cached, e.g. item was put or restored after restart, it is requested from underlying storage
+   * once.
+   */
+  @Override
+  public FileMetadata head(String fileName) {
+    final long invalidationsBeforeRead;
+    synchronized (this) {
+      final FileMetadata known = metadataByName.get(fileName);
+      if (known != null) {
+        return known;
+      }
+      invalidationsBeforeRead = invalidations;
+    }
+    final FileMetadata metadata = fileStorage.head(fileName);
+    synchronized (this) {
+      if (invalidations == invalidationsBeforeRead && items.containsKey(fileName)) {
+        metadataByName.put(fileName, metadata);
+      }
+    }
+    return metadata;
+  }
+
+  @Override
+  public void list(String prefix, Consumer<List<String>> pageConsumer) {
+    fileStorage.list(prefix, pageConsumer);
+  }
+
+  @Override
+  public List<String> listDirectories(String prefix) {
+    return fileStorage.listDirectories(prefix);
+  }
+
+  /**
+   * {@inheritDoc} Item is saved to local disk only after it was put to underlying storage. Cached
+   * item is invalidated both before and after the put, so that previous item read by concurrent
+   * {@link #get} while the put is in progress is not cached.
+   */
+  @Override
+  public void put(Resource file, String fileName) {
+    put(file, fileName, fileStorage::put);
+  }
+
+  /** {@inheritDoc} Item is cached in the same way as by {@link #put}. */
+  @Override
+  public void putInBackground(Resource file, String fileName) {
+    put(file, fileName, fileStorage::putInBackground);
+  }
+
+  private void put(Resource file, String fileName, BiConsumer<Resource, String> underlyingPut) {
+    invalidate(List.of(fileName));
+    underlyingPut.accept(file, fileName);
+    // stream is already consumed by underlying storage
+    final CachedFile written = file.isOpen() || !isCacheable(file) ? null : write(file, fileName);
+    final List<Path> obsolete = new ArrayList<>();
+    synchronized (this) {
+      invalidations++;
+      remove(fileName, obsolete);
+      if (written != null && !add(fileName, written, obsolete)) {
+        obsolete.add(written.path);
+      }
+    }
+    delete(obsolete);
+  }
+
+  @Override
+  public void deleteOne(String fileName) {
+    fileStorage.deleteOne(fileName);
+    invalidate(List.of(fileName));
+  }
+
+  @Override
+  public DeleteResult deleteMany(List<String> fileNames) {
+    final DeleteResult result = fileStorage.deleteMany(fileNames);
+    invalidate(fileNames);
+    return result;
+  }
+
+  /**
+   * Method to register cache metrics.
+   *
+   * @param meterRegistry registry where metrics are published.
+   */
+  public void bindTo(MeterRegistry meterRegistry) {
+    FunctionCounter.builder("image.cache.disk.hits", hits, AtomicLong::get)
+        .description("The number of requests served from disk cache.")
+        .register(meterRegistry);
+    FunctionCounter.builder("image.cache.disk.misses", misses, AtomicLong::get)
+        .description("The number of requests delegated to underlying file storage.")
+        .register(meterRegistry);
+    FunctionCounter.builder("image.cache.disk.evictions", evictions, AtomicLong::get)
+        .description("The number of items evicted from disk cache.")
+        .register(meterRegistry);
+    Gauge.builder("image.cache.disk.size", this, DiskCacheFileStorage::sizeBytes)
+        .description("The total size of items in disk cache.")
+        .baseUnit("bytes")
+        .register(meterRegistry);
+  }
+
+  long hits() {
+    return hits.get();
+  }
+
+  long evictions() {
+    return evictions.get();
+  }
+
+  synchronized long sizeBytes() {
+    return sizeBytes;
+  }
+
+  private void invalidate(List<String> fileNames) {
+    final List<Path> obsolete = new ArrayList<>();
+    synchronized (this) {
+      invalidations++;
+      fileNames.forEach(fileName -> remove(fileName, obsolete));
+    }
+    delete(obsolete);
+  }
+
+  /**
+   * Method to cache item written to file, the cache must be locked. Files of replaced and evicted
+   * items are added to {@code obsolete} to be deleted after the cache is unlocked.
+   *
+   * @return {@code false} if item is bigger than cache capacity and is not cached.
+   */
+  private boolean add(String fileName, CachedFile file, List<Path> obsolete) {
+    if (file.size > maxSizeBytes) {
+      return false;
+    }
+    remove(fileName, obsolete);
+    sizeBytes += file.size;
+    evictIfNeeded(obsolete);
+    // added after eviction, so it is not evicted itself
+    items.put(fileName, file);
+    return true;
+  }
+
+  private void evictIfNeeded(List<Path> obsolete) {
+    final Iterator<Map.Entry<String, CachedFile>> iterator = items.entrySet().iterator();
+    while (sizeBytes > maxSizeBytes && iterator.hasNext()) {
+      final Map.Entry<String, CachedFile> eldest = iterator.next();
+      iterator.remove();
+      metadataByName.remove(eldest.getKey());
+      sizeBytes -= eldest.getValue().size;
+      obsolete.add(eldest.getValue().path);
+      evictions.incrementAndGet();
+    }
+  }
+
+  private void remove(String fileName, List<Path> obsolete) {
+    final CachedFile removed = items.remove(fileName);
+    metadataByName.remove(fileName);
+    if (removed != null) {
+      sizeBytes -= removed.size;
+      obsolete.add(removed.path);
+    }
+  }
+
+  private Path resolve(String fileName) {
+    final Path path = rootDir.resolve(fileName.startsWith("/") ? fileName.substring(1) : fileName);
+    if (!path.normalize().startsWith(rootDir) || path.normalize().startsWith(pinDir())) {
+      throw new IllegalArgumentException(
+          String.format("File name %s is outside of disk cache directory.", fileName));
+    }
+    return path;
+  }
+
+  private Path pinDir() {
+    return rootDir.resolve(PIN_DIR);
+  }
+
+  /** Method to write item to the file of new generation. */
+  private CachedFile write(Resource resource, String fileName) {
+    final Path path = resolve(fileName);
+    try (InputStream inputStream = resource.getInputStream()) {
+      Files.createDirectories(path.getParent());
+      final Path tempFile =
+          Files.createTempFile(path.getParent(), path.getFileName().toString(), TEMP_FILE_SUFFIX);
+      final long size = Files.copy(inputStream, tempFile, StandardCopyOption.REPLACE_EXISTING);
+      final Path file = withGeneration(path, generations.incrementAndGet());
+      Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE);
+      return new CachedFile(file, size);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static Path withGeneration(Path path, long generation) {
+    return path.resolveSibling(path.getFileName() + "." + generation);
+  }
+
+  /** Method to check size of item before it is written, content of open resource is not read. */
+  private boolean isCacheable(Resource resource) {
+    try {
+      return resource.isOpen() || resource.contentLength() <= maxSizeBytes;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** @return resource of pinned file, or {@code null} if the file does not exist anymore. */
+  private Resource pin(Path file, FileMetadata metadata) {
+    try {
+      return new StoredFileResource(pinnedFiles.pin(file), metadata);
+    } catch (NoSuchFileException e) {
+      return null;
+    } catch (IOException e) {
+      logger.warn("Failed to pin file {} of disk cache.", file, e);
+      return null;
+    }
+  }
+
+  private void delete(List<Path> paths) {
+    paths.forEach(this::delete);
+  }
+
+  private void delete(Path path) {
+    try {
+      Files.deleteIfExists(path);
+    } catch (IOException e) {
+      logger.warn("Failed to delete file {} from disk cache.", path, e);
+    }
+  }
+
+  /**
+   * Method to restore index from files of {@code rootDir}. Only the latest generation of item is
+   * restored, files of previous generations and files without generation, e.g. left after
+   * interrupted write, are deleted.
+   */
+  private synchronized void rebuildIndex() {
+    try {
+      Files.createDirectories(rootDir);
+      final List<Path> files;
+      try (Stream<Path> paths = Files.walk(rootDir)) {
+        files =
+            paths
+                .filter(path -> !path.startsWith(pinDir()))
+                .filter(Files::isRegularFile)
+                .collect(Collectors.toList());
+      }
+      final Map<String, Map.Entry<Long, Path>> latest = new HashMap<>();
+      final List<Path> obsolete = new ArrayList<>();
+      for (Path file : files) {
+        final String relativePath = rootDir.relativize(file).toString().replace('\\', '/');
+        final Matcher matcher = GENERATION_SUFFIX.matcher(relativePath);
+        if (!matcher.find()) {
+          obsolete.add(file);
+          continue;
+        }
+        final String fileName = relativePath.substring(0, matcher.start());
+        final long generation = Long.parseLong(matcher.group(1));
+        generations.accumulateAndGet(generation, Math::max);
+        final Map.Entry<Long, Path> previous = latest.get(fileName);
+        if (previous == null || previous.getKey() < generation) {
+          latest.put(fileName, Map.entry(generation, file));
+        }
+        if (previous != null) {
+          obsolete.add(previous.getKey() < generation ? previous.getValue() : file);
+        }
+      }
+      delete(obsolete);
+      final List<Map.Entry<String, BasicFileAttributes>> cached = new ArrayList<>();
+      for (Map.Entry<String, Map.Entry<Long, Path>> entry : latest.entrySet()) {
+        final Path file = entry.getValue().getValue();
+        cached.add(
+            Map.entry(entry.getKey(), Files.readAttributes(file, BasicFileAttributes.class)));
+      }
+      cached.sort(Comparator.comparing(entry -> entry.getValue().lastModifiedTime()));
+      for (Map.Entry<String, BasicFileAttributes> entry : cached) {
+        final Path file = latest.get(entry.getKey()).getValue();
+        items.put(entry.getKey(), new CachedFile(file, entry.getValue().size()));
+        sizeBytes += entry.getValue().size();
+      }
+      final List<Path> evicted = new ArrayList<>();
+      evictIfNeeded(evicted);
+      delete(evicted);
+      logger.info("Disk cache index rebuilt: {} files, {} bytes.", items.size(), sizeBytes);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** File of cached item, which is not changed while it is cached. */
+  private static final class CachedFile {
+    private final Path path;
+    private final long size;
+
+    private CachedFile(Path path, long size) {
+      this.path = path;
+      this.size = size;
+    }
+  }
+}
@@ -0,0 +1,46 @@
+package com.edorogush.debijenkorftask.service;
+
+/**
+ * Represents the way of choosing items to evict from a size-bounded cache. Implementations are not
+ * thread-safe, the cache is responsible for synchronization.
+ */
+public interface EvictionPolicy {
+
+  /**
+   * Method to register request for item. It is called both for cached and not cached items.
+   *
+   * @param key item's key.
+   */
+  void recordAccess(String key);
+
+  /**
+   * Method to register item added to the cache.
+   *
+   * @param key item's key.
+   */
+  void add(String key);
+
+  /**
+   * Method to register item removed from the cache.
+   *
+   * @param key item's key.
+   */
+  void remove(String key);
+
+  /**
+   * Method to list items in the order they should be evicted. Items must not be added or removed
+   * while the result is iterated.
+   *
+   * @return keys of cached items, the item to evict next goes first.
+   */
+  Iterable<String> victims();
+
+  /**
+   * Method to decide whether new item should be added to the cache in place of {@code victim}.
+   *
+   * @param candidate key of the item to add.
+   * @param victim key of the item to evict.
+   * @return {@code true} if {@code victim} should be evicted in favour of {@code candidate}.
+   */
+  boolean admit(String candidate, String victim);
+}
@@ -1,9 +1,13 @@
 package com.edorogush.debijenkorftask.service;
 
 import com.edorogush.debijenkorftask.exception.NotFoundException;
+import com.edorogush.debijenkorftask.model.DeleteResult;
+import com.edorogush.debijenkorftask.model.FileMetadata;
 import org.springframework.core.io.Resource;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 /** Represents CRUD operations for selected storage. */
 public interface FileStorage {
@@ -16,6 +20,64 @@ public interface FileStorage {
    */
   Resource get(String fileName);
 
+  /**
+   * Method to read range of data item's content from storage. Only the range requested is read.
+   * Range is read of the item described by {@code metadata}, so that it matches validators already
+   * sent to client. If item has been replaced since, range of another content is not returned.
+   *
+   * @param fileName absolute path name of item.
+   * @param metadata metadata of item returned by {@link #head}.
+   * @param start the first byte of the range, inclusive.
+   * @param end the last byte of the range, inclusive. Range ends at the end of item if {@code end}
+   *     exceeds it.
+   * @return {@link Resource} range of item's content.
+   * @throws NotFoundException when requested file not found, or it does not match {@code
+   *     metadata} anymore.
+   */
+  Resource getRange(String fileName, FileMetadata metadata, long start, long end);
+
+  /**
+   * Method to read metadata of data item from storage without reading item's content.
+   *
+   * @param fileName absolute path name of item.
+   * @return {@link FileMetadata} of item.
+   * @throws NotFoundException when requested file not found.
+   */
+  FileMetadata head(String fileName);
+
+  /**
+   * Method to list names of items in storage which start with {@code prefix}.
+   *
+   * @param prefix the beginning of absolute path names, empty to list all items.
+   * @return List of absolute path names of items found.
+   */
+  default List<String> list(String prefix) {
+    final List<String> fileNames = new ArrayList<>();
+    list(prefix, fileNames::addAll);
+    return fileNames;
+  }
+
+  /**
+   * Method to list names of items in storage which start with {@code prefix} page by page, so that
+   * names of many items are not kept in memory at once. Every page is passed to {@code
+   * pageConsumer} as soon as it is listed, the next page is listed after the consumer returns.
+   *
+   * @param prefix the beginning of absolute path names, empty to list all items.
+   * @param pageConsumer receiver of absolute path names of items found, page by page.
+   * @throws RuntimeException thrown by {@code pageConsumer}, listing is stopped then.
+   */
+  void list(String prefix, Consumer<List<String>> pageConsumer);
+
+  /**
+   * Method to list directories of items which names start with {@code prefix}, without listing the
+   * items themselves. Directory is the beginning of item name up to the first '/' after {@code
+   * prefix}, items which names have no '/' after {@code prefix} are not listed.
+   *
+   * @param prefix the beginning of absolute path names, e.g. imageType directory with '/'.
+   * @return List of distinct directories found, every one ends with '/'.
+   */
+  List<String> listDirectories(String prefix);
+
   /**
    * Method to create item in storage
    *
@@ -24,6 +86,18 @@ public interface FileStorage {
    */
   void put(Resource file, String fileName);
 
+  /**
+   * Method to create item in storage which the caller does not wait for, e.g. image processed
+   * ahead of requests. Storage could return before item is stored, item is returned by {@link #get}
+   * meanwhile. By default item is put by {@link #put}.
+   *
+   * @param file {@link Resource} item's data.
+   * @param fileName absolute path name of item.
+   */
+  default void putInBackground(Resource file, String fileName) {
+    put(file, fileName);
+  }
+
   /**
    * Method to delete one item from storage.
    *
@@ -32,9 +106,11 @@ public interface FileStorage {
   void deleteOne(String fileName);
 
   /**
-   * Method to delete many items from storage.
+   * Method to delete many items from storage. Failure to delete some items does not prevent others
+   * from being deleted.
    *
    * @param fileNames List of absolute path names of items should be deleted.
+   * @return {@link DeleteResult} of every item requested.
    */
-  void deleteMany(List<String> fileNames);
+  DeleteResult deleteMany(List<String> fileNames);
 }
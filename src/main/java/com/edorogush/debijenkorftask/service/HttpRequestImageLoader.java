@@ -2,53 +2,193 @@ package com.edorogush.debijenkorftask.service;
 
 import com.edorogush.debijenkorftask.exception.ImageLoaderRequestException;
 import com.edorogush.debijenkorftask.exception.NotFoundInSourceException;
+import com.edorogush.debijenkorftask.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.Resource;
 import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
 
-import java.io.IOException;
+import javax.annotation.PreDestroy;
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * The class is implementation of {@link ImageLoader} interface and loading images from web source
  * with Http request. Image source URL is configured by {@code source-root-url} parameter.
+ *
+ * <p>Requests are sent asynchronously over HTTP/2 if the source supports it, so that many requests
+ * share the same connection. Responses are handled by the dedicated thread pool of fixed size. The
+ * number of requests sent to the same origin at once is limited, the others wait for their turn
+ * without occupying a thread. Waiting for the turn and the request itself are limited by {@code
+ * requestTimeout} each. Cancelling the future returned abandons waiting for the turn, or gives
+ * the turn of the request sent to the next request at once. The request sent is cancelled and its
+ * body is not received anymore, though on some JDK versions the exchange still runs until the
+ * response headers arrive or the request times out.
  */
 @Service
 public class HttpRequestImageLoader implements ImageLoader {
   private static final Logger logger = LogManager.getLogger();
   private final HttpClient httpClient;
+  private final ExecutorService executor;
   private final String baseUri;
+  private final Duration requestTimeout;
+  private final int maxConcurrentRequestsPerOrigin;
+  private final int maxWaitingRequestsPerOrigin;
+  private final ConcurrentMap<String, ConcurrencyLimiter> limitersByOrigin =
+      new ConcurrentHashMap<>();
+  private final MeterRegistry meterRegistry;
 
+  /**
+   * @param baseUrl the root url where to get the images from.
+   * @param threads number of threads handling responses.
+   * @param connectTimeoutMs max time (ms) to establish connection.
+   * @param requestTimeoutMs max time (ms) to wait for response, and max time to wait for the turn
+   *     to send request.
+   * @param maxConcurrentRequestsPerOrigin max number of requests sent to the same origin at once.
+   * @param maxWaitingRequestsPerOrigin max number of requests waiting for their turn. When
+   *     exceeded, request fails with {@link ServiceUnavailableException}.
+   * @param meterRegistry registry where metrics are published.
+   */
   public HttpRequestImageLoader(
-      HttpClient httpClient, @Value("${source-root-url}") String baseUrl) {
-    this.httpClient = httpClient;
+      @Value("${source-root-url}") String baseUrl,
+      @Value("${imageLoader.threads}") int threads,
+      @Value("${imageLoader.connect-timeout-ms}") long connectTimeoutMs,
+      @Value("${imageLoader.request-timeout-ms}") long requestTimeoutMs,
+      @Value("${imageLoader.max-concurrent-requests-per-origin}")
+          int maxConcurrentRequestsPerOrigin,
+      @Value("${imageLoader.max-waiting-requests-per-origin}") int maxWaitingRequestsPerOrigin,
+      MeterRegistry meterRegistry) {
+    this.executor =
+        Executors.newFixedThreadPool(threads, new CustomizableThreadFactory("image-loader-"));
+    this.httpClient =
+        HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+            .executor(executor)
+            .build();
     this.baseUri = baseUrl;
+    this.requestTimeout = Duration.ofMillis(requestTimeoutMs);
+    this.maxConcurrentRequestsPerOrigin = maxConcurrentRequestsPerOrigin;
+    this.maxWaitingRequestsPerOrigin = maxWaitingRequestsPerOrigin;
+    this.meterRegistry = meterRegistry;
+    Gauge.builder("image.loader.waiting", limitersByOrigin, HttpRequestImageLoader::waiting)
+        .description("The number of requests to source waiting for their turn.")
+        .register(meterRegistry);
     logger.debug("HttpRequestImageLoader initialized with URL: {}", baseUrl);
   }
 
   @Override
-  public Resource getImageFromSource(String imageId) {
-    URI uri = URI.create(baseUri + "/" + imageId);
-    HttpRequest request = HttpRequest.newBuilder().GET().uri(uri).build();
+  public CompletableFuture<Resource> getImageFromSourceAsync(String imageId) {
+    final long startedAt = System.nanoTime();
+    final URI uri = URI.create(baseUri + "/" + imageId);
+    final HttpRequest request =
+        HttpRequest.newBuilder().GET().uri(uri).timeout(requestTimeout).build();
+    final ConcurrencyLimiter limiter =
+        limitersByOrigin.computeIfAbsent(
+            uri.getScheme() + "://" + uri.getAuthority(),
+            origin ->
+                new ConcurrencyLimiter(
+                    maxConcurrentRequestsPerOrigin, maxWaitingRequestsPerOrigin));
+    final CompletableFuture<Void> permit = limiter.acquire();
+    final CompletableFuture<Void> cancelled = new CompletableFuture<>();
+    final CompletableFuture<Resource> result =
+        permit
+            .orTimeout(requestTimeout.toMillis(), TimeUnit.MILLISECONDS)
+            .thenCompose(granted -> send(request, limiter, cancelled))
+            .handle(
+                (response, error) -> {
+                  try {
+                    final Resource resource =
+                        retrieveFromResponse(response, error, request, imageId);
+                    record("success", startedAt);
+                    return resource;
+                  } catch (RuntimeException e) {
+                    record(outcome(e), startedAt);
+                    throw e;
+                  }
+                });
+    result.whenComplete(
+        (resource, error) -> {
+          if (result.isCancelled()) {
+            // permit not granted yet is not granted anymore, request sent releases its permit
+            permit.cancel(false);
+            cancelled.complete(null);
+          }
+        });
+    return result;
+  }
+
+  private CompletableFuture<HttpResponse<byte[]>> send(
+      HttpRequest request,
+      ConcurrencyLimiter limiter,
+      CompletableFuture<Void> cancelled) {
+    // permit is released once, either when the caller gives up or when the response is received
+    final AtomicBoolean released = new AtomicBoolean();
+    final Runnable release =
+        () -> {
+          if (released.compareAndSet(false, true)) {
+            limiter.release();
+          }
+        };
+    if (cancelled.isDone()) {
+      release.run();
+      return CompletableFuture.failedFuture(new CancellationException());
+    }
     try {
-      HttpResponse<byte[]> response =
-          httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
-      return retrieveFromResponse(response, request, imageId);
-    } catch (IOException | InterruptedException e) {
-      throw new ImageLoaderRequestException(
-          String.format("Request %s : %s failed.", request.method(), request.uri().getPath()), e);
+      final CompletableFuture<HttpResponse<byte[]>> response =
+          httpClient.sendAsync(
+              request,
+              responseInfo ->
+                  new CancellableBodySubscriber<>(
+                      HttpResponse.BodySubscribers.ofByteArray(), cancelled));
+      cancelled.thenRun(
+          () -> {
+            release.run();
+            response.cancel(true);
+          });
+      return response.whenComplete((ignored, error) -> release.run());
+    } catch (RuntimeException e) {
+      release.run();
+      throw e;
     }
   }
 
   private Resource retrieveFromResponse(
-      HttpResponse<byte[]> response, HttpRequest request, String imageId) {
+      HttpResponse<byte[]> response, Throwable error, HttpRequest request, String imageId) {
+    if (error != null) {
+      final Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+      if (cause instanceof ServiceUnavailableException) {
+        throw (ServiceUnavailableException) cause;
+      }
+      throw new ImageLoaderRequestException(
+          String.format("Request %s : %s failed.", request.method(), request.uri().getPath()),
+          cause);
+    }
     if (response.statusCode() == HttpStatus.OK.value()) {
       return new ByteArrayResource(response.body());
     }
@@ -61,4 +201,74 @@ public class HttpRequestImageLoader implements ImageLoader {
             "Request %s : %s failed with code %d",
             request.method(), request.uri().getPath(), response.statusCode()));
   }
+
+  private static String outcome(RuntimeException e) {
+    if (e instanceof NotFoundInSourceException) {
+      return "not_found";
+    }
+    if (e instanceof ServiceUnavailableException) {
+      return "rejected";
+    }
+    if (e.getCause() instanceof HttpTimeoutException || e.getCause() instanceof TimeoutException) {
+      return "timeout";
+    }
+    return "error";
+  }
+
+  private void record(String outcome, long startedAt) {
+    Timer.builder("image.loader.requests")
+        .description("The time of loading image from source.")
+        .tag("outcome", outcome)
+        .publishPercentileHistogram()
+        .register(meterRegistry)
+        .record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+  }
+
+  private static int waiting(ConcurrentMap<String, ConcurrencyLimiter> limitersByOrigin) {
+    return limitersByOrigin.values().stream().mapToInt(ConcurrencyLimiter::waiting).sum();
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdown();
+  }
+
+  /** Body subscriber which stops receiving the body when the caller has given up. */
+  private static final class CancellableBodySubscriber<T>
+      implements HttpResponse.BodySubscriber<T> {
+    private final HttpResponse.BodySubscriber<T> bodySubscriber;
+    private final CompletableFuture<Void> cancelled;
+
+    private CancellableBodySubscriber(
+        HttpResponse.BodySubscriber<T> bodySubscriber, CompletableFuture<Void> cancelled) {
+      this.bodySubscriber = bodySubscriber;
+      this.cancelled = cancelled;
+    }
+
+    @Override
+    public CompletionStage<T> getBody() {
+      return bodySubscriber.getBody();
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+      bodySubscriber.onSubscribe(subscription);
+      cancelled.thenRun(subscription::cancel);
+    }
+
+    @Override
+    public void onNext(List<ByteBuffer> item) {
+      bodySubscriber.onNext(item);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      bodySubscriber.onError(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+      bodySubscriber.onComplete();
+    }
+  }
 }
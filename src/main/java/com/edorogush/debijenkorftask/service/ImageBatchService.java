@@ -0,0 +1,134 @@
+package com.edorogush.debijenkorftask.service;
+
+import com.edorogush.debijenkorftask.exception.BadRequestException;
+import com.edorogush.debijenkorftask.exception.ServiceUnavailableException;
+import com.edorogush.debijenkorftask.model.BatchItem;
+import com.edorogush.debijenkorftask.model.BatchItemResult;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Service to search many images within one request. Images are searched concurrently with {@link
+ * ImageService} in the dedicated thread pool of fixed size shared by all batch requests, so the
+ * total number of images searched at once is bounded. Waiting searches are kept in the queue of
+ * limited capacity. When the queue is full, search of the image is failed with {@link
+ * ServiceUnavailableException}, the other images of the batch are not affected.
+ */
+@Service
+public class ImageBatchService {
+  private final ImageService imageService;
+  private final RequestValidator requestValidator;
+  private final ThreadPoolExecutor executor;
+  private final Counter rejectedCounter;
+
+  public ImageBatchService(
+      ImageService imageService,
+      RequestValidator requestValidator,
+      @Value("${imageService.batch.threads}") int threads,
+      @Value("${imageService.batch.queue-capacity}") int queueCapacity,
+      MeterRegistry meterRegistry) {
+    this.imageService = imageService;
+    this.requestValidator = requestValidator;
+    this.executor =
+        new ThreadPoolExecutor(
+            threads,
+            threads,
+            0L,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            new CustomizableThreadFactory("image-batch-"),
+            new ThreadPoolExecutor.AbortPolicy());
+    this.rejectedCounter =
+        Counter.builder("image.batch.rejected")
+            .description("The number of batch image searches rejected due to full queue.")
+            .register(meterRegistry);
+    Gauge.builder("image.batch.queue.size", executor, e -> e.getQueue().size())
+        .description("The number of batch image searches waiting in the queue.")
+        .register(meterRegistry);
+    Gauge.builder("image.batch.active", executor, ThreadPoolExecutor::getActiveCount)
+        .description("The number of batch image searches being executed.")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Method to search all {@code items} concurrently. Results are passed to {@code consumer} in the
+   * caller's thread in the order searches complete, so the first results could be sent to client
+   * while the others are still being searched. Failure of one item's search does not affect the
+   * others. If {@code consumer} fails, searches not completed yet are cancelled.
+   *
+   * @param items images to search.
+   * @param consumer receiver of search results, called once per item.
+   */
+  public void findAll(List<BatchItem> items, Consumer<BatchItemResult> consumer) {
+    final CompletionService<BatchItemResult> completionService =
+        new ExecutorCompletionService<>(executor);
+    final List<Future<BatchItemResult>> futures = new ArrayList<>(items.size());
+    try {
+      for (BatchItem item : items) {
+        try {
+          futures.add(completionService.submit(() -> find(item)));
+        } catch (RejectedExecutionException e) {
+          rejectedCounter.increment();
+          consumer.accept(
+              BatchItemResult.failed(
+                  item, new ServiceUnavailableException("Batch search queue is full.", e)));
+        }
+      }
+      for (int i = 0; i < futures.size(); i++) {
+        consumer.accept(completionService.take().get());
+      }
+    } catch (ExecutionException e) {
+      // search never fails with RuntimeException, only with Error
+      throw (Error) e.getCause();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ServiceUnavailableException("Interrupted while waiting for batch search.", e);
+    } finally {
+      futures.forEach(future -> future.cancel(true));
+    }
+  }
+
+  private BatchItemResult find(BatchItem item) {
+    try {
+      if (item.getImageType() == null || item.getReference() == null) {
+        throw new BadRequestException("Both imageType and reference must be provided.");
+      }
+      requestValidator.checkImageTypeForSearch(item.getImageType());
+      requestValidator.checkImageName(item.getReference());
+      final Resource image = imageService.findByName(item.getReference(), item.getImageType());
+      try (InputStream inputStream = image.getInputStream()) {
+        return BatchItemResult.found(item, inputStream.readAllBytes());
+      }
+    } catch (IOException e) {
+      return BatchItemResult.failed(item, new UncheckedIOException(e));
+    } catch (RuntimeException e) {
+      return BatchItemResult.failed(item, e);
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdown();
+  }
+}
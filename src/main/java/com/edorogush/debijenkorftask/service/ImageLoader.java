@@ -1,15 +1,39 @@
 package com.edorogush.debijenkorftask.service;
 
+import com.edorogush.debijenkorftask.exception.ImageLoaderRequestException;
 import org.springframework.core.io.Resource;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
 /** Represents ways to load image from selected Source. */
 public interface ImageLoader {
 
   /**
-   * Method to read image from source.
+   * Method to read image from source. Caller's thread waits for the image.
    *
    * @param imageId - unique image id.
    * @return {@link Resource}
    */
-  Resource getImageFromSource(String imageId);
+  default Resource getImageFromSource(String imageId) {
+    try {
+      return getImageFromSourceAsync(imageId).join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new ImageLoaderRequestException(
+          String.format("Loading of %s failed.", imageId), e.getCause());
+    }
+  }
+
+  /**
+   * Method to read image from source without blocking caller's thread.
+   *
+   * @param imageId - unique image id.
+   * @return future completed with {@link Resource}, or completed exceptionally with the same
+   *     exceptions {@link #getImageFromSource} throws. Cancelling the future cancels the request
+   *     if implementation supports it.
+   */
+  CompletableFuture<Resource> getImageFromSourceAsync(String imageId);
 }
@@ -3,6 +3,7 @@ package com.edorogush.debijenkorftask.service;
 import org.springframework.core.io.Resource;
 
 import java.util.List;
+import java.util.Map;
 
 /** Represents ways of process images. */
 public interface ImageProcessor {
@@ -16,6 +17,15 @@ public interface ImageProcessor {
    */
   Resource processImage(Resource originalImage, String imageTypeName);
 
+  /**
+   * Method to process image in several ways at once. Original image is decoded only once.
+   *
+   * @param originalImage {@link Resource} original image to process.
+   * @param imageTypeNames {@link String} imageTypes which determine the ways of image processing.
+   * @return {@link Resource} images after processing, mapped by imageType.
+   */
+  Map<String, Resource> processImages(Resource originalImage, List<String> imageTypeNames);
+
   /**
    * Method provides all imageType are allowed.
    *
@@ -0,0 +1,64 @@
+package com.edorogush.debijenkorftask.service;
+
+import com.edorogush.debijenkorftask.model.ImageType.ScalingQuality;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/** Utility class to provide static method to scale images. */
+public final class ImageScaler {
+
+  private ImageScaler() {}
+
+  /**
+   * Method to scale image to new width and height. Unless {@link ScalingQuality#FAST} is used,
+   * image is downscaled progressively: halved in bilinear steps while it is at least twice as large
+   * as the new size, so that every source pixel contributes to the result. Final step to the exact
+   * size is bilinear, or bicubic for {@link ScalingQuality#HIGH}.
+   *
+   * @param image image to scale.
+   * @param width new width in pixels.
+   * @param height new height in pixels.
+   * @param quality {@link ScalingQuality} trade-off between speed and quality.
+   * @return new image of {@code width} and {@code height} size. Transparency is kept if the
+   *     original image has it.
+   */
+  public static BufferedImage scale(
+      BufferedImage image, int width, int height, ScalingQuality quality) {
+    final int imageType =
+        image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+    BufferedImage scaled = image;
+    if (quality != ScalingQuality.FAST) {
+      while (scaled.getWidth() / 2 >= width || scaled.getHeight() / 2 >= height) {
+        scaled =
+            draw(
+                scaled,
+                Math.max(width, scaled.getWidth() / 2),
+                Math.max(height, scaled.getHeight() / 2),
+                imageType,
+                RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+      }
+    }
+    if (scaled != image && scaled.getWidth() == width && scaled.getHeight() == height) {
+      return scaled;
+    }
+    return draw(
+        scaled,
+        width,
+        height,
+        imageType,
+        quality == ScalingQuality.HIGH
+            ? RenderingHints.VALUE_INTERPOLATION_BICUBIC
+            : RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+  }
+
+  private static BufferedImage draw(
+      BufferedImage image, int width, int height, int imageType, Object interpolation) {
+    final BufferedImage scaled = new BufferedImage(width, height, imageType);
+    final Graphics2D graphics = scaled.createGraphics();
+    graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+    graphics.drawImage(image, 0, 0, width, height, null);
+    graphics.dispose();
+    return scaled;
+  }
+}
@@ -1,12 +1,30 @@
 package com.edorogush.debijenkorftask.service;
 
 import com.edorogush.debijenkorftask.exception.NotFoundException;
+import com.edorogush.debijenkorftask.exception.NotFoundInSourceException;
+import com.edorogush.debijenkorftask.exception.ServiceUnavailableException;
+import com.edorogush.debijenkorftask.model.DeleteResult;
+import com.edorogush.debijenkorftask.model.FileMetadata;
+import com.edorogush.debijenkorftask.model.ImageType;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /** Service to manage request processing for searching and deleting images. */
@@ -17,12 +35,42 @@ public class ImageService {
   private final FileStorage fileStorage;
   private final ImageProcessor imageProcessor;
   private final ImageLoader imageLoader;
+  private final ResizeExecutor resizeExecutor;
+  private final MissingImageCache missingImageCache;
+  private final SingleFlight<Resource> inFlightMisses;
+  private final boolean eagerVariantsEnabled;
+  /** Type directories of definitions which images stored before types were versioned have. */
+  private final Set<String> legacyTypeDirectories;
+  private final MeterRegistry meterRegistry;
 
+  /**
+   * @param legacyTypeDirectories directories of type versions, e.g. {@code thumbnail/v6907ca5d},
+   *     which have the same definition images of the type stored before types were versioned were
+   *     processed with. Such images are moved to the current version only while it is one of them.
+   */
   public ImageService(
-      FileStorage fileStorage, ImageProcessor imageProcessor, ImageLoader imageLoader) {
+      FileStorage fileStorage,
+      ImageProcessor imageProcessor,
+      ImageLoader imageLoader,
+      ResizeExecutor resizeExecutor,
+      MissingImageCache missingImageCache,
+      MeterRegistry meterRegistry,
+      @Value("${imageService.in-flight.await-timeout-ms}") int inFlightAwaitTimeout,
+      @Value("${imageService.eager-variants.enabled}") boolean eagerVariantsEnabled,
+      @Value("${imageService.legacy-type-directories}") String[] legacyTypeDirectories) {
     this.fileStorage = fileStorage;
     this.imageProcessor = imageProcessor;
     this.imageLoader = imageLoader;
+    this.resizeExecutor = resizeExecutor;
+    this.missingImageCache = missingImageCache;
+    this.inFlightMisses = new SingleFlight<>(Duration.ofMillis(inFlightAwaitTimeout));
+    this.eagerVariantsEnabled = eagerVariantsEnabled;
+    this.legacyTypeDirectories =
+        Arrays.stream(legacyTypeDirectories)
+            .map(String::trim)
+            .filter(directory -> !directory.isEmpty())
+            .collect(Collectors.toSet());
+    this.meterRegistry = meterRegistry;
   }
 
   /**
@@ -31,32 +79,164 @@ public class ImageService {
    * no such image found then attempt to search the same file in "original" directory provided. If
    * still file not found an attempt to load image from {@link ImageLoader} provided. After image
    * successfully found it is added to "original" directory in {@link FileStorage} and also
-   * processed by {@link ImageProcessor} and new image is loaded to {@code imageTypeName} directory.
+   * processed by {@link ImageProcessor} within {@link ResizeExecutor} and new image is loaded to
+   * {@code imageTypeName} directory. If eager variants are enabled, image loaded from {@link
+   * ImageLoader} is processed for all imageTypes at once, and images of other imageTypes are
+   * added to {@link FileStorage} in background.
+   * Concurrent requests missing the same processed image are coalesced: only one of them loads,
+   * processes and stores the image, the others wait for its result. Image recently not found by
+   * {@link ImageLoader} is not searched again until {@link MissingImageCache} forgets it. The
+   * number of requests is counted by {@code image.lookups} tagged by the stage where image is
+   * found: {@code processed}, {@code original}, {@code source} or {@code missing}. The directory of
+   * predefined type includes version of its definition, see {@link
+   * ImageType#getStorageDirectory()}, so images are processed again after the definition changes.
    *
    * @param fileName Image's name with extension.
    * @param imageTypeName name of predefined type which defines the way of image processing vis
    *     {@link ImageProcessor} and also it is the name of directory in {@link FileStorage} where
    *     image search is provided.
    * @return {@link Resource} Image data.
+   * @throws NotFoundInSourceException if image is not found in the source.
    */
   public Resource findByName(String fileName, String imageTypeName) {
+    if (missingImageCache.isMissing(fileName)) {
+      countLookup("missing");
+      throw new NotFoundInSourceException(
+          String.format("file %s has recently not been found in source", fileName));
+    }
     final String fileNameWithoutSlashes = replaceSlash(fileName);
     final String locationInTypeDir = StorageLocationResolver.resolve(fileNameWithoutSlashes);
-    final String imageProcessedLocation = imageTypeName + locationInTypeDir;
+    final String imageProcessedLocation = typeDirectory(imageTypeName) + locationInTypeDir;
     // try to find in imageTypeName dir
     try {
-      return fileStorage.get(imageProcessedLocation + fileNameWithoutSlashes);
+      final Resource imageProcessed =
+          fileStorage.get(imageProcessedLocation + fileNameWithoutSlashes);
+      countLookup("processed");
+      return imageProcessed;
     } catch (NotFoundException e) {
       logger.info(
           "No image {} in FileStorage found",
           () -> (imageProcessedLocation + fileNameWithoutSlashes));
     }
+    return inFlightMisses.execute(
+        imageProcessedLocation + fileNameWithoutSlashes,
+        () -> processMissing(fileName, imageTypeName, fileNameWithoutSlashes, locationInTypeDir));
+  }
+
+  /**
+   * Method to read range of image with {@code fileName} with predefined {@code imageTypeName} from
+   * storage. Image is not loaded or processed if it is not in storage yet.
+   *
+   * @param fileName Image's name with extension.
+   * @param imageTypeName name of predefined type, it is the name of directory in {@link
+   *     FileStorage} where search is provided.
+   * @param metadata metadata of image returned by {@link #findMetadata}.
+   * @param start the first byte of the range, inclusive.
+   * @param end the last byte of the range, inclusive.
+   * @return {@link Resource} range of image data.
+   * @throws NotFoundException when image is not in storage, or it was replaced since {@code
+   *     metadata} was read.
+   */
+  public Resource findRangeByName(
+      String fileName, String imageTypeName, FileMetadata metadata, long start, long end) {
+    final String fileNameWithoutSlashes = replaceSlash(fileName);
+    final String locationInTypeDir = StorageLocationResolver.resolve(fileNameWithoutSlashes);
+    return fileStorage.getRange(
+        typeDirectory(imageTypeName) + locationInTypeDir + fileNameWithoutSlashes,
+        metadata,
+        start,
+        end);
+  }
+
+  /**
+   * Method to search metadata of image with {@code fileName} with predefined {@code imageTypeName}
+   * in storage. Image is not loaded or processed if it is not in storage yet.
+   *
+   * @param fileName Image's name with extension.
+   * @param imageTypeName name of predefined type, it is the name of directory in {@link
+   *     FileStorage} where search is provided.
+   * @return {@link FileMetadata} of image, or empty if image is not in storage.
+   */
+  public Optional<FileMetadata> findMetadata(String fileName, String imageTypeName) {
+    final String fileNameWithoutSlashes = replaceSlash(fileName);
+    final String locationInTypeDir = StorageLocationResolver.resolve(fileNameWithoutSlashes);
+    try {
+      return Optional.of(
+          fileStorage.head(
+              typeDirectory(imageTypeName) + locationInTypeDir + fileNameWithoutSlashes));
+    } catch (NotFoundException e) {
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Method to add images of all predefined imageTypes for {@code fileName} to storage ahead of
+   * requests. Images already in storage are not processed again, so the method could be repeated
+   * for the same image cheaply. Original image is searched in "original" directory first, then
+   * loaded from {@link ImageLoader}, and is decoded only once for all imageTypes. Images are
+   * processed as background tasks of {@link ResizeExecutor}, so that requests of clients are not
+   * rejected due to prewarming.
+   *
+   * @param fileName Image's name with extension.
+   * @return {@code false} if images of all imageTypes are already in storage.
+   */
+  public boolean prewarm(String fileName) {
+    final String fileNameWithoutSlashes = replaceSlash(fileName);
+    final String locationInTypeDir = StorageLocationResolver.resolve(fileNameWithoutSlashes);
+    final List<String> missingTypeNames =
+        imageProcessor.imageTypes().stream()
+            .filter(imageTypeName -> findMetadata(fileName, imageTypeName).isEmpty())
+            .collect(Collectors.toList());
+    if (missingTypeNames.isEmpty()) {
+      return false;
+    }
+    final String imageOriginalLocation = ORIGINAL + locationInTypeDir + fileNameWithoutSlashes;
+    Resource imageOriginal;
+    try {
+      imageOriginal = fileStorage.get(imageOriginalLocation);
+    } catch (NotFoundException e) {
+      imageOriginal = loadFromSource(fileName);
+      fileStorage.put(imageOriginal, imageOriginalLocation);
+    }
+    final Resource original = imageOriginal;
+    final Map<String, Resource> imagesProcessed =
+        resizeExecutor.executeInBackground(
+            () -> imageProcessor.processImages(original, missingTypeNames));
+    imagesProcessed.forEach(
+        (imageTypeName, imageProcessed) ->
+            fileStorage.put(
+                imageProcessed,
+                typeDirectory(imageTypeName) + locationInTypeDir + fileNameWithoutSlashes));
+    return true;
+  }
+
+  private Resource processMissing(
+      String fileName,
+      String imageTypeName,
+      String fileNameWithoutSlashes,
+      String locationInTypeDir) {
+    final String imageProcessedLocation = typeDirectory(imageTypeName) + locationInTypeDir;
+    // try to find in directory of type stored before types were versioned, if they were processed
+    // with the current definition
+    if (isVersioned(imageTypeName)
+        && legacyTypeDirectories.contains(typeDirectory(imageTypeName))) {
+      final String legacyLocation = imageTypeName + locationInTypeDir + fileNameWithoutSlashes;
+      try {
+        final Resource imageLegacy = readAll(fileStorage.get(legacyLocation));
+        countLookup("legacy");
+        fileStorage.putInBackground(imageLegacy, imageProcessedLocation + fileNameWithoutSlashes);
+        return imageLegacy;
+      } catch (NotFoundException e) {
+        logger.info("No legacy image {} in FileStorage found", () -> legacyLocation);
+      }
+    }
     // try to find in "original" dir
     final String imageOriginalLocation = ORIGINAL + locationInTypeDir;
     try {
       final Resource imageOriginal =
           fileStorage.get(imageOriginalLocation + fileNameWithoutSlashes);
-      final Resource imageProcessed = imageProcessor.processImage(imageOriginal, imageTypeName);
+      countLookup("original");
+      final Resource imageProcessed = process(imageOriginal, imageTypeName);
       fileStorage.put(imageProcessed, imageProcessedLocation + fileNameWithoutSlashes);
       return imageProcessed;
     } catch (NotFoundException e) {
@@ -65,38 +245,221 @@ public class ImageService {
           () -> (imageOriginalLocation + fileNameWithoutSlashes));
     }
     // try to load from source
-    final Resource imageOriginal = imageLoader.getImageFromSource(fileName);
+    final Resource imageOriginal;
+    try {
+      imageOriginal = loadFromSource(fileName);
+    } catch (NotFoundInSourceException e) {
+      countLookup("missing");
+      throw e;
+    }
+    countLookup("source");
     fileStorage.put(imageOriginal, imageOriginalLocation + fileNameWithoutSlashes);
-    final Resource imageProcessed = imageProcessor.processImage(imageOriginal, imageTypeName);
+    final Resource imageProcessed;
+    if (eagerVariantsEnabled && imageProcessor.imageTypes().contains(imageTypeName)) {
+      imageProcessed =
+          processAllVariants(
+              imageOriginal, imageTypeName, fileNameWithoutSlashes, locationInTypeDir);
+    } else {
+      imageProcessed = process(imageOriginal, imageTypeName);
+    }
     fileStorage.put(imageProcessed, imageProcessedLocation + fileNameWithoutSlashes);
     return imageProcessed;
   }
 
+  private void countLookup(String foundIn) {
+    meterRegistry.counter("image.lookups", "found", foundIn).increment();
+  }
+
+  /** Method to load image from {@link ImageLoader} and to remember if it is missing there. */
+  private Resource loadFromSource(String fileName) {
+    try {
+      final Resource imageOriginal = imageLoader.getImageFromSource(fileName);
+      missingImageCache.invalidate(fileName);
+      return imageOriginal;
+    } catch (NotFoundInSourceException e) {
+      missingImageCache.addMissing(fileName);
+      throw e;
+    }
+  }
+
+  /**
+   * Method to process original image for all imageTypes with single decoding. Images of imageTypes
+   * other than {@code imageTypeName} are added to {@link FileStorage} in background, they are found
+   * by requests while waiting for upload, and deleting image cancels their upload.
+   *
+   * @return image processed for {@code imageTypeName}.
+   */
+  private Resource processAllVariants(
+      Resource imageOriginal,
+      String imageTypeName,
+      String fileNameWithoutSlashes,
+      String locationInTypeDir) {
+    final Map<String, Resource> imagesProcessed =
+        resizeExecutor.execute(
+            () -> imageProcessor.processImages(imageOriginal, imageProcessor.imageTypes()));
+    imagesProcessed.forEach(
+        (variantTypeName, imageVariant) -> {
+          if (!variantTypeName.equals(imageTypeName)) {
+            final String variantLocation =
+                typeDirectory(variantTypeName) + locationInTypeDir + fileNameWithoutSlashes;
+            fileStorage.putInBackground(imageVariant, variantLocation);
+          }
+        });
+    return imagesProcessed.get(imageTypeName);
+  }
+
+  private Resource process(Resource imageOriginal, String imageTypeName) {
+    return resizeExecutor.execute(() -> imageProcessor.processImage(imageOriginal, imageTypeName));
+  }
+
   /**
    * Method to delete image/images from storage.
    *
    * @param fileName Image's name with extension.
    * @param imageType name of directory from which file should be deleted. If {@code imageType} is
    *     "original" then all * replicas of file is deleted.
+   * @throws ServiceUnavailableException if some of replicas could not be deleted.
    */
   public void deleteImage(String fileName, String imageType) {
+    missingImageCache.invalidate(fileName);
     final String fileNameWithoutSlashes = replaceSlash(fileName);
     final String locationInTypeDir = StorageLocationResolver.resolve(fileNameWithoutSlashes);
     if (!imageType.equals(ORIGINAL)) {
-      fileStorage.deleteOne(imageType + locationInTypeDir + fileNameWithoutSlashes);
+      fileStorage.deleteOne(typeDirectory(imageType) + locationInTypeDir + fileNameWithoutSlashes);
+      if (isVersioned(imageType)) {
+        // legacy image would be found again otherwise
+        fileStorage.deleteOne(imageType + locationInTypeDir + fileNameWithoutSlashes);
+      }
     } else {
       List<String> fileNameList = collectAllReplicas(fileNameWithoutSlashes, locationInTypeDir);
       fileNameList.add(ORIGINAL + locationInTypeDir + fileNameWithoutSlashes);
-      fileStorage.deleteMany(fileNameList);
+      final DeleteResult result = fileStorage.deleteMany(fileNameList);
+      if (!result.isSuccessful()) {
+        throw new ServiceUnavailableException(
+            String.format("Failed to delete images %s.", result.getFailed().keySet()), null);
+      }
     }
   }
 
-  private List<String> collectAllReplicas(String fileNameWithoutSlashes, String locationInStorage) {
-    return imageProcessor.imageTypes().stream()
-        .map(rule -> rule + locationInStorage + fileNameWithoutSlashes)
+  /**
+   * Method to list names of images stored in {@code imageType} directory which references start
+   * with {@code referencePrefix}. If the prefix is long enough to resolve its location with {@link
+   * StorageLocationResolver}, only that location of the current version of type and of the type
+   * directory before types were versioned is listed, otherwise the whole directory with all
+   * versions of type is listed and filtered. If {@code
+   * imageType} is "original" then images of all predefined types are listed as well, as they are
+   * replicas of the original.
+   *
+   * @param imageType name of directory where images are listed.
+   * @param referencePrefix the beginning of image names, empty to list all images of the type.
+   * @param pageConsumer receiver of absolute path names of images in {@link FileStorage}, page by
+   *     page.
+   */
+  public void listStored(
+      String imageType, String referencePrefix, Consumer<List<String>> pageConsumer) {
+    final List<String> imageTypes = new ArrayList<>();
+    imageTypes.add(imageType);
+    if (imageType.equals(ORIGINAL)) {
+      imageTypes.addAll(imageProcessor.imageTypes());
+    }
+    final String prefix = replaceSlash(referencePrefix);
+    final Optional<String> location = StorageLocationResolver.resolvePrefix(prefix);
+    for (String type : imageTypes) {
+      if (location.isPresent()) {
+        fileStorage.list(typeDirectory(type) + location.get() + prefix, pageConsumer);
+        if (isVersioned(type)) {
+          fileStorage.list(type + location.get() + prefix, pageConsumer);
+        }
+        continue;
+      }
+      fileStorage.list(
+          type + "/",
+          page ->
+              pageConsumer.accept(
+                  page.stream()
+                      .filter(name -> fileNameOf(name).startsWith(prefix))
+                      .collect(Collectors.toList())));
+    }
+  }
+
+  /**
+   * Method to delete images listed by {@link #listStored}.
+   *
+   * @param fileNames absolute path names of images in {@link FileStorage}.
+   * @return error messages by names of images which could not be deleted.
+   */
+  public Map<String, String> deleteStored(List<String> fileNames) {
+    return fileStorage.deleteMany(fileNames).getFailed();
+  }
+
+  /**
+   * Method to list directories of {@code imageType} other than the directory of the current version
+   * of type: directories of previous versions, and location directories of images stored before
+   * types were versioned. Only directories are listed, not images in them.
+   *
+   * @param imageType name of predefined type.
+   * @return absolute path names of directories in {@link FileStorage}, empty if type is not
+   *     versioned.
+   */
+  public List<String> listStaleDirectories(String imageType) {
+    if (!isVersioned(imageType)) {
+      return List.of();
+    }
+    final String currentDirectory = typeDirectory(imageType) + "/";
+    return fileStorage.listDirectories(imageType + "/").stream()
+        .filter(directory -> !directory.equals(currentDirectory))
         .collect(Collectors.toList());
   }
 
+  /**
+   * Method to list names of images in directories returned by {@link #listStaleDirectories}.
+   *
+   * @param directories absolute path names of directories in {@link FileStorage}.
+   * @param pageConsumer receiver of absolute path names of images in {@link FileStorage}, page by
+   *     page.
+   */
+  public void listStale(List<String> directories, Consumer<List<String>> pageConsumer) {
+    directories.forEach(directory -> fileStorage.list(directory, pageConsumer));
+  }
+
+  private List<String> collectAllReplicas(String fileNameWithoutSlashes, String locationInStorage) {
+    final List<String> replicas = new ArrayList<>();
+    for (String rule : imageProcessor.imageTypes()) {
+      replicas.add(typeDirectory(rule) + locationInStorage + fileNameWithoutSlashes);
+      if (isVersioned(rule)) {
+        replicas.add(rule + locationInStorage + fileNameWithoutSlashes);
+      }
+    }
+    return replicas;
+  }
+
+  /**
+   * Method to resolve directory of images of {@code imageTypeName}. Images of predefined types are
+   * kept in directory of the current version of type, "original" and other images in directory of
+   * the same name.
+   */
+  private static String typeDirectory(String imageTypeName) {
+    final ImageType imageType = ImageType.findByName(imageTypeName);
+    return imageType == null ? imageTypeName : imageType.getStorageDirectory();
+  }
+
+  /** @return {@code true} if images of type are kept in directory of type version. */
+  private static boolean isVersioned(String imageTypeName) {
+    return !typeDirectory(imageTypeName).equals(imageTypeName);
+  }
+
+  private static Resource readAll(Resource resource) {
+    try (InputStream inputStream = resource.getInputStream()) {
+      return new ByteArrayResource(inputStream.readAllBytes());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static String fileNameOf(String storedName) {
+    return storedName.substring(storedName.lastIndexOf('/') + 1);
+  }
+
   private String replaceSlash(String fileName) {
     return fileName.replaceAll("/", "_");
   }
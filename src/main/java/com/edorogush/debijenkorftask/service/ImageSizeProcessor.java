@@ -2,6 +2,9 @@ package com.edorogush.debijenkorftask.service;
 
 import com.edorogush.debijenkorftask.exception.ImageProcessingException;
 import com.edorogush.debijenkorftask.model.ImageType;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.core.io.ByteArrayResource;
@@ -9,24 +12,46 @@ import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
  * The class is implementation of {@link ImageProcessor} interface and provides the logic of
- * resizing images.
+ * resizing images. The time of decoding, resizing and encoding is measured by {@code
+ * image.processing.decode}, {@code image.processing.resize} and {@code image.processing.encode}
+ * timers, sizes of original and processed images are recorded by {@code image.size} distribution,
+ * all but decoding are tagged by imageType.
  */
 @Service
 public class ImageSizeProcessor implements ImageProcessor {
   private static final Logger logger = LogManager.getLogger();
+  private static final String ORIGINAL = "original";
   private final List<String> imageTypes =
       Arrays.stream(ImageType.values()).map(ImageType::getName).collect(Collectors.toList());
+  private final MeterRegistry meterRegistry;
+  private final Timer decodeTimer;
+
+  public ImageSizeProcessor(MeterRegistry meterRegistry) {
+    this.meterRegistry = meterRegistry;
+    this.decodeTimer =
+        Timer.builder("image.processing.decode")
+            .description("The time of decoding original image.")
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+  }
 
   @Override
   public List<String> imageTypes() {
@@ -35,23 +60,140 @@ public class ImageSizeProcessor implements ImageProcessor {
 
   @Override
   public Resource processImage(Resource originalImage, String imageTypeName) {
-    ImageType imageType = ImageType.findByName(imageTypeName);
-    if (imageType == null) {
-      logger.debug(
-          "No predefined imageType found for {}. No image resizing provided", imageTypeName);
-      return originalImage;
+    return processImages(originalImage, List.of(imageTypeName)).get(imageTypeName);
+  }
+
+  @Override
+  public Map<String, Resource> processImages(
+      Resource originalImage, List<String> imageTypeNames) {
+    final Map<String, Resource> imagesProcessed = new LinkedHashMap<>();
+    final Map<String, ImageType> imageTypes = new LinkedHashMap<>();
+    for (String imageTypeName : imageTypeNames) {
+      final ImageType imageType = ImageType.findByName(imageTypeName);
+      if (imageType == null) {
+        logger.debug(
+            "No predefined imageType found for {}. No image resizing provided", imageTypeName);
+        imagesProcessed.put(imageTypeName, originalImage);
+      } else {
+        imageTypes.put(imageTypeName, imageType);
+      }
     }
-    try (InputStream originalImageStream = originalImage.getInputStream();
-        ByteArrayOutputStream outStream = new ByteArrayOutputStream()) {
-      final BufferedImage imageToResize = ImageIO.read(originalImageStream);
-      final BufferedImage imageResized = resize(imageToResize, imageType);
-      ImageIO.write(imageResized, imageType.getImageExtension().name(), outStream);
-      return new ByteArrayResource(outStream.toByteArray());
+    if (imageTypes.isEmpty()) {
+      return imagesProcessed;
+    }
+    try (InputStream originalImageStream = originalImage.getInputStream()) {
+      recordSize(ORIGINAL, originalImage.contentLength());
+      final Timer.Sample decodeSample = Timer.start(meterRegistry);
+      final BufferedImage imageToResize = decode(originalImageStream, imageTypes.values());
+      decodeSample.stop(decodeTimer);
+      for (Map.Entry<String, ImageType> imageType : imageTypes.entrySet()) {
+        final Timer.Sample resizeSample = Timer.start(meterRegistry);
+        final BufferedImage imageResized = resize(imageToResize, imageType.getValue());
+        resizeSample.stop(timer("image.processing.resize", "resizing", imageType.getKey()));
+        final Timer.Sample encodeSample = Timer.start(meterRegistry);
+        final Resource imageEncoded = encode(imageResized, imageType.getValue());
+        encodeSample.stop(timer("image.processing.encode", "encoding", imageType.getKey()));
+        recordSize(imageType.getKey(), imageEncoded.contentLength());
+        imagesProcessed.put(imageType.getKey(), imageEncoded);
+      }
+      return imagesProcessed;
     } catch (IOException e) {
       throw new ImageProcessingException("Failed to resize image.", e);
     }
   }
 
+  private Timer timer(String name, String stage, String imageTypeName) {
+    return Timer.builder(name)
+        .description(String.format("The time of %s image.", stage))
+        .tag("type", imageTypeName)
+        .publishPercentileHistogram()
+        .register(meterRegistry);
+  }
+
+  private void recordSize(String imageTypeName, long sizeBytes) {
+    DistributionSummary.builder("image.size")
+        .description("The size of original and processed images.")
+        .baseUnit("bytes")
+        .tag("type", imageTypeName)
+        .publishPercentileHistogram()
+        .register(meterRegistry)
+        .record(sizeBytes);
+  }
+
+  private Resource encode(BufferedImage image, ImageType imageType) throws IOException {
+    try (ByteArrayOutputStream outStream = new ByteArrayOutputStream()) {
+      ImageIO.write(image, imageType.getImageExtension().name(), outStream);
+      return new ByteArrayResource(outStream.toByteArray());
+    }
+  }
+
+  /**
+   * Method to decode only those pixels of original image which are needed for {@code imageTypes}.
+   * For {@link ImageType.ScaleType#CROP} and {@link ImageType.ScaleType#FILL} image is not scaled,
+   * so only the region that fits the new size is decoded. For {@link ImageType.ScaleType#SKEW}
+   * image is decoded with subsampling, but still not less than twice the new size, to keep enough
+   * details for scaling. When several imageTypes are requested, the decoded image suits all of
+   * them: the largest region, the smallest subsampling, or the whole image at full resolution if
+   * both are needed.
+   */
+  private BufferedImage decode(InputStream inputStream, Collection<ImageType> imageTypes)
+      throws IOException {
+    try (ImageInputStream imageInputStream = ImageIO.createImageInputStream(inputStream)) {
+      final Iterator<ImageReader> readers = ImageIO.getImageReaders(imageInputStream);
+      if (!readers.hasNext()) {
+        throw new ImageProcessingException("Unsupported image format.");
+      }
+      final ImageReader reader = readers.next();
+      try {
+        reader.setInput(imageInputStream, true, true);
+        final ImageReadParam readParam = reader.getDefaultReadParam();
+        configureReadParam(readParam, reader.getWidth(0), reader.getHeight(0), imageTypes);
+        return reader.read(0, readParam);
+      } finally {
+        reader.dispose();
+      }
+    }
+  }
+
+  private void configureReadParam(
+      ImageReadParam readParam, int width, int height, Collection<ImageType> imageTypes) {
+    boolean wholeImage = false;
+    boolean fullResolution = false;
+    int regionWidth = 0;
+    int regionHeight = 0;
+    int subsampling = Integer.MAX_VALUE;
+    for (ImageType imageType : imageTypes) {
+      switch (imageType.getScaleType()) {
+        case CROP:
+        case FILL:
+          fullResolution = true;
+          regionWidth = Math.max(regionWidth, Math.min(width, imageType.getWidthPx()));
+          regionHeight = Math.max(regionHeight, Math.min(height, imageType.getHeightPx()));
+          break;
+        case SKEW:
+          wholeImage = true;
+          subsampling =
+              Math.min(
+                  subsampling,
+                  Math.max(
+                      1,
+                      Math.min(width / imageType.getWidthPx(), height / imageType.getHeightPx())
+                          / 2));
+          break;
+        default:
+          wholeImage = true;
+          fullResolution = true;
+          break;
+      }
+    }
+    if (!wholeImage) {
+      readParam.setSourceRegion(new Rectangle(regionWidth, regionHeight));
+    }
+    if (!fullResolution) {
+      readParam.setSourceSubsampling(subsampling, subsampling, 0, 0);
+    }
+  }
+
   private BufferedImage resize(BufferedImage imageToProcess, ImageType imageType) {
     ImageType.ScaleType scaleType = imageType.getScaleType();
     switch (scaleType) {
@@ -109,21 +251,7 @@ public class ImageSizeProcessor implements ImageProcessor {
    * imageType} parameter.
    */
   private BufferedImage skewImage(BufferedImage image, ImageType imageType) {
-    Image scaledInstance =
-        image.getScaledInstance(
-            imageType.getWidthPx(), imageType.getHeightPx(), Image.SCALE_DEFAULT);
-    return toBufferedImage(scaledInstance);
-  }
-
-  private BufferedImage toBufferedImage(Image img) {
-    if (img instanceof BufferedImage) {
-      return (BufferedImage) img;
-    }
-    BufferedImage bImage =
-        new BufferedImage(img.getWidth(null), img.getHeight(null), BufferedImage.TYPE_INT_ARGB);
-    Graphics2D bGr = bImage.createGraphics();
-    bGr.drawImage(img, 0, 0, null);
-    bGr.dispose();
-    return bImage;
+    return ImageScaler.scale(
+        image, imageType.getWidthPx(), imageType.getHeightPx(), imageType.getScalingQuality());
   }
 }
@@ -0,0 +1,203 @@
+package com.edorogush.debijenkorftask.service;
+
+import com.edorogush.debijenkorftask.exception.NotFoundException;
+import com.edorogush.debijenkorftask.model.DeleteResult;
+import com.edorogush.debijenkorftask.model.FileMetadata;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.core.io.Resource;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * The class is implementation of {@link FileStorage} interface which keeps names of all items of
+ * another {@link FileStorage} in memory, so that requests for items known to be absent fail with
+ * {@link NotFoundException} without request to storage. The index is built by {@link #build} from
+ * names listed by storage, and is kept up to date by {@link #put} and {@link #deleteOne}. Until the
+ * index is built, all requests are delegated to storage.
+ *
+ * <p>Items put to or deleted from storage by other instances are not seen by this one until the
+ * index is built again, so {@link #build} should be repeated periodically. Items put or deleted
+ * through this instance while the index is being built are merged into the new index. Absence of
+ * item in the index means it was absent when the index was built, so it is trusted only while the
+ * index is younger than {@code maxAge}. If the index could not be built again in time, all
+ * requests are delegated to storage until it is. Item deleted while the index is being built might
+ * remain in the index, such item is requested from storage as before.
+ */
+public class IndexedFileStorage implements FileStorage {
+  private static final Logger logger = LogManager.getLogger();
+  private final FileStorage fileStorage;
+  private final long maxAgeNanos;
+  private final AtomicLong skipped = new AtomicLong();
+  /** Updates of the index take read lock, replacement of the whole index takes write lock. */
+  private final ReadWriteLock indexLock = new ReentrantReadWriteLock();
+  private volatile Set<String> fileNames = ConcurrentHashMap.newKeySet();
+  /** Items put ({@code true}) or deleted ({@code false}) while the index is being built. */
+  private volatile Map<String, Boolean> changedWhileBuilding;
+  private volatile boolean built;
+  private volatile long builtAtNanos;
+
+  /**
+   * @param fileStorage storage of items.
+   * @param maxAge the max age of the index when absence of item in it is trusted.
+   */
+  public IndexedFileStorage(FileStorage fileStorage, Duration maxAge) {
+    this.fileStorage = fileStorage;
+    this.maxAgeNanos = maxAge.toNanos();
+  }
+
+  /**
+   * Method to list all items of storage and to start answering requests from the new index. Names
+   * put or deleted meanwhile are merged into it. The method must not be called concurrently.
+   */
+  public void build() {
+    final long startedAt = System.nanoTime();
+    final Map<String, Boolean> changes = new ConcurrentHashMap<>();
+    withIndexLock(indexLock.writeLock(), () -> changedWhileBuilding = changes);
+    final Set<String> listed = ConcurrentHashMap.newKeySet();
+    try {
+      listed.addAll(fileStorage.list(""));
+      withIndexLock(
+          indexLock.writeLock(),
+          () -> {
+            changes.forEach(
+                (fileName, present) -> {
+                  if (present) {
+                    listed.add(fileName);
+                  } else {
+                    listed.remove(fileName);
+                  }
+                });
+            fileNames = listed;
+            builtAtNanos = startedAt;
+            built = true;
+          });
+    } finally {
+      withIndexLock(indexLock.writeLock(), () -> changedWhileBuilding = null);
+    }
+    logger.info(
+        "Storage index of {} items built in {} ms.",
+        listed::size,
+        () -> TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+  }
+
+  @Override
+  public Resource get(String fileName) {
+    checkIndexed(fileName);
+    return fileStorage.get(fileName);
+  }
+
+  @Override
+  public Resource getRange(String fileName, FileMetadata metadata, long start, long end) {
+    checkIndexed(fileName);
+    return fileStorage.getRange(fileName, metadata, start, end);
+  }
+
+  @Override
+  public FileMetadata head(String fileName) {
+    checkIndexed(fileName);
+    return fileStorage.head(fileName);
+  }
+
+  @Override
+  public void list(String prefix, Consumer<List<String>> pageConsumer) {
+    fileStorage.list(prefix, pageConsumer);
+  }
+
+  @Override
+  public List<String> listDirectories(String prefix) {
+    return fileStorage.listDirectories(prefix);
+  }
+
+  @Override
+  public void put(Resource file, String fileName) {
+    fileStorage.put(file, fileName);
+    update(fileName, true);
+  }
+
+  @Override
+  public void putInBackground(Resource file, String fileName) {
+    fileStorage.putInBackground(file, fileName);
+    update(fileName, true);
+  }
+
+  @Override
+  public void deleteOne(String fileName) {
+    update(fileName, false);
+    fileStorage.deleteOne(fileName);
+  }
+
+  @Override
+  public DeleteResult deleteMany(List<String> fileNames) {
+    fileNames.forEach(fileName -> update(fileName, false));
+    final DeleteResult result = fileStorage.deleteMany(fileNames);
+    // items which failed to be deleted might still be in storage
+    result.getFailed().keySet().forEach(fileName -> update(fileName, true));
+    return result;
+  }
+
+  /**
+   * Method to register index metrics.
+   *
+   * @param meterRegistry registry where metrics are published.
+   */
+  public void bindTo(MeterRegistry meterRegistry) {
+    FunctionCounter.builder("image.storage.index.skipped", skipped, AtomicLong::get)
+        .description("The number of requests for absent items answered without storage.")
+        .register(meterRegistry);
+    Gauge.builder("image.storage.index.size", this, index -> index.fileNames.size())
+        .description("The number of items in storage index.")
+        .register(meterRegistry);
+  }
+
+  boolean isBuilt() {
+    return built;
+  }
+
+  private void checkIndexed(String fileName) {
+    if (built
+        && System.nanoTime() - builtAtNanos < maxAgeNanos
+        && !fileNames.contains(fileName)) {
+      skipped.incrementAndGet();
+      throw new NotFoundException(String.format("File with name %s not found.", fileName));
+    }
+  }
+
+  private void update(String fileName, boolean present) {
+    withIndexLock(
+        indexLock.readLock(),
+        () -> {
+          if (present) {
+            fileNames.add(fileName);
+          } else {
+            fileNames.remove(fileName);
+          }
+          final Map<String, Boolean> changes = changedWhileBuilding;
+          if (changes != null) {
+            changes.put(fileName, present);
+          }
+        });
+  }
+
+  private static void withIndexLock(Lock lock, Runnable action) {
+    lock.lock();
+    try {
+      action.run();
+    } finally {
+      lock.unlock();
+    }
+  }
+}
@@ -0,0 +1,331 @@
+package com.edorogush.debijenkorftask.service;
+
+import com.edorogush.debijenkorftask.model.Job;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Runs background jobs processing lists of items. Up to {@code maxConcurrentJobs} jobs are run at
+ * once, the others wait in the order they were submitted. Items of running jobs are processed by
+ * {@code parallelism} threads shared by the jobs, one by one or in batches, every job has at most
+ * {@code parallelism} items waiting or being processed, so jobs advance alternately. Progress of
+ * running jobs and of the last {@code historySize} finished jobs is kept in memory.
+ */
+@Component
+public class JobRunner {
+  private static final Logger logger = LogManager.getLogger();
+  private final int parallelism;
+  private final int historySize;
+  private final int maxFailuresReported;
+  private final long drainTimeoutSeconds;
+  private final ExecutorService coordinator;
+  private final ThreadPoolExecutor workers;
+  private final Map<String, Job> jobs = new LinkedHashMap<>();
+
+  /**
+   * Processing of single item.
+   *
+   * @see #submit
+   */
+  @FunctionalInterface
+  public interface Task {
+
+    /**
+     * Method to process item.
+     *
+     * @param item item to process.
+     * @return {@code false} if item did not need processing.
+     * @throws RuntimeException if item processing failed, job is continued with the next item.
+     */
+    boolean execute(String item);
+  }
+
+  /**
+   * Processing of batch of items.
+   *
+   * @see #submitBatches
+   */
+  @FunctionalInterface
+  public interface BatchTask {
+
+    /**
+     * Method to process batch of items.
+     *
+     * @param items items to process.
+     * @return error messages by items which failed, the other items succeeded.
+     * @throws RuntimeException if processing of the whole batch failed, job is continued with the
+     *     next batch.
+     */
+    Map<String, String> execute(List<String> items);
+  }
+
+  /**
+   * Listing of items to process page by page.
+   *
+   * @see #submitBatches
+   */
+  @FunctionalInterface
+  public interface Listing {
+
+    /**
+     * Method to list items.
+     *
+     * @param pageConsumer receiver of items listed, page by page. Next page should be listed only
+     *     after the consumer returns.
+     * @throws RuntimeException if listing failed, job is stopped after items already listed are
+     *     processed.
+     */
+    void list(Consumer<List<String>> pageConsumer);
+  }
+
+  /**
+   * @param parallelism number of threads processing items, shared by all jobs.
+   * @param maxConcurrentJobs number of jobs run at once.
+   * @param historySize number of finished jobs which progress is kept.
+   * @param maxFailuresReported max number of failed items reported with errors by every job.
+   * @param drainTimeoutSeconds the time (seconds) items being processed are awaited on shutdown.
+   */
+  public JobRunner(
+      @Value("${jobRunner.parallelism}") int parallelism,
+      @Value("${jobRunner.max-concurrent-jobs}") int maxConcurrentJobs,
+      @Value("${jobRunner.history-size}") int historySize,
+      @Value("${jobRunner.max-failures-reported}") int maxFailuresReported,
+      @Value("${jobRunner.drain-timeout-seconds}") long drainTimeoutSeconds) {
+    this.parallelism = parallelism;
+    this.historySize = historySize;
+    this.maxFailuresReported = maxFailuresReported;
+    this.drainTimeoutSeconds = drainTimeoutSeconds;
+    this.coordinator =
+        Executors.newFixedThreadPool(maxConcurrentJobs, new CustomizableThreadFactory("job-"));
+    this.workers =
+        new ThreadPoolExecutor(
+            parallelism,
+            parallelism,
+            0L,
+            TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(),
+            new CustomizableThreadFactory("job-worker-"));
+  }
+
+  /**
+   * Method to run job in background.
+   *
+   * @param type kind of processing, reported with job progress.
+   * @param items items to process.
+   * @param task processing of single item.
+   * @return job submitted, its progress is updated while job is running.
+   */
+  public Job submit(String type, List<String> items, Task task) {
+    final Job job = new Job(UUID.randomUUID().toString(), type, items.size(), maxFailuresReported);
+    final List<String> itemsToProcess = List.copyOf(items);
+    job.listingCompleted();
+    register(job);
+    coordinator.execute(
+        () ->
+            run(
+                job,
+                pageConsumer -> pageConsumer.accept(itemsToProcess),
+                1,
+                batch -> process(job, batch.get(0), task)));
+    return job;
+  }
+
+  /**
+   * Method to run job processing items in batches in background. Items are listed by the job page
+   * by page, so listing does not block the caller and all items are never kept in memory at once.
+   * Batches of every page are processed while the next page is listed, and job total grows with
+   * every page listed.
+   *
+   * @param type kind of processing, reported with job progress.
+   * @param items listing of items to process, failure of listing fails the job.
+   * @param batchSize max number of items in one batch.
+   * @param task processing of batch of items.
+   * @return job submitted, its progress is updated while job is running.
+   */
+  public Job submitBatches(String type, Listing items, int batchSize, BatchTask task) {
+    final Job job = new Job(UUID.randomUUID().toString(), type, 0, maxFailuresReported);
+    register(job);
+    final Listing listing =
+        pageConsumer -> {
+          items.list(
+              page -> {
+                job.listed(page.size());
+                pageConsumer.accept(page);
+              });
+          job.listingCompleted();
+        };
+    coordinator.execute(() -> run(job, listing, batchSize, batch -> process(job, batch, task)));
+    return job;
+  }
+
+  public synchronized Optional<Job> find(String id) {
+    return Optional.ofNullable(jobs.get(id));
+  }
+
+  public synchronized List<Job> findAll() {
+    return new ArrayList<>(jobs.values());
+  }
+
+  /**
+   * Method to stop job. Items being processed are completed, the other items are left not
+   * processed.
+   *
+   * @return job cancelled, or empty if there is no such job.
+   */
+  public Optional<Job> cancel(String id) {
+    final Optional<Job> job = find(id);
+    job.ifPresent(Job::cancel);
+    return job;
+  }
+
+  private void run(Job job, Listing listing, int batchSize, Consumer<List<String>> processor) {
+    job.start();
+    // items waiting or being processed by the job
+    final Semaphore permits = new Semaphore(parallelism);
+    try {
+      if (job.isCancelRequested()) {
+        // cancelled while waiting for other jobs
+        return;
+      }
+      logger.info("Job {} {} started.", job.getType(), job.getId());
+      try {
+        listing.list(page -> dispatch(job, page, batchSize, permits, processor));
+      } catch (CancellationException e) {
+        // listing is stopped, items already dispatched are completed
+      }
+      // wait for items being processed
+      permits.acquire(parallelism);
+      permits.release(parallelism);
+    } catch (InterruptedException e) {
+      job.cancel();
+      Thread.currentThread().interrupt();
+    } catch (RuntimeException e) {
+      logger.error("Job {} {} failed to list items.", job.getType(), job.getId(), e);
+      job.failed(job.getType(), e.getMessage());
+    } finally {
+      job.finish();
+      logger.info(
+          "Job {} {} {}: {} succeeded, {} skipped, {} failed.",
+          job.getType(),
+          job.getId(),
+          job.getState(),
+          job.getSucceeded(),
+          job.getSkipped(),
+          job.getFailed());
+    }
+  }
+
+  /**
+   * Method to pass page of items to workers in batches.
+   *
+   * @throws CancellationException if job is cancelled, to stop listing.
+   */
+  private void dispatch(
+      Job job,
+      List<String> items,
+      int batchSize,
+      Semaphore permits,
+      Consumer<List<String>> processor) {
+    for (int from = 0; from < items.size(); from += batchSize) {
+      final List<String> batch = items.subList(from, Math.min(from + batchSize, items.size()));
+      try {
+        permits.acquire();
+      } catch (InterruptedException e) {
+        job.cancel();
+        Thread.currentThread().interrupt();
+        throw new CancellationException();
+      }
+      if (job.isCancelRequested()) {
+        permits.release();
+        throw new CancellationException();
+      }
+      workers.execute(
+          () -> {
+            try {
+              processor.accept(batch);
+            } finally {
+              permits.release();
+            }
+          });
+    }
+  }
+
+  private void process(Job job, String item, Task task) {
+    try {
+      if (task.execute(item)) {
+        job.succeeded();
+      } else {
+        job.skipped();
+      }
+    } catch (RuntimeException e) {
+      logger.warn("Job {} {} failed to process {}.", job.getType(), job.getId(), item, e);
+      job.failed(item, e.getMessage());
+    }
+  }
+
+  private void process(Job job, List<String> items, BatchTask task) {
+    try {
+      final Map<String, String> failures = task.execute(items);
+      job.succeeded(items.size() - failures.size());
+      failures.forEach(job::failed);
+    } catch (RuntimeException e) {
+      logger.warn(
+          "Job {} {} failed to process {} items.", job.getType(), job.getId(), items.size(), e);
+      items.forEach(item -> job.failed(item, e.getMessage()));
+    }
+  }
+
+  private synchronized void register(Job job) {
+    jobs.put(job.getId(), job);
+    int finishedToRemove =
+        (int) jobs.values().stream().filter(Job::isFinished).count() - historySize;
+    final Iterator<Job> iterator = jobs.values().iterator();
+    while (finishedToRemove > 0 && iterator.hasNext()) {
+      if (iterator.next().isFinished()) {
+        iterator.remove();
+        finishedToRemove--;
+      }
+    }
+  }
+
+  /**
+   * Method to stop jobs on shutdown. Running and waiting jobs are cancelled, items being processed
+   * are completed, but not longer than {@code drainTimeoutSeconds}.
+   */
+  @PreDestroy
+  public void shutdown() throws InterruptedException {
+    coordinator.shutdown();
+    findAll().forEach(Job::cancel);
+    // jobs finish only after their items are processed
+    if (!coordinator.awaitTermination(drainTimeoutSeconds, TimeUnit.SECONDS)) {
+      logger.warn(
+          "Jobs not completed within {} seconds: {} items interrupted.",
+          drainTimeoutSeconds,
+          workers.getActiveCount());
+      coordinator.shutdownNow();
+      workers.shutdownNow();
+      return;
+    }
+    workers.shutdown();
+  }
+}
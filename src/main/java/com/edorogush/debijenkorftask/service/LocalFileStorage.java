@@ -0,0 +1,261 @@
+package com.edorogush.debijenkorftask.service;
+
+import com.edorogush.debijenkorftask.exception.NotFoundException;
+import com.edorogush.debijenkorftask.model.DeleteResult;
+import com.edorogush.debijenkorftask.model.FileMetadata;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The class is implementation of {@link FileStorage} interface and manages CRUD operations for
+ * files within local directory. Items are stored under {@code rootDir} with the same relative path
+ * as their name, so the directory layout follows {@link StorageLocationResolver}.
+ *
+ * <p>Items are returned as {@link FileSystemResource} of a hard link kept by {@link PinnedFiles} in
+ * {@code .pinned} directory under {@code rootDir}, so the content returned stays readable even if
+ * the item is replaced or deleted meanwhile, and could be sent to client directly from disk
+ * without copying through heap. Returned resource carries metadata of the content linked. Items
+ * are written to temporary file first and then renamed, so item is never read partially written.
+ * Content of file resources is put with {@link FileChannel#transferTo}.
+ */
+public class LocalFileStorage implements FileStorage {
+  private static final Logger logger = LogManager.getLogger();
+  private static final String TEMP_FILE_SUFFIX = ".tmp";
+  private static final int LIST_PAGE_SIZE = 1000;
+  private static final String PIN_DIR = ".pinned";
+  private final Path rootDir;
+  private final PinnedFiles pinnedFiles;
+  /** Metadata calculated by {@link #head}, valid while file's size and modification time match. */
+  private final ConcurrentMap<String, FileMetadata> metadataByName = new ConcurrentHashMap<>();
+
+  public LocalFileStorage(Path rootDir) {
+    this.rootDir = rootDir.toAbsolutePath().normalize();
+    try {
+      Files.createDirectories(this.rootDir);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    this.pinnedFiles = new PinnedFiles(pinDir());
+    logger.debug("LocalFileStorage initialized with directory: {}", this.rootDir);
+  }
+
+  @Override
+  public Resource get(String fileName) {
+    final Path pinned;
+    try {
+      pinned = pinnedFiles.pin(resolve(fileName));
+    } catch (NoSuchFileException e) {
+      throw notFound(fileName);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return new StoredFileResource(pinned, metadata(fileName, pinned));
+  }
+
+  /** {@inheritDoc} Metadata of the file is checked before the range is read. */
+  @Override
+  public Resource getRange(String fileName, FileMetadata metadata, long start, long end) {
+    if (!metadata.matches(head(fileName))) {
+      throw new NotFoundException(String.format("File with name %s was changed.", fileName));
+    }
+    try {
+      return ResourceRanges.read(resolve(fileName), start, end);
+    } catch (NoSuchFileException e) {
+      throw notFound(fileName);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * {@inheritDoc} Hash of the content is calculated once and kept in memory until the file is
+   * changed.
+   */
+  @Override
+  public FileMetadata head(String fileName) {
+    return metadata(fileName, resolve(fileName));
+  }
+
+  /** Method to read metadata of item {@code fileName} kept in {@code path} or its link. */
+  private FileMetadata metadata(String fileName, Path path) {
+    final BasicFileAttributes attributes;
+    try {
+      attributes = Files.readAttributes(path, BasicFileAttributes.class);
+    } catch (NoSuchFileException e) {
+      throw notFound(fileName);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    final long lastModified = attributes.lastModifiedTime().toMillis();
+    final FileMetadata known = metadataByName.get(fileName);
+    if (known != null
+        && known.getLastModified() == lastModified
+        && known.getContentLength() == attributes.size()) {
+      return known;
+    }
+    final FileMetadata metadata =
+        new FileMetadata(
+            ContentHash.of(new FileSystemResource(path)),
+            lastModified,
+            attributes.size());
+    metadataByName.put(fileName, metadata);
+    return metadata;
+  }
+
+  /**
+   * {@inheritDoc} Only directory of the prefix is walked, files being written are not listed. Names
+   * are passed in pages of up to 1000 names while the directory is walked.
+   */
+  @Override
+  public void list(String prefix, Consumer<List<String>> pageConsumer) {
+    final Path dir = resolve(prefix.substring(0, prefix.lastIndexOf('/') + 1));
+    if (!Files.isDirectory(dir)) {
+      return;
+    }
+    try (Stream<Path> paths = Files.walk(dir)) {
+      final Iterator<String> fileNames =
+          paths
+              .filter(path -> !path.startsWith(pinDir()))
+              .filter(Files::isRegularFile)
+              .filter(path -> !path.getFileName().toString().endsWith(TEMP_FILE_SUFFIX))
+              .map(path -> rootDir.relativize(path).toString().replace('\\', '/'))
+              .filter(fileName -> fileName.startsWith(prefix))
+              .iterator();
+      List<String> page = new ArrayList<>();
+      while (fileNames.hasNext()) {
+        page.add(fileNames.next());
+        if (page.size() == LIST_PAGE_SIZE || !fileNames.hasNext()) {
+          pageConsumer.accept(page);
+          page = new ArrayList<>();
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** {@inheritDoc} Only directory of the prefix is read, its subdirectories are not walked. */
+  @Override
+  public List<String> listDirectories(String prefix) {
+    final Path dir = resolve(prefix.substring(0, prefix.lastIndexOf('/') + 1));
+    if (!Files.isDirectory(dir)) {
+      return List.of();
+    }
+    try (Stream<Path> paths = Files.list(dir)) {
+      return paths
+          .filter(path -> !path.equals(pinDir()))
+          .filter(Files::isDirectory)
+          .map(path -> rootDir.relativize(path).toString().replace('\\', '/') + "/")
+          .filter(directory -> directory.startsWith(prefix))
+          .collect(Collectors.toList());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public void put(Resource file, String fileName) {
+    final Path path = resolve(fileName);
+    Path tempFile = null;
+    try {
+      Files.createDirectories(path.getParent());
+      tempFile =
+          Files.createTempFile(path.getParent(), path.getFileName().toString(), TEMP_FILE_SUFFIX);
+      write(file, tempFile);
+      Files.move(tempFile, path, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      delete(tempFile);
+      throw new UncheckedIOException(e);
+    }
+    metadataByName.remove(fileName);
+  }
+
+  @Override
+  public void deleteOne(String fileName) {
+    delete(resolve(fileName));
+    metadataByName.remove(fileName);
+  }
+
+  @Override
+  public DeleteResult deleteMany(List<String> fileNames) {
+    final List<String> deleted = new ArrayList<>();
+    final Map<String, String> failed = new LinkedHashMap<>();
+    for (String fileName : fileNames) {
+      try {
+        deleteOne(fileName);
+        deleted.add(fileName);
+      } catch (UncheckedIOException e) {
+        failed.put(fileName, e.getCause().getMessage());
+      }
+    }
+    return new DeleteResult(deleted, failed);
+  }
+
+  private void write(Resource file, Path tempFile) throws IOException {
+    if (file.isFile()) {
+      try (FileChannel source = FileChannel.open(file.getFile().toPath());
+          FileChannel target = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+        long position = 0;
+        final long size = source.size();
+        while (position < size) {
+          position += source.transferTo(position, size - position, target);
+        }
+      }
+      return;
+    }
+    try (InputStream inputStream = file.getInputStream()) {
+      Files.copy(inputStream, tempFile, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  private void delete(Path path) {
+    if (path == null) {
+      return;
+    }
+    try {
+      Files.deleteIfExists(path);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private Path resolve(String fileName) {
+    final Path path = rootDir.resolve(fileName.startsWith("/") ? fileName.substring(1) : fileName);
+    if (!path.normalize().startsWith(rootDir) || path.normalize().startsWith(pinDir())) {
+      throw new IllegalArgumentException(
+          String.format("File name %s is outside of storage directory.", fileName));
+    }
+    return path;
+  }
+
+  private Path pinDir() {
+    return rootDir.resolve(PIN_DIR);
+  }
+
+  private static NotFoundException notFound(String fileName) {
+    return new NotFoundException(String.format("File with name %s not found.", fileName));
+  }
+}
@@ -0,0 +1,36 @@
+package com.edorogush.debijenkorftask.service;
+
+import java.util.LinkedHashMap;
+
+/**
+ * The class is implementation of {@link EvictionPolicy} interface and evicts the least recently
+ * used item. Every new item is admitted.
+ */
+public class LruEvictionPolicy implements EvictionPolicy {
+  private final LinkedHashMap<String, Boolean> accessOrder = new LinkedHashMap<>(16, 0.75f, true);
+
+  @Override
+  public void recordAccess(String key) {
+    accessOrder.get(key);
+  }
+
+  @Override
+  public void add(String key) {
+    accessOrder.put(key, Boolean.TRUE);
+  }
+
+  @Override
+  public void remove(String key) {
+    accessOrder.remove(key);
+  }
+
+  @Override
+  public Iterable<String> victims() {
+    return accessOrder.keySet();
+  }
+
+  @Override
+  public boolean admit(String candidate, String victim) {
+    return true;
+  }
+}
@@ -0,0 +1,281 @@
+package com.edorogush.debijenkorftask.service;
+
+import com.edorogush.debijenkorftask.model.DeleteResult;
+import com.edorogush.debijenkorftask.model.FileMetadata;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * The class is implementation of {@link FileStorage} interface which keeps the most requested
+ * items in memory and delegates all other requests to another {@link FileStorage}. Cache capacity
+ * is limited by total size of items in bytes. Items bigger than {@code maxItemSizeBytes} are never
+ * cached. The items to evict are chosen by {@link EvictionPolicy} provided. Metadata of cached
+ * items is the one returned by underlying storage, so validators do not depend on the tier.
+ */
+public class MemoryCacheFileStorage implements FileStorage {
+  private final FileStorage fileStorage;
+  private final EvictionPolicy evictionPolicy;
+  private final long maxSizeBytes;
+  private final long maxItemSizeBytes;
+  private final Map<String, CachedItem> items = new HashMap<>();
+  private long sizeBytes;
+  private long invalidations;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  public MemoryCacheFileStorage(
+      FileStorage fileStorage,
+      EvictionPolicy evictionPolicy,
+      long maxSizeBytes,
+      long maxItemSizeBytes) {
+    this.fileStorage = fileStorage;
+    this.evictionPolicy = evictionPolicy;
+    this.maxSizeBytes = maxSizeBytes;
+    this.maxItemSizeBytes = Math.min(maxItemSizeBytes, maxSizeBytes);
+  }
+
+  /**
+   * {@inheritDoc} Item is searched in memory first. If it is not there, it is read from underlying
+   * {@link FileStorage} and cached.
+   */
+  @Override
+  public Resource get(String fileName) {
+    final long invalidationsBeforeRead;
+    synchronized (this) {
+      evictionPolicy.recordAccess(fileName);
+      final CachedItem cached = items.get(fileName);
+      if (cached != null) {
+        hits.incrementAndGet();
+        return new StoredByteArrayResource(cached.data, cached.metadata);
+      }
+      invalidationsBeforeRead = invalidations;
+    }
+    misses.incrementAndGet();
+    final Resource resource = fileStorage.get(fileName);
+    final byte[] data = readIfCacheable(resource);
+    if (data == null) {
+      return resource;
+    }
+    final FileMetadata metadata = StoredResource.metadataOf(resource).orElse(null);
+    synchronized (this) {
+      // item might be deleted while it was being read, it must not be cached then
+      if (invalidations == invalidationsBeforeRead) {
+        add(fileName, data, metadata);
+      }
+    }
+    return new StoredByteArrayResource(data, metadata);
+  }
+
+  /**
+   * {@inheritDoc} Range of cached item is copied from memory if cached item matches {@code
+   * metadata}. Range of item not cached is read from underlying {@link FileStorage} and is not
+   * cached.
+   */
+  @Override
+  public Resource getRange(String fileName, FileMetadata metadata, long start, long end) {
+    final CachedItem cached;
+    synchronized (this) {
+      evictionPolicy.recordAccess(fileName);
+      cached = items.get(fileName);
+    }
+    if (cached == null || !metadata.matches(cached.metadata)) {
+      misses.incrementAndGet();
+      return fileStorage.getRange(fileName, metadata, start, end);
+    }
+    hits.incrementAndGet();
+    return ResourceRanges.slice(cached.data, start, end);
+  }
+
+  /**
+   * {@inheritDoc} Metadata of cached item is kept in memory. If it was not known when item was
+   * cached, e.g. item was put, it is requested from underlying storage once.
+   */
+  @Override
+  public FileMetadata head(String fileName) {
+    final CachedItem cached;
+    synchronized (this) {
+      cached = items.get(fileName);
+    }
+    if (cached != null && cached.metadata != null) {
+      return cached.metadata;
+    }
+    final FileMetadata metadata = fileStorage.head(fileName);
+    synchronized (this) {
+      // item might be replaced while metadata was being requested
+      if (cached != null && items.get(fileName) == cached) {
+        cached.metadata = metadata;
+      }
+    }
+    return metadata;
+  }
+
+  @Override
+  public void list(String prefix, Consumer<List<String>> pageConsumer) {
+    fileStorage.list(prefix, pageConsumer);
+  }
+
+  @Override
+  public List<String> listDirectories(String prefix) {
+    return fileStorage.listDirectories(prefix);
+  }
+
+  /**
+   * {@inheritDoc} Item is cached only after it was successfully put to underlying storage. Cached
+   * item is invalidated both before and after the put, so that previous item read by concurrent
+   * {@link #get} while the put is in progress is not cached.
+   */
+  @Override
+  public void put(Resource file, String fileName) {
+    put(file, fileName, fileStorage::put);
+  }
+
+  /** {@inheritDoc} Item is cached in the same way as by {@link #put}. */
+  @Override
+  public void putInBackground(Resource file, String fileName) {
+    put(file, fileName, fileStorage::putInBackground);
+  }
+
+  private void put(Resource file, String fileName, BiConsumer<Resource, String> underlyingPut) {
+    invalidate(List.of(fileName));
+    underlyingPut.accept(file, fileName);
+    // stream is already consumed by underlying storage
+    final byte[] data = file.isOpen() ? null : readIfCacheable(file);
+    synchronized (this) {
+      invalidate(List.of(fileName));
+      if (data != null) {
+        add(fileName, data, null);
+      }
+    }
+  }
+
+  @Override
+  public void deleteOne(String fileName) {
+    fileStorage.deleteOne(fileName);
+    invalidate(List.of(fileName));
+  }
+
+  @Override
+  public DeleteResult deleteMany(List<String> fileNames) {
+    final DeleteResult result = fileStorage.deleteMany(fileNames);
+    invalidate(fileNames);
+    return result;
+  }
+
+  /**
+   * Method to register cache metrics.
+   *
+   * @param meterRegistry registry where metrics are published.
+   */
+  public void bindTo(MeterRegistry meterRegistry) {
+    FunctionCounter.builder("image.cache.memory.hits", hits, AtomicLong::get)
+        .description("The number of requests served from memory cache.")
+        .register(meterRegistry);
+    FunctionCounter.builder("image.cache.memory.misses", misses, AtomicLong::get)
+        .description("The number of requests delegated to underlying file storage.")
+        .register(meterRegistry);
+    FunctionCounter.builder("image.cache.memory.evictions", evictions, AtomicLong::get)
+        .description("The number of items evicted from memory cache.")
+        .register(meterRegistry);
+    Gauge.builder("image.cache.memory.size", this, MemoryCacheFileStorage::sizeBytes)
+        .description("The total size of items in memory cache.")
+        .baseUnit("bytes")
+        .register(meterRegistry);
+  }
+
+  long hits() {
+    return hits.get();
+  }
+
+  long misses() {
+    return misses.get();
+  }
+
+  long evictions() {
+    return evictions.get();
+  }
+
+  synchronized long sizeBytes() {
+    return sizeBytes;
+  }
+
+  private synchronized void invalidate(List<String> fileNames) {
+    invalidations++;
+    fileNames.forEach(this::remove);
+  }
+
+  /**
+   * Method to cache item. Victims are chosen first, and are evicted only if the item is admitted in
+   * place of each of them, otherwise the cache is left unchanged.
+   */
+  private void add(String fileName, byte[] data, FileMetadata metadata) {
+    remove(fileName);
+    final List<String> victims = new ArrayList<>();
+    final Iterator<String> evictionOrder = evictionPolicy.victims().iterator();
+    long freedBytes = 0;
+    while (sizeBytes - freedBytes + data.length > maxSizeBytes) {
+      final String victim = evictionOrder.next();
+      if (!evictionPolicy.admit(fileName, victim)) {
+        return;
+      }
+      victims.add(victim);
+      freedBytes += items.get(victim).data.length;
+    }
+    for (String victim : victims) {
+      remove(victim);
+      evictions.incrementAndGet();
+    }
+    items.put(fileName, new CachedItem(data, metadata));
+    evictionPolicy.add(fileName);
+    sizeBytes += data.length;
+  }
+
+  private void remove(String fileName) {
+    final CachedItem removed = items.remove(fileName);
+    if (removed != null) {
+      evictionPolicy.remove(fileName);
+      sizeBytes -= removed.data.length;
+    }
+  }
+
+  private byte[] readIfCacheable(Resource resource) {
+    try {
+      if (resource.contentLength() > maxItemSizeBytes) {
+        return null;
+      }
+      if (resource instanceof ByteArrayResource) {
+        return ((ByteArrayResource) resource).getByteArray();
+      }
+      try (InputStream inputStream = resource.getInputStream()) {
+        return inputStream.readAllBytes();
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static final class CachedItem {
+    private final byte[] data;
+    private volatile FileMetadata metadata;
+
+    private CachedItem(byte[] data, FileMetadata metadata) {
+      this.data = data;
+      this.metadata = metadata;
+    }
+  }
+}
@@ -0,0 +1,146 @@
+package com.edorogush.debijenkorftask.service;
+
+import com.edorogush.debijenkorftask.exception.NotFoundException;
+import com.edorogush.debijenkorftask.model.DeleteResult;
+import com.edorogush.debijenkorftask.model.FileMetadata;
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.core.io.Resource;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * The class is implementation of {@link FileStorage} interface which measures the time of requests
+ * to another {@link FileStorage}. Requests are recorded by {@code image.storage.requests} timer
+ * tagged by {@code storage} name, {@code operation} and {@code outcome}: {@code success}, {@code
+ * not_found} or {@code error}. Only the time of request itself is measured: content of {@link
+ * Resource} returned by streaming storage is read later, and the time pages of listing are
+ * processed by the caller is not counted.
+ */
+public class MeteredFileStorage implements FileStorage {
+  private final FileStorage fileStorage;
+  private final String storageName;
+  private final MeterRegistry meterRegistry;
+
+  /**
+   * @param fileStorage storage requests are delegated to.
+   * @param storageName name of the storage, used as {@code storage} tag.
+   * @param meterRegistry registry where metrics are published.
+   */
+  public MeteredFileStorage(
+      FileStorage fileStorage, String storageName, MeterRegistry meterRegistry) {
+    this.fileStorage = fileStorage;
+    this.storageName = storageName;
+    this.meterRegistry = meterRegistry;
+  }
+
+  @Override
+  public Resource get(String fileName) {
+    return record("get", () -> fileStorage.get(fileName));
+  }
+
+  @Override
+  public Resource getRange(String fileName, FileMetadata metadata, long start, long end) {
+    return record("get_range", () -> fileStorage.getRange(fileName, metadata, start, end));
+  }
+
+  @Override
+  public FileMetadata head(String fileName) {
+    return record("head", () -> fileStorage.head(fileName));
+  }
+
+  @Override
+  public void list(String prefix, Consumer<List<String>> pageConsumer) {
+    final Clock clock = meterRegistry.config().clock();
+    final long startedAt = clock.monotonicTime();
+    final AtomicLong consumingNanos = new AtomicLong();
+    String outcome = "error";
+    try {
+      fileStorage.list(
+          prefix,
+          page -> {
+            final long consumingStartedAt = clock.monotonicTime();
+            try {
+              pageConsumer.accept(page);
+            } finally {
+              consumingNanos.addAndGet(clock.monotonicTime() - consumingStartedAt);
+            }
+          });
+      outcome = "success";
+    } finally {
+      timer("list", outcome)
+          .record(
+              clock.monotonicTime() - startedAt - consumingNanos.get(), TimeUnit.NANOSECONDS);
+    }
+  }
+
+  @Override
+  public List<String> listDirectories(String prefix) {
+    return record("list_directories", () -> fileStorage.listDirectories(prefix));
+  }
+
+  @Override
+  public void put(Resource file, String fileName) {
+    record(
+        "put",
+        () -> {
+          fileStorage.put(file, fileName);
+          return null;
+        });
+  }
+
+  @Override
+  public void putInBackground(Resource file, String fileName) {
+    record(
+        "put_background",
+        () -> {
+          fileStorage.putInBackground(file, fileName);
+          return null;
+        });
+  }
+
+  @Override
+  public void deleteOne(String fileName) {
+    record(
+        "delete",
+        () -> {
+          fileStorage.deleteOne(fileName);
+          return null;
+        });
+  }
+
+  @Override
+  public DeleteResult deleteMany(List<String> fileNames) {
+    return record("delete_many", () -> fileStorage.deleteMany(fileNames));
+  }
+
+  private <T> T record(String operation, Supplier<T> request) {
+    final Timer.Sample sample = Timer.start(meterRegistry);
+    String outcome = "error";
+    try {
+      final T result = request.get();
+      outcome = "success";
+      return result;
+    } catch (NotFoundException e) {
+      outcome = "not_found";
+      throw e;
+    } finally {
+      sample.stop(timer(operation, outcome));
+    }
+  }
+
+  private Timer timer(String operation, String outcome) {
+    return Timer.builder("image.storage.requests")
+        .description("The time of requests to image storage.")
+        .tag("storage", storageName)
+        .tag("operation", operation)
+        .tag("outcome", outcome)
+        .publishPercentileHistogram()
+        .register(meterRegistry);
+  }
+}
@@ -0,0 +1,88 @@
+package com.edorogush.debijenkorftask.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps names of images which are not found in the source, so that repeated requests for them are
+ * answered without requests to storage and to the source. Names are kept for {@code ttlSeconds},
+ * so image added to the source later is found after that time. The number of names is limited by
+ * {@code maxSize}, the oldest names are forgotten first. If {@code ttlSeconds} is not positive,
+ * nothing is kept.
+ */
+@Component
+public class MissingImageCache {
+  private final long ttlMillis;
+  private final Clock clock;
+  private final Map<String, Long> expiresAtByName;
+  private final Counter hitCounter;
+
+  @Autowired
+  public MissingImageCache(
+      @Value("${imageService.missing-cache.ttl-seconds}") long ttlSeconds,
+      @Value("${imageService.missing-cache.max-size}") int maxSize,
+      MeterRegistry meterRegistry) {
+    this(ttlSeconds, maxSize, meterRegistry, Clock.systemUTC());
+  }
+
+  MissingImageCache(long ttlSeconds, int maxSize, MeterRegistry meterRegistry, Clock clock) {
+    this.ttlMillis = ttlSeconds * 1000;
+    this.clock = clock;
+    this.expiresAtByName =
+        new LinkedHashMap<>() {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > maxSize;
+          }
+        };
+    this.hitCounter =
+        Counter.builder("image.missing-cache.hits")
+            .description("The number of requests for images known to be missing in the source.")
+            .register(meterRegistry);
+    Gauge.builder("image.missing-cache.size", this, MissingImageCache::size)
+        .description("The number of images known to be missing in the source.")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Method to check if image was not found in the source recently.
+   *
+   * @param fileName name of image, the same as passed to {@link ImageLoader}.
+   */
+  public synchronized boolean isMissing(String fileName) {
+    final Long expiresAt = expiresAtByName.get(fileName);
+    if (expiresAt == null) {
+      return false;
+    }
+    if (expiresAt <= clock.millis()) {
+      expiresAtByName.remove(fileName);
+      return false;
+    }
+    hitCounter.increment();
+    return true;
+  }
+
+  public synchronized void addMissing(String fileName) {
+    if (ttlMillis > 0) {
+      // re-inserted to be forgotten last
+      expiresAtByName.remove(fileName);
+      expiresAtByName.put(fileName, clock.millis() + ttlMillis);
+    }
+  }
+
+  public synchronized void invalidate(String fileName) {
+    expiresAtByName.remove(fileName);
+  }
+
+  synchronized int size() {
+    return expiresAtByName.size();
+  }
+}
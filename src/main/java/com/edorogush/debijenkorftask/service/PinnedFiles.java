@@ -0,0 +1,156 @@
+package com.edorogush.debijenkorftask.service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Hard links to files returned to clients, which keep content on disk while it is sent even if
+ * the file is deleted or replaced meanwhile. Links are kept in {@code pinDir}, which must be on the
+ * same file system as pinned files, and are deleted after {@code retention} since the file was
+ * pinned last time, which is enough for the response to open the link. Servlet container could
+ * send linked file to client directly from disk, since the link is a regular file.
+ *
+ * <p>File pinned again while its link is kept is not linked again. Links left after restart are
+ * deleted on creation.
+ */
+final class PinnedFiles {
+  private static final Logger logger = LogManager.getLogger();
+  private static final Duration DEFAULT_RETENTION = Duration.ofMinutes(1);
+  private static final Duration SWEEP_INTERVAL = Duration.ofSeconds(1);
+  private final Path pinDir;
+  private final long retentionNanos;
+  private final long sweepIntervalNanos;
+  private final Queue<Pin> pins = new ConcurrentLinkedQueue<>();
+  /** The latest links by file key of linked file, if file system provides file keys. */
+  private final ConcurrentMap<Object, Pin> pinsByFileKey = new ConcurrentHashMap<>();
+  private final AtomicLong links = new AtomicLong();
+  private final AtomicLong lastSweepNanos = new AtomicLong(System.nanoTime());
+
+  PinnedFiles(Path pinDir) {
+    this(pinDir, DEFAULT_RETENTION);
+  }
+
+  PinnedFiles(Path pinDir, Duration retention) {
+    this.pinDir = pinDir;
+    this.retentionNanos = retention.toNanos();
+    this.sweepIntervalNanos = Math.min(retentionNanos, SWEEP_INTERVAL.toNanos());
+    try {
+      if (Files.isDirectory(pinDir)) {
+        try (Stream<Path> paths = Files.walk(pinDir)) {
+          paths.sorted(Comparator.reverseOrder()).forEach(PinnedFiles::delete);
+        }
+      }
+      Files.createDirectories(pinDir);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Method to pin current content of the file.
+   *
+   * @param file regular file to pin.
+   * @return link to content {@code file} had when it was pinned.
+   * @throws NoSuchFileException if the file does not exist or is not a regular file.
+   */
+  Path pin(Path file) throws IOException {
+    final long now = System.nanoTime();
+    deleteExpired(now);
+    final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+    if (!attributes.isRegularFile()) {
+      throw new NoSuchFileException(file.toString());
+    }
+    final Pin known =
+        attributes.fileKey() == null ? null : pinsByFileKey.get(attributes.fileKey());
+    if (known != null && known.extend(now + retentionNanos)) {
+      // the link keeps the file, so its key is not reused while the link is kept
+      return known.link;
+    }
+    final Path link = pinDir.resolve(String.valueOf(links.incrementAndGet()));
+    Files.createLink(link, file);
+    // the file might be replaced since its attributes were read, the link has the content pinned
+    final Object fileKey = Files.readAttributes(link, BasicFileAttributes.class).fileKey();
+    final Pin pin = new Pin(link, fileKey, now + retentionNanos);
+    pins.add(pin);
+    if (fileKey != null) {
+      pinsByFileKey.put(fileKey, pin);
+    }
+    return link;
+  }
+
+  /** @return the number of links kept. */
+  int size() {
+    return pins.size();
+  }
+
+  /** Method to delete expired links, not more often than once per second or retention. */
+  private void deleteExpired(long now) {
+    final long lastSweep = lastSweepNanos.get();
+    if (now - lastSweep < sweepIntervalNanos || !lastSweepNanos.compareAndSet(lastSweep, now)) {
+      return;
+    }
+    pins.removeIf(
+        pin -> {
+          if (!pin.expire(now)) {
+            return false;
+          }
+          if (pin.fileKey != null) {
+            pinsByFileKey.remove(pin.fileKey, pin);
+          }
+          delete(pin.link);
+          return true;
+        });
+  }
+
+  private static void delete(Path path) {
+    try {
+      Files.deleteIfExists(path);
+    } catch (IOException e) {
+      logger.warn("Failed to delete pinned file {}.", path, e);
+    }
+  }
+
+  private static final class Pin {
+    private final Path link;
+    private final Object fileKey;
+    private long expiresAtNanos;
+    private boolean expired;
+
+    private Pin(Path link, Object fileKey, long expiresAtNanos) {
+      this.link = link;
+      this.fileKey = fileKey;
+      this.expiresAtNanos = expiresAtNanos;
+    }
+
+    /** @return {@code false} if the link has already expired and must not be returned. */
+    private synchronized boolean extend(long expiresAtNanos) {
+      if (expired) {
+        return false;
+      }
+      this.expiresAtNanos = Math.max(this.expiresAtNanos, expiresAtNanos);
+      return true;
+    }
+
+    private synchronized boolean expire(long now) {
+      if (!expired && now - expiresAtNanos >= 0) {
+        expired = true;
+      }
+      return expired;
+    }
+  }
+}
@@ -0,0 +1,200 @@
+package com.edorogush.debijenkorftask.service;
+
+import com.edorogush.debijenkorftask.exception.NotFoundInSourceException;
+import com.edorogush.debijenkorftask.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import net.jodah.failsafe.CircuitBreaker;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.core.io.Resource;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * The class is implementation of {@link ImageLoader} interface which protects another {@link
+ * ImageLoader} from being called while the source is failing, and reduces tail latency of slow
+ * responses.
+ *
+ * <p>Failures are counted by {@link CircuitBreaker}. When too many requests failed, the breaker is
+ * opened and requests fail immediately with {@link ServiceUnavailableException}, without waiting
+ * for the source. After delay several trial requests are let through to check if the source has
+ * recovered. {@link NotFoundInSourceException} means that the source is available, so it is counted
+ * as success. {@link ServiceUnavailableException} means that request was rejected locally before
+ * being sent, e.g. by {@link ConcurrencyLimiter}, so it is not counted at all.
+ *
+ * <p>If {@code hedgeDelay} is positive and the response is not received within it, the second
+ * request for the same image is sent, and the first response received is returned. The other
+ * request is cancelled then, so that it does not keep its place in the limit of requests to the
+ * source. The delay should be about 95th percentile of the source latency, so that only the
+ * slowest requests are repeated.
+ */
+public class ResilientImageLoader implements ImageLoader {
+  private static final Logger logger = LogManager.getLogger();
+  private final ImageLoader imageLoader;
+  private final CircuitBreaker<Resource> circuitBreaker;
+  private final Duration hedgeDelay;
+  private final Counter rejectedCounter;
+  private final Counter hedgedCounter;
+  private final AtomicInteger trials = new AtomicInteger();
+
+  /**
+   * @param imageLoader loader requests are delegated to.
+   * @param circuitBreaker breaker counting failures of {@code imageLoader}.
+   * @param hedgeDelay time to wait for response before the second request is sent. If not
+   *     positive, requests are never repeated.
+   * @param meterRegistry registry where metrics are published.
+   */
+  public ResilientImageLoader(
+      ImageLoader imageLoader,
+      CircuitBreaker<Resource> circuitBreaker,
+      Duration hedgeDelay,
+      MeterRegistry meterRegistry) {
+    this.imageLoader = imageLoader;
+    this.hedgeDelay = hedgeDelay;
+    this.rejectedCounter =
+        Counter.builder("image.loader.circuit-breaker.rejected")
+            .description("The number of requests to source rejected by open circuit breaker.")
+            .register(meterRegistry);
+    this.hedgedCounter =
+        Counter.builder("image.loader.hedged")
+            .description("The number of second requests sent to source due to slow response.")
+            .register(meterRegistry);
+    for (CircuitBreaker.State state : CircuitBreaker.State.values()) {
+      Gauge.builder(
+              "image.loader.circuit-breaker.state",
+              circuitBreaker,
+              breaker -> breaker.getState() == state ? 1 : 0)
+          .description("The state of circuit breaker: 1 if breaker is in the state tagged.")
+          .tag("state", state.name().toLowerCase())
+          .register(meterRegistry);
+    }
+    this.circuitBreaker =
+        circuitBreaker
+            .onOpen(() -> transition(meterRegistry, CircuitBreaker.State.OPEN))
+            .onHalfOpen(() -> transition(meterRegistry, CircuitBreaker.State.HALF_OPEN))
+            .onClose(() -> transition(meterRegistry, CircuitBreaker.State.CLOSED));
+  }
+
+  @Override
+  public CompletableFuture<Resource> getImageFromSourceAsync(String imageId) {
+    // breaker becomes half-open on check when delay has elapsed
+    final boolean allowed = circuitBreaker.allowsExecution();
+    final boolean trial = allowed && circuitBreaker.isHalfOpen();
+    if (!allowed || (trial && !startTrial())) {
+      rejectedCounter.increment();
+      final long retryAfterSeconds = Math.max(1, circuitBreaker.getRemainingDelay().getSeconds());
+      return CompletableFuture.failedFuture(
+          new ServiceUnavailableException(
+              "Image source is unavailable, circuit breaker is open.", null, retryAfterSeconds));
+    }
+    return hedged(imageId)
+        .whenComplete(
+            (resource, error) -> {
+              if (trial) {
+                trials.decrementAndGet();
+              }
+              record(unwrap(error));
+            });
+  }
+
+  /**
+   * Method to count result in the breaker. Execution is registered in the breaker only when its
+   * result is known, so that requests rejected locally leave no trace in it.
+   */
+  private void record(Throwable cause) {
+    if (cause instanceof ServiceUnavailableException) {
+      return;
+    }
+    circuitBreaker.preExecute();
+    if (cause == null || cause instanceof NotFoundInSourceException) {
+      circuitBreaker.recordSuccess();
+    } else {
+      circuitBreaker.recordFailure(cause);
+    }
+  }
+
+  /**
+   * Method to let trial request through half-open breaker. As executions are registered only on
+   * completion, the number of trials in progress is limited here instead of by the breaker.
+   *
+   * @return {@code false} if enough trials are in progress already.
+   */
+  private boolean startTrial() {
+    final int maxTrials = Math.max(1, circuitBreaker.getSuccessThresholdingCapacity());
+    if (trials.incrementAndGet() > maxTrials) {
+      trials.decrementAndGet();
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Method to request image, and to repeat request if response is not received within {@code
+   * hedgeDelay}. The first image received is returned. Failure is returned only if all requests
+   * sent have failed, or if image is not found in the source.
+   */
+  private CompletableFuture<Resource> hedged(String imageId) {
+    if (hedgeDelay.isZero() || hedgeDelay.isNegative()) {
+      return imageLoader.getImageFromSourceAsync(imageId);
+    }
+    final CompletableFuture<Resource> result = new CompletableFuture<>();
+    final List<CompletableFuture<Resource>> requests = new CopyOnWriteArrayList<>();
+    // request still in progress when result is known is not needed anymore
+    result.whenComplete((resource, error) -> requests.forEach(request -> request.cancel(true)));
+    final AtomicInteger running = new AtomicInteger(1);
+    final BiConsumer<Resource, Throwable> onComplete =
+        (resource, error) -> {
+          if (error == null) {
+            result.complete(resource);
+          } else if (running.decrementAndGet() == 0
+              || unwrap(error) instanceof NotFoundInSourceException) {
+            result.completeExceptionally(unwrap(error));
+          }
+        };
+    send(imageId, requests, result).whenComplete(onComplete);
+    CompletableFuture.delayedExecutor(hedgeDelay.toMillis(), TimeUnit.MILLISECONDS)
+        .execute(
+            () -> {
+              // the first request has already completed
+              if (result.isDone() || running.getAndUpdate(n -> n == 0 ? 0 : n + 1) == 0) {
+                return;
+              }
+              hedgedCounter.increment();
+              send(imageId, requests, result).whenComplete(onComplete);
+            });
+    return result;
+  }
+
+  private CompletableFuture<Resource> send(
+      String imageId,
+      List<CompletableFuture<Resource>> requests,
+      CompletableFuture<Resource> result) {
+    final CompletableFuture<Resource> request = imageLoader.getImageFromSourceAsync(imageId);
+    requests.add(request);
+    if (result.isDone()) {
+      // result was completed while request was being sent
+      request.cancel(true);
+    }
+    return request;
+  }
+
+  private static Throwable unwrap(Throwable error) {
+    return error instanceof CompletionException ? error.getCause() : error;
+  }
+
+  private static void transition(MeterRegistry meterRegistry, CircuitBreaker.State state) {
+    logger.warn("Image source circuit breaker is {}.", state);
+    meterRegistry
+        .counter("image.loader.circuit-breaker.transitions", "state", state.name().toLowerCase())
+        .increment();
+  }
+}
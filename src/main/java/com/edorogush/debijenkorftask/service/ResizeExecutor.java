@@ -0,0 +1,148 @@
+package com.edorogush.debijenkorftask.service;
+
+import com.edorogush.debijenkorftask.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Executes CPU-bound image processing in the dedicated thread pool of fixed size, so that image
+ * processing does not occupy all request threads. Waiting tasks are kept in the queue of limited
+ * capacity. When the queue is full new tasks are rejected with {@link
+ * ServiceUnavailableException}. Background tasks, e.g. of {@link JobRunner} jobs, take at most
+ * {@code backgroundMaxTasks} places in the pool and the queue, so that they never fill the queue
+ * for requests of clients.
+ */
+@Component
+public class ResizeExecutor {
+  private final ThreadPoolExecutor executor;
+  private final Semaphore backgroundPermits;
+  private final long retryAfterSeconds;
+  private final Timer waitTimer;
+  private final Counter rejectedCounter;
+
+  /**
+   * @param poolSize number of threads. If not positive, number of available processors is used.
+   * @param queueCapacity max number of tasks waiting for execution.
+   * @param backgroundMaxTasks max number of background tasks waiting or being executed at once.
+   * @param retryAfterSeconds the time (seconds) client is advised to wait if task is rejected.
+   * @param meterRegistry registry where metrics are published.
+   */
+  public ResizeExecutor(
+      @Value("${imageService.resize.pool-size}") int poolSize,
+      @Value("${imageService.resize.queue-capacity}") int queueCapacity,
+      @Value("${imageService.resize.background-max-tasks}") int backgroundMaxTasks,
+      @Value("${imageService.resize.retry-after-seconds}") long retryAfterSeconds,
+      MeterRegistry meterRegistry) {
+    final int threads = poolSize > 0 ? poolSize : Runtime.getRuntime().availableProcessors();
+    this.executor =
+        new ThreadPoolExecutor(
+            threads,
+            threads,
+            0L,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            new CustomizableThreadFactory("image-resize-"),
+            new ThreadPoolExecutor.AbortPolicy());
+    this.backgroundPermits = new Semaphore(backgroundMaxTasks);
+    this.retryAfterSeconds = retryAfterSeconds;
+    this.waitTimer =
+        Timer.builder("image.resize.queue.wait")
+            .description("The time image processing task waits in the queue.")
+            .register(meterRegistry);
+    this.rejectedCounter =
+        Counter.builder("image.resize.rejected")
+            .description("The number of image processing tasks rejected due to full queue.")
+            .register(meterRegistry);
+    Gauge.builder("image.resize.queue.size", executor, e -> e.getQueue().size())
+        .description("The number of image processing tasks waiting in the queue.")
+        .register(meterRegistry);
+    Gauge.builder("image.resize.active", executor, ThreadPoolExecutor::getActiveCount)
+        .description("The number of image processing tasks being executed.")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Method to execute {@code task} in the thread pool and to wait for its result.
+   *
+   * @param task task to execute.
+   * @param <T> type of task result.
+   * @return task result.
+   * @throws ServiceUnavailableException if the queue is full.
+   */
+  public <T> T execute(Supplier<T> task) {
+    final long submittedAt = System.nanoTime();
+    final Future<T> future;
+    try {
+      future =
+          executor.submit(
+              () -> {
+                waitTimer.record(System.nanoTime() - submittedAt, TimeUnit.NANOSECONDS);
+                return task.get();
+              });
+    } catch (RejectedExecutionException e) {
+      rejectedCounter.increment();
+      throw new ServiceUnavailableException(
+          "Image processing queue is full.", e, retryAfterSeconds);
+    }
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IllegalStateException(cause);
+    } catch (InterruptedException e) {
+      future.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new ServiceUnavailableException("Interrupted while waiting for image processing.", e);
+    }
+  }
+
+  /**
+   * Method to execute background {@code task} in the thread pool and to wait for its result. If
+   * {@code backgroundMaxTasks} background tasks are already waiting or being executed, the caller
+   * waits for one of them to complete instead of taking another place in the queue.
+   *
+   * @param task task to execute.
+   * @param <T> type of task result.
+   * @return task result.
+   * @throws ServiceUnavailableException if the queue is full of tasks of clients' requests.
+   */
+  public <T> T executeInBackground(Supplier<T> task) {
+    try {
+      backgroundPermits.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ServiceUnavailableException("Interrupted while waiting for image processing.", e);
+    }
+    try {
+      return execute(task);
+    } finally {
+      backgroundPermits.release();
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdown();
+  }
+}
@@ -0,0 +1,52 @@
+package com.edorogush.debijenkorftask.service;
+
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/** Utility class to provide static methods to read range of item's content. */
+final class ResourceRanges {
+
+  private ResourceRanges() {}
+
+  /**
+   * Method to copy range of content kept in memory.
+   *
+   * @param content item's content.
+   * @param start the first byte of the range, inclusive.
+   * @param end the last byte of the range, inclusive, limited by the end of content.
+   */
+  static Resource slice(byte[] content, long start, long end) {
+    final int from = (int) Math.min(start, content.length);
+    final int to = (int) Math.min(end + 1, content.length);
+    return new ByteArrayResource(Arrays.copyOfRange(content, from, Math.max(from, to)));
+  }
+
+  /**
+   * Method to read range of file's content. Only the range is read from disk.
+   *
+   * @param file file to read.
+   * @param start the first byte of the range, inclusive.
+   * @param end the last byte of the range, inclusive, limited by the end of file.
+   */
+  static Resource read(Path file, long start, long end) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      final long size = channel.size();
+      final long from = Math.min(start, size);
+      final ByteBuffer buffer =
+          ByteBuffer.allocate((int) Math.max(0, Math.min(end + 1, size) - from));
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer, from + buffer.position()) < 0) {
+          break;
+        }
+      }
+      return new ByteArrayResource(Arrays.copyOf(buffer.array(), buffer.position()));
+    }
+  }
+}
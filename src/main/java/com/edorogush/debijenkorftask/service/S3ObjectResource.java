@@ -0,0 +1,166 @@
+package com.edorogush.debijenkorftask.service;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+import com.edorogush.debijenkorftask.model.FileMetadata;
+import org.springframework.core.io.AbstractResource;
+
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * {@link org.springframework.core.io.Resource} implementation for Amazon S3 object. Resource could
+ * be created from object already requested, then its content is returned by the first call of
+ * {@link #getInputStream()}, so the resource should be read. Otherwise object content is not
+ * requested until {@link #getInputStream()} is called, object metadata known in advance provides
+ * content length and ETag the content is requested with. Every other call of {@link
+ * #getInputStream()} opens new connection, which is aborted if the stream is closed before all
+ * content is read. Resource could represent a range of object content, then only that range is
+ * requested.
+ */
+final class S3ObjectResource extends AbstractResource implements StoredResource {
+  private final AmazonS3 amazonS3;
+  private final String bucketName;
+  private final String fileName;
+  private final FileMetadata metadata;
+  private final long rangeStart;
+  private final long rangeEnd;
+  /** Object requested in advance, until its content is read. */
+  private final AtomicReference<S3Object> requested = new AtomicReference<>();
+
+  /**
+   * @param object the whole object requested, its content is returned when resource is read the
+   *     first time.
+   */
+  S3ObjectResource(AmazonS3 amazonS3, String bucketName, S3Object object) {
+    this(
+        amazonS3,
+        bucketName,
+        object.getKey(),
+        AmazonS3FileStorage.toFileMetadata(object.getObjectMetadata()));
+    requested.set(object);
+  }
+
+  S3ObjectResource(AmazonS3 amazonS3, String bucketName, String fileName, FileMetadata metadata) {
+    this(amazonS3, bucketName, fileName, metadata, 0, metadata.getContentLength() - 1);
+  }
+
+  /**
+   * @param rangeStart the first byte of object content represented, inclusive.
+   * @param rangeEnd the last byte of object content represented, inclusive.
+   */
+  S3ObjectResource(
+      AmazonS3 amazonS3,
+      String bucketName,
+      String fileName,
+      FileMetadata metadata,
+      long rangeStart,
+      long rangeEnd) {
+    this.amazonS3 = amazonS3;
+    this.bucketName = bucketName;
+    this.fileName = fileName;
+    this.metadata = metadata;
+    this.rangeStart = rangeStart;
+    this.rangeEnd = Math.min(rangeEnd, metadata.getContentLength() - 1);
+  }
+
+  @Override
+  public InputStream getInputStream() throws IOException {
+    final S3Object received = requested.getAndSet(null);
+    if (received != null) {
+      return new AbortOnCloseInputStream(received.getObjectContent());
+    }
+    // ETag constraint guarantees content matches metadata, even if object was replaced meanwhile
+    final GetObjectRequest request =
+        new GetObjectRequest(bucketName, fileName)
+            .withMatchingETagConstraint(metadata.getVersion());
+    if (!isWholeObject()) {
+      request.setRange(rangeStart, rangeEnd);
+    }
+    final S3Object object = amazonS3.getObject(request);
+    if (object == null) {
+      throw new FileNotFoundException(
+          String.format("File with name %s was changed or deleted.", fileName));
+    }
+    return new AbortOnCloseInputStream(object.getObjectContent());
+  }
+
+  @Override
+  public FileMetadata getMetadata() {
+    return metadata;
+  }
+
+  @Override
+  public boolean exists() {
+    return true;
+  }
+
+  @Override
+  public long contentLength() {
+    return rangeEnd - rangeStart + 1;
+  }
+
+  @Override
+  public long lastModified() {
+    return metadata.getLastModified();
+  }
+
+  @Override
+  public String getFilename() {
+    return fileName;
+  }
+
+  @Override
+  public String getDescription() {
+    if (isWholeObject()) {
+      return String.format("Amazon S3 object [%s/%s]", bucketName, fileName);
+    }
+    return String.format(
+        "Amazon S3 object [%s/%s] bytes %d-%d", bucketName, fileName, rangeStart, rangeEnd);
+  }
+
+  private boolean isWholeObject() {
+    return rangeStart == 0 && rangeEnd == metadata.getContentLength() - 1;
+  }
+
+  /**
+   * Stream which aborts underlying HTTP request if it is closed before the end of content, e.g.
+   * when client disconnected. Otherwise connection would be drained to be returned to the pool.
+   */
+  private static final class AbortOnCloseInputStream extends FilterInputStream {
+    private final S3ObjectInputStream objectInputStream;
+    private boolean endOfStream;
+
+    private AbortOnCloseInputStream(S3ObjectInputStream objectInputStream) {
+      super(objectInputStream);
+      this.objectInputStream = objectInputStream;
+    }
+
+    @Override
+    public int read() throws IOException {
+      final int result = super.read();
+      endOfStream = result < 0;
+      return result;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      final int result = super.read(b, off, len);
+      endOfStream = result < 0;
+      return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (!endOfStream) {
+        objectInputStream.abort();
+      }
+      super.close();
+    }
+  }
+}
@@ -0,0 +1,77 @@
+package com.edorogush.debijenkorftask.service;
+
+import com.edorogush.debijenkorftask.exception.ServiceUnavailableException;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * The class deduplicates concurrent calls made for the same key. The first caller executes the
+ * task, other callers with the same key wait for its result, but not longer than {@code
+ * awaitTimeout}.
+ *
+ * @param <T> type of task result.
+ */
+final class SingleFlight<T> {
+  private final ConcurrentMap<String, CompletableFuture<T>> inFlight = new ConcurrentHashMap<>();
+  private final Duration awaitTimeout;
+
+  SingleFlight(Duration awaitTimeout) {
+    this.awaitTimeout = awaitTimeout;
+  }
+
+  /**
+   * Method to execute {@code task} or to join the execution already started for {@code key}.
+   *
+   * @param key unique key of the task.
+   * @param task task to execute.
+   * @return task result.
+   * @throws ServiceUnavailableException if result of task started by another caller is not
+   *     received within {@code awaitTimeout}.
+   */
+  T execute(String key, Supplier<T> task) {
+    final CompletableFuture<T> future = new CompletableFuture<>();
+    final CompletableFuture<T> existing = inFlight.putIfAbsent(key, future);
+    if (existing != null) {
+      return await(key, existing);
+    }
+    try {
+      final T result = task.get();
+      future.complete(result);
+      return result;
+    } catch (RuntimeException | Error e) {
+      future.completeExceptionally(e);
+      throw e;
+    } finally {
+      inFlight.remove(key, future);
+    }
+  }
+
+  private T await(String key, CompletableFuture<T> future) {
+    try {
+      return future.get(awaitTimeout.toMillis(), TimeUnit.MILLISECONDS);
+    } catch (ExecutionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IllegalStateException(cause);
+    } catch (TimeoutException e) {
+      throw new ServiceUnavailableException(
+          String.format("Timeout while waiting for concurrent request for %s.", key), e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ServiceUnavailableException(
+          String.format("Interrupted while waiting for concurrent request for %s.", key), e);
+    }
+  }
+}
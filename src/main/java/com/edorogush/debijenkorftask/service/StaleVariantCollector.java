@@ -0,0 +1,96 @@
+package com.edorogush.debijenkorftask.service;
+
+import com.edorogush.debijenkorftask.model.Job;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Component to delete images processed with previous definitions of predefined types. Such images
+ * are kept in directories of previous type versions and are never requested again. Only
+ * directories of types are listed periodically, and directory is deleted after it has been seen
+ * stale for {@code gracePeriod}, so that directories still used by instances running another
+ * version of the application, e.g. during rolling deploy or after rollback, are kept. Images of
+ * stale directories are listed and deleted by background jobs of {@link JobRunner}, one job per
+ * type, so their progress is available with other jobs. Job of type is not submitted again while
+ * previous one is not finished.
+ */
+@Component
+public class StaleVariantCollector {
+  static final String JOB_TYPE = "collect-stale";
+  static final int BATCH_SIZE = 1000;
+  private final ImageService imageService;
+  private final ImageProcessor imageProcessor;
+  private final JobRunner jobRunner;
+  private final boolean enabled;
+  private final Duration gracePeriod;
+  private final Map<String, Job> jobsByImageType = new HashMap<>();
+  /** The time directory was first seen stale, by directory. */
+  private final Map<String, Instant> staleSince = new HashMap<>();
+
+  /**
+   * @param enabled if {@code false}, nothing is deleted.
+   * @param gracePeriodMs the time (ms) directory should be seen stale before it is deleted.
+   */
+  public StaleVariantCollector(
+      ImageService imageService,
+      ImageProcessor imageProcessor,
+      JobRunner jobRunner,
+      @Value("${imageService.stale-variants.enabled}") boolean enabled,
+      @Value("${imageService.stale-variants.grace-period-ms}") long gracePeriodMs) {
+    this.imageService = imageService;
+    this.imageProcessor = imageProcessor;
+    this.jobRunner = jobRunner;
+    this.enabled = enabled;
+    this.gracePeriod = Duration.ofMillis(gracePeriodMs);
+  }
+
+  /** Method to submit jobs deleting images of previous type versions. */
+  @Scheduled(
+      initialDelayString = "${imageService.stale-variants.initial-delay-ms}",
+      fixedDelayString = "${imageService.stale-variants.interval-ms}")
+  public synchronized void collect() {
+    if (!enabled) {
+      return;
+    }
+    final Instant now = Instant.now();
+    for (String imageType : imageProcessor.imageTypes()) {
+      final Job previous = jobsByImageType.get(imageType);
+      if (previous != null && !previous.isFinished()) {
+        continue;
+      }
+      final List<String> stale = imageService.listStaleDirectories(imageType);
+      // directory which is current again, e.g. after rollback, starts grace period anew later
+      final String typePrefix = imageType + "/";
+      staleSince
+          .keySet()
+          .removeIf(directory -> directory.startsWith(typePrefix) && !stale.contains(directory));
+      final List<String> expired =
+          stale.stream()
+              .filter(directory -> isExpired(directory, now))
+              .collect(Collectors.toList());
+      if (expired.isEmpty()) {
+        continue;
+      }
+      final Job job =
+          jobRunner.submitBatches(
+              JOB_TYPE,
+              pageConsumer -> imageService.listStale(expired, pageConsumer),
+              BATCH_SIZE,
+              imageService::deleteStored);
+      jobsByImageType.put(imageType, job);
+    }
+  }
+
+  private boolean isExpired(String directory, Instant now) {
+    final Instant since = staleSince.computeIfAbsent(directory, ignored -> now);
+    return !since.plus(gracePeriod).isAfter(now);
+  }
+}
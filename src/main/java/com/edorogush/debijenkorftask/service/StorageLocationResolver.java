@@ -1,6 +1,8 @@
 package com.edorogush.debijenkorftask.service;
 
-/** Utility class to provide static method to resolve file location in root directory. */
+import java.util.Optional;
+
+/** Utility class to provide static methods to resolve file location in root directory. */
 public final class StorageLocationResolver {
   private static final int FIRST_FOLDER_NAME_SIZE = 4;
   private static final int SECOND_FOLDER_NAME_SIZE = 4;
@@ -26,6 +28,21 @@ public final class StorageLocationResolver {
     return SLASH + firstFolderName + SLASH + secondFolderName + SLASH;
   }
 
+  /**
+   * Method to resolve location of all files which names start with {@code fileNamePrefix}. Such
+   * files share location only if the prefix covers both folder names and is not cut by extension.
+   *
+   * @return location, or empty if files could be in different locations.
+   */
+  public static Optional<String> resolvePrefix(String fileNamePrefix) {
+    final int sharedLength = FIRST_FOLDER_NAME_SIZE + SECOND_FOLDER_NAME_SIZE + 1;
+    if (fileNamePrefix.length() < sharedLength
+        || fileNamePrefix.substring(0, sharedLength).contains(".")) {
+      return Optional.empty();
+    }
+    return Optional.of(resolve(fileNamePrefix));
+  }
+
   private static String cutFileExtension(String filename) {
     int index = filename.lastIndexOf(".");
     if (index < 0) {
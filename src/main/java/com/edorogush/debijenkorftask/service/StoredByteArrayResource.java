@@ -0,0 +1,20 @@
+package com.edorogush.debijenkorftask.service;
+
+import com.edorogush.debijenkorftask.model.FileMetadata;
+import org.springframework.core.io.ByteArrayResource;
+
+/** {@link ByteArrayResource} of item read into memory together with its metadata. */
+final class StoredByteArrayResource extends ByteArrayResource implements StoredResource {
+  private final FileMetadata metadata;
+
+  /** @param metadata metadata of the whole item, or {@code null} if it is not known. */
+  StoredByteArrayResource(byte[] byteArray, FileMetadata metadata) {
+    super(byteArray);
+    this.metadata = metadata;
+  }
+
+  @Override
+  public FileMetadata getMetadata() {
+    return metadata;
+  }
+}
@@ -0,0 +1,25 @@
+package com.edorogush.debijenkorftask.service;
+
+import com.edorogush.debijenkorftask.model.FileMetadata;
+import org.springframework.core.io.FileSystemResource;
+
+import java.nio.file.Path;
+
+/**
+ * {@link FileSystemResource} of item kept in file together with its metadata. The file should not
+ * be changed while the resource is in use, e.g. it is a link of {@link PinnedFiles}.
+ */
+final class StoredFileResource extends FileSystemResource implements StoredResource {
+  private final FileMetadata metadata;
+
+  /** @param metadata metadata of the whole item, or {@code null} if it is not known. */
+  StoredFileResource(Path file, FileMetadata metadata) {
+    super(file);
+    this.metadata = metadata;
+  }
+
+  @Override
+  public FileMetadata getMetadata() {
+    return metadata;
+  }
+}
@@ -0,0 +1,24 @@
+package com.edorogush.debijenkorftask.service;
+
+import com.edorogush.debijenkorftask.model.FileMetadata;
+import org.springframework.core.io.Resource;
+
+import java.util.Optional;
+
+/**
+ * {@link Resource} of item read from {@link FileStorage}, which carries metadata of the item known
+ * to underlying storage at the time it was read. Caches keep the metadata of underlying storage
+ * instead of calculating their own, so that all tiers return the same validators for the item.
+ */
+public interface StoredResource extends Resource {
+
+  /** @return metadata of the whole item, or {@code null} if it is not known without a request. */
+  FileMetadata getMetadata();
+
+  /** @return metadata carried by {@code resource}, or empty if it is not known. */
+  static Optional<FileMetadata> metadataOf(Resource resource) {
+    return resource instanceof StoredResource
+        ? Optional.ofNullable(((StoredResource) resource).getMetadata())
+        : Optional.empty();
+  }
+}
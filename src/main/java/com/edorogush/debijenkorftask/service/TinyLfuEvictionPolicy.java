@@ -0,0 +1,80 @@
+package com.edorogush.debijenkorftask.service;
+
+/**
+ * The class is implementation of {@link EvictionPolicy} interface which takes into account how
+ * often items are requested. Items are ordered for eviction as in {@link LruEvictionPolicy}, but
+ * new item is admitted only if it was requested more often than the item it would replace. This
+ * keeps a burst of one-off requests from flushing popular items out of the cache.
+ *
+ * <p>Request frequencies are estimated with Count-Min sketch of 4-bit counters. All counters are
+ * halved after every {@code 10 * width} recorded requests, so that stale popularity fades out.
+ */
+public class TinyLfuEvictionPolicy extends LruEvictionPolicy {
+  private static final int DEPTH = 4;
+  private static final int MAX_FREQUENCY = 15;
+  private static final int[] SEEDS = {0x97cb3127, 0x5d3a8a4f, 0x2c1b3c6d, 0x7feb352d};
+  private final int[][] counters;
+  private final int mask;
+  private final int sampleSize;
+  private int recorded;
+
+  /** @param expectedEntries approximate number of items the cache is able to hold. */
+  public TinyLfuEvictionPolicy(int expectedEntries) {
+    final int width = Integer.highestOneBit(Math.max(expectedEntries, 64) - 1) << 1;
+    this.counters = new int[DEPTH][width];
+    this.mask = width - 1;
+    this.sampleSize = 10 * width;
+  }
+
+  @Override
+  public void recordAccess(String key) {
+    super.recordAccess(key);
+    increment(key);
+  }
+
+  @Override
+  public boolean admit(String candidate, String victim) {
+    return frequency(candidate) > frequency(victim);
+  }
+
+  int frequency(String key) {
+    final int hash = spread(key.hashCode());
+    int frequency = MAX_FREQUENCY;
+    for (int i = 0; i < DEPTH; i++) {
+      frequency = Math.min(frequency, counters[i][index(hash, i)]);
+    }
+    return frequency;
+  }
+
+  private void increment(String key) {
+    final int hash = spread(key.hashCode());
+    for (int i = 0; i < DEPTH; i++) {
+      final int index = index(hash, i);
+      if (counters[i][index] < MAX_FREQUENCY) {
+        counters[i][index]++;
+      }
+    }
+    if (++recorded >= sampleSize) {
+      reset();
+    }
+  }
+
+  private void reset() {
+    for (int[] row : counters) {
+      for (int i = 0; i < row.length; i++) {
+        row[i] >>>= 1;
+      }
+    }
+    recorded /= 2;
+  }
+
+  private int index(int hash, int row) {
+    final int h = (hash ^ SEEDS[row]) * 0x9e3779b9;
+    return (h ^ (h >>> 16)) & mask;
+  }
+
+  private static int spread(int hash) {
+    final int h = hash * 0x45d9f3b;
+    return h ^ (h >>> 16);
+  }
+}
@@ -0,0 +1,257 @@
+package com.edorogush.debijenkorftask.service;
+
+import com.edorogush.debijenkorftask.exception.NotFoundException;
+import com.edorogush.debijenkorftask.model.DeleteResult;
+import com.edorogush.debijenkorftask.model.FileMetadata;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * The class is implementation of {@link FileStorage} interface which puts items to another {@link
+ * FileStorage} in background with {@link WriteBehindUploader}, so {@link #putInBackground}, and
+ * {@link #put} if {@code allPutsInBackground}, return before item is stored. Retries are done by
+ * underlying storage as before. Items waiting for upload are
+ * returned by {@link #get} from memory. Deleting item cancels its upload, or waits for it to finish
+ * if it has already started, so deleted item is never stored afterwards. Putting item again cancels
+ * upload of the previous item in the same way, or starts the new upload after it finishes. If
+ * upload is not accepted by {@link WriteBehindUploader}, item is put in the caller's thread.
+ */
+public class WriteBehindFileStorage implements FileStorage {
+  private final FileStorage fileStorage;
+  private final WriteBehindUploader uploader;
+  private final boolean allPutsInBackground;
+  private static final CompletableFuture<Void> FINISHED = CompletableFuture.completedFuture(null);
+  private final ConcurrentMap<String, PendingUpload> pendingUploads = new ConcurrentHashMap<>();
+
+  public WriteBehindFileStorage(FileStorage fileStorage, WriteBehindUploader uploader) {
+    this(fileStorage, uploader, true);
+  }
+
+  /**
+   * @param allPutsInBackground if {@code false}, only {@link #putInBackground} puts item in
+   *     background, {@link #put} returns after item is stored.
+   */
+  public WriteBehindFileStorage(
+      FileStorage fileStorage, WriteBehindUploader uploader, boolean allPutsInBackground) {
+    this.fileStorage = fileStorage;
+    this.uploader = uploader;
+    this.allPutsInBackground = allPutsInBackground;
+  }
+
+  @Override
+  public Resource get(String fileName) {
+    final PendingUpload pendingUpload = pendingUploads.get(fileName);
+    if (pendingUpload != null) {
+      return pendingUpload.resource;
+    }
+    return fileStorage.get(fileName);
+  }
+
+  @Override
+  public Resource getRange(String fileName, FileMetadata metadata, long start, long end) {
+    final PendingUpload pendingUpload = pendingUploads.get(fileName);
+    if (pendingUpload != null) {
+      if (!metadata.matches(metadataOf(pendingUpload))) {
+        throw new NotFoundException(String.format("File with name %s was changed.", fileName));
+      }
+      try (InputStream inputStream = pendingUpload.resource.getInputStream()) {
+        return ResourceRanges.slice(inputStream.readAllBytes(), start, end);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+    return fileStorage.getRange(fileName, metadata, start, end);
+  }
+
+  /**
+   * {@inheritDoc} Metadata of item waiting for upload is calculated from its content, the time
+   * item was put is returned as last modification time.
+   */
+  @Override
+  public FileMetadata head(String fileName) {
+    final PendingUpload pendingUpload = pendingUploads.get(fileName);
+    if (pendingUpload != null) {
+      return metadataOf(pendingUpload);
+    }
+    return fileStorage.head(fileName);
+  }
+
+  private static FileMetadata metadataOf(PendingUpload pendingUpload) {
+    return new FileMetadata(
+        ContentHash.of(pendingUpload.resource),
+        pendingUpload.putAt,
+        sizeOf(pendingUpload.resource));
+  }
+
+  /**
+   * {@inheritDoc} Items waiting for upload are listed as well, in the last page after items of
+   * underlying storage.
+   */
+  @Override
+  public void list(String prefix, Consumer<List<String>> pageConsumer) {
+    final Set<String> pending =
+        pendingUploads.keySet().stream()
+            .filter(fileName -> fileName.startsWith(prefix))
+            .collect(Collectors.toCollection(LinkedHashSet::new));
+    fileStorage.list(
+        prefix,
+        page -> {
+          final List<String> stored = new ArrayList<>(page);
+          stored.removeAll(pending);
+          pageConsumer.accept(stored);
+        });
+    if (!pending.isEmpty()) {
+      pageConsumer.accept(new ArrayList<>(pending));
+    }
+  }
+
+  /** {@inheritDoc} Directories of items waiting for upload are listed as well. */
+  @Override
+  public List<String> listDirectories(String prefix) {
+    final Set<String> directories = new LinkedHashSet<>(fileStorage.listDirectories(prefix));
+    pendingUploads.keySet().stream()
+        .filter(fileName -> fileName.startsWith(prefix))
+        .filter(fileName -> fileName.indexOf('/', prefix.length()) >= 0)
+        .map(fileName -> fileName.substring(0, fileName.indexOf('/', prefix.length()) + 1))
+        .forEach(directories::add);
+    return new ArrayList<>(directories);
+  }
+
+  /**
+   * {@inheritDoc} If not {@code allPutsInBackground}, upload of previous item of the same name is
+   * cancelled or waited for, and item is put before the method returns.
+   *
+   * @param file {@link Resource} item's data.
+   * @param fileName absolute path name of item.
+   */
+  @Override
+  public void put(Resource file, String fileName) {
+    if (allPutsInBackground) {
+      putInBackground(file, fileName);
+      return;
+    }
+    cancelUpload(fileName);
+    fileStorage.put(file, fileName);
+  }
+
+  /**
+   * {@inheritDoc} Item is uploaded in background. If upload fails after all retries, failure is
+   * logged and item remains not stored. If upload is not accepted, item is put before the method
+   * returns, and failure is thrown to the caller.
+   *
+   * @param file {@link Resource} item's data.
+   * @param fileName absolute path name of item.
+   */
+  @Override
+  public void putInBackground(Resource file, String fileName) {
+    final Resource resource = readIfOpen(file);
+    // upload of replaced item which has already started must finish before this one starts,
+    // otherwise it could finish last and overwrite this item in underlying storage
+    final PendingUpload pendingUpload =
+        pendingUploads.compute(
+            fileName,
+            (name, replaced) ->
+                new PendingUpload(
+                    resource,
+                    replaced == null || replaced.cancel() ? FINISHED : replaced.finished));
+    final long sizeBytes = sizeOf(pendingUpload.resource);
+    if (!uploader.submit(fileName, sizeBytes, () -> upload(pendingUpload, fileName))) {
+      upload(pendingUpload, fileName);
+    }
+  }
+
+  @Override
+  public void deleteOne(String fileName) {
+    cancelUpload(fileName);
+    fileStorage.deleteOne(fileName);
+  }
+
+  @Override
+  public DeleteResult deleteMany(List<String> fileNames) {
+    fileNames.forEach(this::cancelUpload);
+    return fileStorage.deleteMany(fileNames);
+  }
+
+  private void upload(PendingUpload pendingUpload, String fileName) {
+    try {
+      if (pendingUpload.start()) {
+        pendingUpload.previous.join();
+        fileStorage.put(pendingUpload.resource, fileName);
+      }
+    } finally {
+      pendingUploads.remove(fileName, pendingUpload);
+      pendingUpload.finish();
+    }
+  }
+
+  private void cancelUpload(String fileName) {
+    final PendingUpload pendingUpload = pendingUploads.remove(fileName);
+    if (pendingUpload != null && !pendingUpload.cancel()) {
+      pendingUpload.finished.join();
+    }
+  }
+
+  /** Resource of not re-readable type must be read now, as it is read again by upload. */
+  private Resource readIfOpen(Resource resource) {
+    if (!resource.isOpen()) {
+      return resource;
+    }
+    try (InputStream inputStream = resource.getInputStream()) {
+      return new ByteArrayResource(inputStream.readAllBytes());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static long sizeOf(Resource resource) {
+    try {
+      return resource.contentLength();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static final class PendingUpload {
+    private final Resource resource;
+    private final long putAt = System.currentTimeMillis();
+    private final CompletableFuture<Void> finished = new CompletableFuture<>();
+    /** Completed when upload of previous item of the same name is finished. */
+    private final CompletableFuture<Void> previous;
+    private boolean started;
+    private boolean cancelled;
+
+    private PendingUpload(Resource resource, CompletableFuture<Void> previous) {
+      this.resource = resource;
+      this.previous = previous;
+    }
+
+    /** @return {@code false} if upload was cancelled. */
+    private synchronized boolean start() {
+      started = !cancelled;
+      return started;
+    }
+
+    /** @return {@code false} if upload has already started and cannot be cancelled. */
+    private synchronized boolean cancel() {
+      cancelled = !started;
+      return cancelled;
+    }
+
+    private void finish() {
+      finished.complete(null);
+    }
+  }
+}
@@ -0,0 +1,120 @@
+package com.edorogush.debijenkorftask.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executes uploads to storage in background thread pool. Waiting uploads are limited both by their
+ * number, the capacity of the queue, and by total size of items, {@code maxPendingBytes}. Upload
+ * exceeding either limit, or submitted after shutdown, is not accepted, and the caller is expected
+ * to upload item in its own thread, which slows down producers until the queue is drained. On
+ * shutdown all queued uploads are completed, but not longer than {@code drainTimeoutSeconds}.
+ */
+@Component
+public class WriteBehindUploader {
+  private static final Logger logger = LogManager.getLogger();
+  private final ThreadPoolExecutor executor;
+  private final long drainTimeoutSeconds;
+  private final long maxPendingBytes;
+  private final AtomicLong pendingBytes = new AtomicLong();
+  private final Counter failedCounter;
+  private final Counter rejectedCounter;
+
+  public WriteBehindUploader(
+      @Value("${fileStorage.write-behind.threads}") int threads,
+      @Value("${fileStorage.write-behind.queue-capacity}") int queueCapacity,
+      @Value("${fileStorage.write-behind.drain-timeout-seconds}") long drainTimeoutSeconds,
+      @Value("${fileStorage.write-behind.max-pending-mb}") long maxPendingMb,
+      MeterRegistry meterRegistry) {
+    this.executor =
+        new ThreadPoolExecutor(
+            threads,
+            threads,
+            0L,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            new CustomizableThreadFactory("write-behind-"),
+            new ThreadPoolExecutor.AbortPolicy());
+    this.drainTimeoutSeconds = drainTimeoutSeconds;
+    this.maxPendingBytes = maxPendingMb * 1024 * 1024;
+    this.failedCounter =
+        Counter.builder("image.storage.write-behind.failed")
+            .description("The number of background uploads failed after all retries.")
+            .register(meterRegistry);
+    this.rejectedCounter =
+        Counter.builder("image.storage.write-behind.rejected")
+            .description("The number of uploads not accepted and executed by the caller.")
+            .register(meterRegistry);
+    Gauge.builder("image.storage.write-behind.pending", pendingBytes, AtomicLong::get)
+        .description("The total size of items waiting for upload or being uploaded.")
+        .baseUnit("bytes")
+        .register(meterRegistry);
+    Gauge.builder("image.storage.write-behind.queue.size", executor, e -> e.getQueue().size())
+        .description("The number of uploads waiting in the queue.")
+        .register(meterRegistry);
+    Gauge.builder("image.storage.write-behind.active", executor, ThreadPoolExecutor::getActiveCount)
+        .description("The number of uploads being executed.")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Method to execute upload in background.
+   *
+   * @param fileName absolute path name of item uploaded, used for logging.
+   * @param sizeBytes size of item uploaded, counted as pending until upload is finished.
+   * @param upload upload to execute.
+   * @return {@code false} if upload is not accepted because too many uploads are waiting, or
+   *     uploader is shut down. Upload is not executed then.
+   */
+  public boolean submit(String fileName, long sizeBytes, Runnable upload) {
+    if (pendingBytes.addAndGet(sizeBytes) > maxPendingBytes) {
+      return reject(sizeBytes);
+    }
+    try {
+      executor.execute(
+          () -> {
+            try {
+              upload.run();
+            } catch (RuntimeException e) {
+              failedCounter.increment();
+              logger.error("Background upload of {} failed.", fileName, e);
+            } finally {
+              pendingBytes.addAndGet(-sizeBytes);
+            }
+          });
+      return true;
+    } catch (RejectedExecutionException e) {
+      return reject(sizeBytes);
+    }
+  }
+
+  private boolean reject(long sizeBytes) {
+    pendingBytes.addAndGet(-sizeBytes);
+    rejectedCounter.increment();
+    return false;
+  }
+
+  @PreDestroy
+  public void drain() throws InterruptedException {
+    executor.shutdown();
+    if (!executor.awaitTermination(drainTimeoutSeconds, TimeUnit.SECONDS)) {
+      logger.warn(
+          "Background uploads not completed within {} seconds: {} uploads dropped.",
+          drainTimeoutSeconds,
+          executor.shutdownNow().size());
+    }
+  }
+}
@@ -0,0 +1,78 @@
+package com.edorogush.debijenkorftask.controller;
+
+import com.edorogush.debijenkorftask.model.Job;
+import com.edorogush.debijenkorftask.service.ImageService;
+import com.edorogush.debijenkorftask.service.JobRunner;
+import com.edorogush.debijenkorftask.service.RequestValidator;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/** This is a MockMVC test covering {@link AdminController}. */
+@WebMvcTest(AdminController.class)
+@ActiveProfiles("dev")
+class AdminControllerTest {
+  private static final Job JOB = new Job("id1", "prewarm", 2, 10);
+
+  @MockBean private ImageService imageServiceMock;
+  @MockBean private RequestValidator requestValidatorMock;
+  @MockBean private JobRunner jobRunnerMock;
+
+  @Autowired private MockMvc mockMvc;
+
+  @Test
+  void prewarm_whenTextManifest_thenJobSubmittedForEveryLine() throws Exception {
+    when(jobRunnerMock.submit(eq("prewarm"), eq(List.of("a.jpg", "b.jpg")), any()))
+        .thenReturn(JOB);
+
+    mockMvc
+        .perform(post("/admin/prewarm").contentType("text/plain").content("a.jpg\n\n b.jpg \n"))
+        .andExpect(status().isAccepted())
+        .andExpect(header().string("Location", "/admin/jobs/id1"))
+        .andExpect(jsonPath("$.total").value(2))
+        .andExpect(jsonPath("$.state").value("QUEUED"));
+  }
+
+  @Test
+  void prewarm_whenManifestEmpty_thenReturn400() throws Exception {
+    mockMvc
+        .perform(post("/admin/prewarm").contentType("application/json").content("[]"))
+        .andExpect(status().isBadRequest());
+  }
+
+  @Test
+  void findJob_whenNotExists_thenReturn404() throws Exception {
+    when(jobRunnerMock.find("id2")).thenReturn(Optional.empty());
+
+    mockMvc.perform(get("/admin/jobs/{id}", "id2")).andExpect(status().isNotFound());
+  }
+
+  @Test
+  void flush_whenImageTypeGiven_thenBatchJobSubmitted() throws Exception {
+    when(jobRunnerMock.submitBatches(eq("flush"), any(), eq(1000), any()))
+        .thenReturn(new Job("id3", "flush", 0, 10));
+
+    mockMvc
+        .perform(post("/admin/flush/{imageType}", "thumbnail").param("referencePrefix", "abc"))
+        .andExpect(status().isAccepted())
+        .andExpect(header().string("Location", "/admin/jobs/id3"))
+        .andExpect(jsonPath("$.type").value("flush"));
+    verify(requestValidatorMock).checkImageTypeForDelete("thumbnail");
+  }
+}
@@ -74,7 +74,8 @@ public class ImageAppRestTest {
         TestImageHandler.readTestImageFromSource(
             TestImageHandler.resolveImageNewName(TEST_IMAGE, typeName));
     // when
-    final String fileLocationInS3 = "/" + bucketName + "/" + typeName + "/abc_/abc_def.jpg";
+    final String fileLocationInS3 =
+        "/" + bucketName + "/" + ImageType.THUMBNAIL.getStorageDirectory() + "/abc_/abc_def.jpg";
     final String fileOriginalLocationInS3 = "/" + bucketName + "/" + ORIGINAL + "/abc_/abc_def.jpg";
     final String fileLocationInSource = "/" + imageName;
     stubGetRequestFailed(fileLocationInS3, HttpStatus.NOT_FOUND);
@@ -109,7 +110,8 @@ public class ImageAppRestTest {
         TestImageHandler.readTestImageFromSource(
             TestImageHandler.resolveImageNewName(TEST_IMAGE, typeName));
     // when
-    final String fileLocationInS3 = "/" + bucketName + "/" + typeName + "/abc_/abc_def.jpg";
+    final String fileLocationInS3 =
+        "/" + bucketName + "/" + ImageType.THUMBNAIL.getStorageDirectory() + "/abc_/abc_def.jpg";
     final String fileOriginalLocationInS3 = "/" + bucketName + "/" + ORIGINAL + "/abc_/abc_def.jpg";
     stubGetRequestFailed(fileLocationInS3, HttpStatus.NOT_FOUND);
     stubGetRequestReturnData(fileOriginalLocationInS3, sourceImage, MediaType.IMAGE_JPEG_VALUE);
@@ -4,9 +4,16 @@ import com.edorogush.debijenkorftask.exception.BadRequestException;
 import com.edorogush.debijenkorftask.exception.ImageLoaderRequestException;
 import com.edorogush.debijenkorftask.exception.ImageTypeNotExistException;
 import com.edorogush.debijenkorftask.exception.NotFoundException;
+import com.edorogush.debijenkorftask.exception.ServiceUnavailableException;
+import com.edorogush.debijenkorftask.exception.NotFoundInSourceException;
+import com.edorogush.debijenkorftask.model.BatchItem;
+import com.edorogush.debijenkorftask.model.BatchItemResult;
+import com.edorogush.debijenkorftask.model.FileMetadata;
 import com.edorogush.debijenkorftask.model.ImageType;
+import com.edorogush.debijenkorftask.service.ImageBatchService;
 import com.edorogush.debijenkorftask.service.ImageService;
 import com.edorogush.debijenkorftask.service.RequestValidator;
+import com.edorogush.debijenkorftask.service.StoredResource;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
@@ -16,6 +23,13 @@ import org.springframework.core.io.Resource;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.hamcrest.Matchers.containsString;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.times;
@@ -23,7 +37,9 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 /** This is a MockMVC test covering {@link ImageController}. */
@@ -37,6 +53,7 @@ class ImageControllerTest {
 
   @MockBean private ImageService imageServiceMock;
   @MockBean private RequestValidator requestValidatorMock;
+  @MockBean private ImageBatchService imageBatchServiceMock;
 
   @Autowired private MockMvc mockMvc;
 
@@ -44,8 +61,8 @@ class ImageControllerTest {
   void searchByName_whenIsPresent_ThenReturnOK() throws Exception {
     final String typeName = ImageType.THUMBNAIL.getName();
     final Resource imageExpected = new ByteArrayResource(new byte[] {});
-    when(imageServiceMock.findByName(IMAGE_TYPE.getName(), typeName)).thenReturn(imageExpected);
-    doNothing().when(requestValidatorMock).checkImageName(IMAGE_TYPE.getName());
+    when(imageServiceMock.findByName(IMAGE_NAME, typeName)).thenReturn(imageExpected);
+    doNothing().when(requestValidatorMock).checkImageName(IMAGE_NAME);
     doNothing().when(requestValidatorMock).checkImageTypeForSearch(typeName);
 
     mockMvc
@@ -55,6 +72,79 @@ class ImageControllerTest {
         .andExpect(content().contentType(IMAGE_TYPE.getImageExtension().getMediaType()));
   }
 
+  @Test
+  void searchByName_whenStored_thenReturnCacheHeadersWithoutMetadataRequest() throws Exception {
+    final String typeName = ImageType.THUMBNAIL.getName();
+    final Resource imageExpected =
+        new StoredImage(new byte[] {1}, new FileMetadata("abc", 1_600_000_000_000L, 1));
+    when(imageServiceMock.findByName(IMAGE_NAME, typeName)).thenReturn(imageExpected);
+
+    mockMvc
+        .perform(get(GET_REQUEST, typeName, IMAGE_NAME))
+        .andExpect(status().isOk())
+        .andExpect(header().string("ETag", "\"abc\""))
+        .andExpect(header().string("Last-Modified", "Sun, 13 Sep 2020 12:26:40 GMT"))
+        .andExpect(header().string("Cache-Control", "public, max-age=86400"));
+    verify(imageServiceMock, times(0)).findMetadata(any(), any());
+  }
+
+  @Test
+  void searchByName_whenETagNotMatches_thenReturnImageWithStoredETag() throws Exception {
+    final String typeName = ImageType.THUMBNAIL.getName();
+    when(imageServiceMock.findMetadata(IMAGE_NAME, typeName))
+        .thenReturn(Optional.of(new FileMetadata("abc", 1_600_000_000_000L, 1)));
+    when(imageServiceMock.findByName(IMAGE_NAME, typeName))
+        .thenReturn(new ByteArrayResource(new byte[] {1}));
+
+    mockMvc
+        .perform(get(GET_REQUEST, typeName, IMAGE_NAME).header("If-None-Match", "\"xyz\""))
+        .andExpect(status().isOk())
+        .andExpect(header().string("ETag", "\"abc\""));
+  }
+
+  @Test
+  void searchByName_whenETagMatches_thenReturn304WithoutReadingImage() throws Exception {
+    final String typeName = ImageType.THUMBNAIL.getName();
+    when(imageServiceMock.findMetadata(IMAGE_NAME, typeName))
+        .thenReturn(Optional.of(new FileMetadata("abc", 1_600_000_000_000L, 1)));
+
+    mockMvc
+        .perform(get(GET_REQUEST, typeName, IMAGE_NAME).header("If-None-Match", "\"abc\""))
+        .andExpect(status().isNotModified())
+        .andExpect(header().string("ETag", "\"abc\""))
+        .andExpect(content().bytes(new byte[0]));
+    verify(imageServiceMock, times(0)).findByName(any(), any());
+  }
+
+  @Test
+  void searchByName_whenRangeRequested_thenReturn206WithRangeOnly() throws Exception {
+    final String typeName = ImageType.THUMBNAIL.getName();
+    final byte[] rangeExpected = {2, 3, 4, 5};
+    final FileMetadata metadata = new FileMetadata("abc", 1_600_000_000_000L, 10);
+    when(imageServiceMock.findMetadata(IMAGE_NAME, typeName)).thenReturn(Optional.of(metadata));
+    when(imageServiceMock.findRangeByName(IMAGE_NAME, typeName, metadata, 2, 5))
+        .thenReturn(new ByteArrayResource(rangeExpected));
+
+    mockMvc
+        .perform(get(GET_REQUEST, typeName, IMAGE_NAME).header("Range", "bytes=2-5"))
+        .andExpect(status().isPartialContent())
+        .andExpect(header().string("Content-Range", "bytes 2-5/10"))
+        .andExpect(content().bytes(rangeExpected));
+    verify(imageServiceMock, times(0)).findByName(any(), any());
+  }
+
+  @Test
+  void searchByName_whenRangeNotSatisfiable_thenReturn416() throws Exception {
+    final String typeName = ImageType.THUMBNAIL.getName();
+    when(imageServiceMock.findMetadata(IMAGE_NAME, typeName))
+        .thenReturn(Optional.of(new FileMetadata("abc", 1_600_000_000_000L, 10)));
+
+    mockMvc
+        .perform(get(GET_REQUEST, typeName, IMAGE_NAME).header("Range", "bytes=20-"))
+        .andExpect(status().isRequestedRangeNotSatisfiable())
+        .andExpect(header().string("Content-Range", "bytes */10"));
+  }
+
   @Test
   void searchByName_whenNotFound_thenReturn404() throws Exception {
     when(imageServiceMock.findByName(IMAGE_NAME, IMAGE_TYPE.getName()))
@@ -79,6 +169,19 @@ class ImageControllerTest {
         .andExpect(status().isNotFound());
   }
 
+  @Test
+  void searchByName_whenServiceUnavailable_thenReturn503WithRetryAfter() throws Exception {
+    when(imageServiceMock.findByName(IMAGE_NAME, IMAGE_TYPE.getName()))
+        .thenThrow(new ServiceUnavailableException("Queue is full.", null, 3));
+    doNothing().when(requestValidatorMock).checkImageName(IMAGE_NAME);
+    doNothing().when(requestValidatorMock).checkImageTypeForSearch(IMAGE_TYPE.getName());
+
+    mockMvc
+        .perform(get(GET_REQUEST, IMAGE_TYPE.getName(), IMAGE_NAME))
+        .andExpect(status().isServiceUnavailable())
+        .andExpect(header().string("Retry-After", "3"));
+  }
+
   @Test
   void searchByName_whenTypeValidationFailed_thenReturn404() throws Exception {
     doThrow(ImageTypeNotExistException.class)
@@ -109,4 +212,67 @@ class ImageControllerTest {
         .andExpect(status().isNoContent());
     verify(imageServiceMock, times(1)).deleteImage(IMAGE_NAME, IMAGE_TYPE.getName());
   }
+
+  @Test
+  void searchBatch_whenOneImageMissing_thenReturnPartPerImage() throws Exception {
+    doAnswer(
+            invocation -> {
+              final Consumer<BatchItemResult> consumer = invocation.getArgument(1);
+              consumer.accept(
+                  BatchItemResult.found(new BatchItem("thumbnail", "a.jpg"), new byte[] {'x'}));
+              consumer.accept(
+                  BatchItemResult.failed(
+                      new BatchItem("icon", "b.jpg"), new NotFoundInSourceException("missing")));
+              return null;
+            })
+        .when(imageBatchServiceMock)
+        .findAll(anyList(), any());
+
+    mockMvc
+        .perform(
+            post("/image/batch")
+                .contentType("application/json")
+                .content(
+                    "[{\"imageType\":\"thumbnail\",\"reference\":\"a.jpg\"},"
+                        + "{\"imageType\":\"icon\",\"reference\":\"b.jpg\"}]"))
+        .andExpect(status().isOk())
+        .andExpect(header().string("Content-Type", containsString("multipart/mixed; boundary=")))
+        .andExpect(
+            content()
+                .string(
+                    containsString(
+                        "Content-Location: /image/show/thumbnail?reference=a.jpg\r\n"
+                            + "X-Image-Status: 200\r\n"
+                            + "Content-Type: image/jpeg\r\n"
+                            + "Cache-Control: public, max-age=86400\r\n"
+                            + "Content-Length: 1\r\n\r\nx\r\n")))
+        .andExpect(
+            content()
+                .string(
+                    containsString(
+                        "Content-Location: /image/show/icon?reference=b.jpg\r\n"
+                            + "X-Image-Status: 404\r\n"
+                            + "Content-Length: 0\r\n\r\n\r\n")));
+  }
+
+  @Test
+  void searchBatch_whenEmpty_thenReturn400() throws Exception {
+    mockMvc
+        .perform(post("/image/batch").contentType("application/json").content("[]"))
+        .andExpect(status().isBadRequest());
+  }
+
+  private static final class StoredImage extends ByteArrayResource implements StoredResource {
+    private final FileMetadata metadata;
+
+    private StoredImage(byte[] content, FileMetadata metadata) {
+      super(content);
+      this.metadata = metadata;
+    }
+
+    @Override
+    public FileMetadata getMetadata() {
+      return metadata;
+    }
+  }
 }
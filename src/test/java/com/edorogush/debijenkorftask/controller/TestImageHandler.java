@@ -3,6 +3,7 @@ package com.edorogush.debijenkorftask.controller;
 import com.edorogush.debijenkorftask.model.ImageType;
 import com.edorogush.debijenkorftask.service.ImageProcessor;
 import com.edorogush.debijenkorftask.service.ImageSizeProcessor;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.Resource;
 
@@ -79,7 +80,7 @@ final class TestImageHandler {
     if (Files.notExists(RESOURCE_PATH.resolve(PROCESSED_IMAGES_DIR))) {
       Files.createDirectory(RESOURCE_PATH.resolve(PROCESSED_IMAGES_DIR));
     }
-    ImageProcessor imageSizeProcessor = new ImageSizeProcessor();
+    ImageProcessor imageSizeProcessor = new ImageSizeProcessor(new SimpleMeterRegistry());
     Resource imageOriginal = new ByteArrayResource(readTestImageFromSource(fileName));
     for (String imageType : imageTypes) {
       Resource imageOptimized = imageSizeProcessor.processImage(imageOriginal, imageType);
@@ -0,0 +1,53 @@
+package com.edorogush.debijenkorftask.logging;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.async.EventRoute;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/** Tests for {@link DiscardingLogQueueFullPolicy}. */
+class DiscardingLogQueueFullPolicyTest {
+  private static final long BACKGROUND_THREAD_ID = -1;
+  private final DiscardingLogQueueFullPolicy policy = new DiscardingLogQueueFullPolicy(Level.WARN);
+
+  @Test
+  void getRoute_whenLevelNotAboveThreshold_thenDiscardedAndCounted() {
+    // given
+    final long discardedBefore = DiscardingLogQueueFullPolicy.discardedCount();
+    // when
+    final EventRoute infoRoute = policy.getRoute(BACKGROUND_THREAD_ID, Level.INFO);
+    final EventRoute warnRoute = policy.getRoute(BACKGROUND_THREAD_ID, Level.WARN);
+    // then
+    assertThat(infoRoute, is(EventRoute.DISCARD));
+    assertThat(warnRoute, is(EventRoute.DISCARD));
+    assertThat(DiscardingLogQueueFullPolicy.discardedCount() - discardedBefore, is(2L));
+  }
+
+  @Test
+  void getRoute_whenLevelAboveThreshold_thenEnqueued() {
+    // when
+    final EventRoute route = policy.getRoute(BACKGROUND_THREAD_ID, Level.ERROR);
+    // then
+    assertThat(route, is(EventRoute.ENQUEUE));
+  }
+
+  @Test
+  void getRoute_whenDefaultThreshold_thenErrorEnqueued() {
+    // given
+    final DiscardingLogQueueFullPolicy defaultPolicy = new DiscardingLogQueueFullPolicy();
+    // when
+    final EventRoute route = defaultPolicy.getRoute(BACKGROUND_THREAD_ID, Level.ERROR);
+    // then
+    assertThat(route, is(EventRoute.ENQUEUE));
+  }
+
+  @Test
+  void getRoute_whenLoggedByBackgroundThread_thenSynchronous() {
+    // when
+    final EventRoute route = policy.getRoute(Thread.currentThread().getId(), Level.INFO);
+    // then
+    assertThat(route, is(EventRoute.SYNCHRONOUS));
+  }
+}
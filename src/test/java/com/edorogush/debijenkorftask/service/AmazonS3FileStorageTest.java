@@ -0,0 +1,313 @@
+package com.edorogush.debijenkorftask.service;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.Headers;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsResult;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException.DeleteError;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+import com.edorogush.debijenkorftask.exception.NotFoundException;
+import com.edorogush.debijenkorftask.model.DeleteResult;
+import com.edorogush.debijenkorftask.model.FileMetadata;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/** Tests for {@link AmazonS3FileStorage}. */
+class AmazonS3FileStorageTest {
+  private static final String BUCKET = "bucket";
+  private static final String FILE_NAME = "thumbnail/abc.jpg";
+  private static final byte[] DATA = {1, 2, 3, 4};
+  private static final String S3_ETAG = "d41d8cd98f00b204e9800998ecf8427e";
+
+  @Mock private AmazonS3 amazonS3Mock;
+
+  @Mock private HttpRequestBase httpRequestMock;
+
+  private AmazonS3FileStorage fileStorage;
+
+  @BeforeEach
+  void setUp() {
+    MockitoAnnotations.initMocks(this);
+    fileStorage =
+        new AmazonS3FileStorage(
+            amazonS3Mock, BUCKET, 1, 2, true, 5, 5, 2, 10, 2, new SimpleMeterRegistry());
+    final ObjectMetadata metadata = new ObjectMetadata();
+    metadata.setContentLength(DATA.length);
+    metadata.setHeader(Headers.ETAG, S3_ETAG);
+    final S3Object object = new S3Object();
+    object.setKey(FILE_NAME);
+    object.setObjectMetadata(metadata);
+    object.setObjectContent(
+        new S3ObjectInputStream(new ByteArrayInputStream(DATA), httpRequestMock));
+    when(amazonS3Mock.getObjectMetadata(BUCKET, FILE_NAME)).thenReturn(metadata);
+    when(amazonS3Mock.getObject(any(GetObjectRequest.class))).thenReturn(object);
+  }
+
+  @Test
+  void get_whenStreaming_thenMetadataTakenFromObjectRequested() throws Exception {
+    // when
+    final Resource resource = fileStorage.get(FILE_NAME);
+    // then
+    assertThat(resource.contentLength(), is((long) DATA.length));
+    assertThat(StoredResource.metadataOf(resource).orElseThrow().getVersion(), is(S3_ETAG));
+    try (InputStream inputStream = resource.getInputStream()) {
+      assertThat(inputStream.readAllBytes(), is(DATA));
+    }
+    verify(amazonS3Mock, times(1)).getObject(any(GetObjectRequest.class));
+    verify(amazonS3Mock, times(0)).getObjectMetadata(BUCKET, FILE_NAME);
+    verify(httpRequestMock, times(0)).abort();
+  }
+
+  @Test
+  void get_whenStreamingAndReadAgain_thenContentOfSameVersionRequested() throws Exception {
+    // given
+    final Resource resource = fileStorage.get(FILE_NAME);
+    resource.getInputStream().close();
+    final ArgumentCaptor<GetObjectRequest> requestCaptor =
+        ArgumentCaptor.forClass(GetObjectRequest.class);
+    // when
+    resource.getInputStream().close();
+    // then
+    verify(amazonS3Mock, times(2)).getObject(requestCaptor.capture());
+    assertThat(requestCaptor.getValue().getMatchingETagConstraints(), is(List.of(S3_ETAG)));
+  }
+
+  @Test
+  void get_whenStreamClosedBeforeEnd_thenConnectionAborted() throws Exception {
+    // when
+    final Resource resource = fileStorage.get(FILE_NAME);
+    try (InputStream inputStream = resource.getInputStream()) {
+      inputStream.read();
+    }
+    // then
+    verify(httpRequestMock, times(1)).abort();
+  }
+
+  @Test
+  void get_whenStreamingAndNotFound_thenThrowNotFoundException() {
+    // given
+    final AmazonS3Exception notFound = new AmazonS3Exception("Not Found");
+    notFound.setStatusCode(404);
+    // when
+    when(amazonS3Mock.getObject(any(GetObjectRequest.class))).thenThrow(notFound);
+    // then
+    assertThrows(NotFoundException.class, () -> fileStorage.get(FILE_NAME));
+  }
+
+  @Test
+  void put_whenImagePut_thenContentHashStoredInMetadata() {
+    // given
+    final ArgumentCaptor<ObjectMetadata> metadataCaptor =
+        ArgumentCaptor.forClass(ObjectMetadata.class);
+    // when
+    fileStorage.put(new ByteArrayResource(DATA), FILE_NAME);
+    // then
+    verify(amazonS3Mock)
+        .putObject(eq(BUCKET), eq(FILE_NAME), any(InputStream.class), metadataCaptor.capture());
+    assertThat(
+        metadataCaptor.getValue().getUserMetaDataOf("content-sha256"), is(ContentHash.of(DATA)));
+  }
+
+  @Test
+  void head_whenContentHashInMetadata_thenReturnedAsETag() {
+    // given
+    final ObjectMetadata metadata = new ObjectMetadata();
+    metadata.setContentLength(DATA.length);
+    metadata.addUserMetadata("content-sha256", ContentHash.of(DATA));
+    // when
+    when(amazonS3Mock.getObjectMetadata(BUCKET, FILE_NAME)).thenReturn(metadata);
+    final FileMetadata fileMetadata = fileStorage.head(FILE_NAME);
+    // then
+    assertThat(fileMetadata.getETag(), is(ContentHash.of(DATA)));
+    assertThat(fileMetadata.getContentLength(), is((long) DATA.length));
+    verify(amazonS3Mock, times(0)).getObject(any(GetObjectRequest.class));
+  }
+
+  @Test
+  void getRange_whenStreaming_thenOnlyRangeOfKnownVersionRequested() throws Exception {
+    // given
+    final ArgumentCaptor<GetObjectRequest> requestCaptor =
+        ArgumentCaptor.forClass(GetObjectRequest.class);
+    final FileMetadata metadata = new FileMetadata("abc", 1, DATA.length, S3_ETAG);
+    // when
+    final Resource resource = fileStorage.getRange(FILE_NAME, metadata, 1, 2);
+    resource.getInputStream().close();
+    // then
+    assertThat(resource.contentLength(), is(2L));
+    verify(amazonS3Mock, times(0)).getObjectMetadata(BUCKET, FILE_NAME);
+    verify(amazonS3Mock).getObject(requestCaptor.capture());
+    assertThat(requestCaptor.getValue().getRange(), is(new long[] {1, 2}));
+    assertThat(requestCaptor.getValue().getMatchingETagConstraints(), is(List.of(S3_ETAG)));
+  }
+
+  @Test
+  void getRange_whenNotStreamingAndObjectReplaced_thenThrowNotFoundException() {
+    // given
+    final AmazonS3FileStorage fileStorage =
+        new AmazonS3FileStorage(
+            amazonS3Mock, BUCKET, 1, 2, false, 5, 5, 2, 10, 2, new SimpleMeterRegistry());
+    final ArgumentCaptor<GetObjectRequest> requestCaptor =
+        ArgumentCaptor.forClass(GetObjectRequest.class);
+    final FileMetadata metadata = new FileMetadata("abc", 1, DATA.length, S3_ETAG);
+    // ETag constraint not met
+    when(amazonS3Mock.getObject(any(GetObjectRequest.class))).thenReturn(null);
+    // when
+    assertThrows(NotFoundException.class, () -> fileStorage.getRange(FILE_NAME, metadata, 1, 2));
+    // then
+    verify(amazonS3Mock).getObject(requestCaptor.capture());
+    assertThat(requestCaptor.getValue().getMatchingETagConstraints(), is(List.of(S3_ETAG)));
+  }
+
+  @Test
+  void list_whenTruncated_thenAllPagesRequested() {
+    // given
+    final ListObjectsV2Result firstPage = page(true, "thumbnail/a.jpg");
+    firstPage.setNextContinuationToken("token");
+    final ListObjectsV2Result lastPage = page(false, "thumbnail/b.jpg");
+    when(amazonS3Mock.listObjectsV2(any(ListObjectsV2Request.class)))
+        .thenReturn(firstPage, lastPage);
+    // when
+    final List<String> fileNames = fileStorage.list("thumbnail/");
+    // then
+    assertThat(fileNames, is(List.of("thumbnail/a.jpg", "thumbnail/b.jpg")));
+    verify(amazonS3Mock, times(2)).listObjectsV2(any(ListObjectsV2Request.class));
+  }
+
+  @Test
+  void listDirectories_whenPrefixGiven_thenCommonPrefixesRequested() {
+    // given
+    final ListObjectsV2Result result = new ListObjectsV2Result();
+    result.getCommonPrefixes().add("thumbnail/v00000000/");
+    final ArgumentCaptor<ListObjectsV2Request> requestCaptor =
+        ArgumentCaptor.forClass(ListObjectsV2Request.class);
+    when(amazonS3Mock.listObjectsV2(requestCaptor.capture())).thenReturn(result);
+    // when
+    final List<String> directories = fileStorage.listDirectories("thumbnail/");
+    // then
+    assertThat(directories, is(List.of("thumbnail/v00000000/")));
+    assertThat(requestCaptor.getValue().getDelimiter(), is("/"));
+  }
+
+  private static ListObjectsV2Result page(boolean truncated, String key) {
+    final ListObjectsV2Result result = new ListObjectsV2Result();
+    final S3ObjectSummary summary = new S3ObjectSummary();
+    summary.setKey(key);
+    result.getObjectSummaries().add(summary);
+    result.setTruncated(truncated);
+    return result;
+  }
+
+  @Test
+  void put_whenBiggerThanThreshold_thenPartsUploadedAndFailedPartRetried() {
+    // given
+    final byte[] content = new byte[6 * 1024 * 1024];
+    final InitiateMultipartUploadResult initiateResult = new InitiateMultipartUploadResult();
+    initiateResult.setUploadId("upload");
+    when(amazonS3Mock.initiateMultipartUpload(any())).thenReturn(initiateResult);
+    final AtomicBoolean failed = new AtomicBoolean();
+    when(amazonS3Mock.uploadPart(any()))
+        .thenAnswer(
+            invocation -> {
+              final UploadPartRequest request = invocation.getArgument(0);
+              if (request.getPartNumber() == 2 && failed.compareAndSet(false, true)) {
+                throw new AmazonS3Exception("Internal error");
+              }
+              final UploadPartResult result = new UploadPartResult();
+              result.setPartNumber(request.getPartNumber());
+              result.setETag("etag" + request.getPartNumber());
+              return result;
+            });
+    final ArgumentCaptor<CompleteMultipartUploadRequest> completeCaptor =
+        ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+    // when
+    fileStorage.put(new ByteArrayResource(content), FILE_NAME);
+    // then
+    verify(amazonS3Mock, times(3)).uploadPart(any());
+    verify(amazonS3Mock).completeMultipartUpload(completeCaptor.capture());
+    assertThat(completeCaptor.getValue().getUploadId(), is("upload"));
+    assertThat(completeCaptor.getValue().getPartETags().size(), is(2));
+    assertThat(completeCaptor.getValue().getPartETags().get(1).getETag(), is("etag2"));
+    verify(amazonS3Mock, times(0))
+        .putObject(any(String.class), any(String.class), any(InputStream.class), any());
+  }
+
+  @Test
+  void put_whenBiggerThanThresholdAndShutDown_thenUploadAborted() {
+    // given
+    final InitiateMultipartUploadResult initiateResult = new InitiateMultipartUploadResult();
+    initiateResult.setUploadId("upload");
+    when(amazonS3Mock.initiateMultipartUpload(any())).thenReturn(initiateResult);
+    fileStorage.shutdown();
+    // when
+    assertThrows(
+        RejectedExecutionException.class,
+        () -> fileStorage.put(new ByteArrayResource(new byte[6 * 1024 * 1024]), FILE_NAME));
+    // then
+    verify(amazonS3Mock, times(0)).uploadPart(any());
+    verify(amazonS3Mock).abortMultipartUpload(any());
+  }
+
+  @Test
+  void deleteMany_whenMoreThan1000Items_thenBatchedAndFailuresReported() {
+    // given
+    final List<String> fileNames =
+        IntStream.range(0, 1500)
+            .mapToObj(i -> "thumbnail/" + i + ".jpg")
+            .collect(Collectors.toList());
+    final DeleteError error = new DeleteError();
+    error.setKey("thumbnail/1200.jpg");
+    error.setMessage("Access Denied");
+    when(amazonS3Mock.deleteObjects(any()))
+        .thenAnswer(
+            invocation -> {
+              final DeleteObjectsRequest request = invocation.getArgument(0);
+              if (request.getKeys().size() == 500) {
+                throw new MultiObjectDeleteException(List.of(error), List.of());
+              }
+              return new DeleteObjectsResult(List.of());
+            });
+    // when
+    final DeleteResult result = fileStorage.deleteMany(fileNames);
+    // then
+    verify(amazonS3Mock, times(2)).deleteObjects(any());
+    assertThat(result.getDeleted().size(), is(1499));
+    assertThat(result.getFailed(), is(Map.of("thumbnail/1200.jpg", "Access Denied")));
+  }
+}
@@ -0,0 +1,53 @@
+package com.edorogush.debijenkorftask.service;
+
+import com.edorogush.debijenkorftask.exception.ServiceUnavailableException;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/** Tests for {@link ConcurrencyLimiter}. */
+class ConcurrencyLimiterTest {
+  private final ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1);
+
+  @Test
+  void acquire_whenNoPermits_thenGrantedOnRelease() {
+    // given
+    limiter.acquire();
+    // when
+    final CompletableFuture<Void> waiting = limiter.acquire();
+    // then
+    assertThat(waiting.isDone(), is(false));
+    limiter.release();
+    assertThat(waiting.isDone(), is(true));
+  }
+
+  @Test
+  void acquire_whenTooManyWaiting_thenRefused() {
+    // given
+    limiter.acquire();
+    limiter.acquire();
+    // when
+    final CompletableFuture<Void> refused = limiter.acquire();
+    // then
+    final ExecutionException e = assertThrows(ExecutionException.class, refused::get);
+    assertThat(e.getCause(), instanceOf(ServiceUnavailableException.class));
+  }
+
+  @Test
+  void release_whenWaitingAbandoned_thenPermitReturned() {
+    // given
+    limiter.acquire();
+    limiter.acquire().cancel(false);
+    // when
+    limiter.release();
+    // then
+    assertThat(limiter.acquire().isDone(), is(true));
+    assertThat(limiter.waiting(), is(0));
+  }
+}
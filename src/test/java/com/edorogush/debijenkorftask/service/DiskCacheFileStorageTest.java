@@ -0,0 +1,271 @@
+package com.edorogush.debijenkorftask.service;
+
+import com.edorogush.debijenkorftask.model.FileMetadata;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/** Tests for {@link DiskCacheFileStorage}. */
+class DiskCacheFileStorageTest {
+  private static final String FILE_NAME_1 = "thumbnail/abcd/efgh/abcdefghi.jpg";
+  private static final String FILE_NAME_2 = "thumbnail/bcde/bcde.jpg";
+  private static final String FILE_NAME_3 = "thumbnail/c.jpg";
+  private static final byte[] DATA = {1, 2, 3, 4};
+
+  @Mock private FileStorage fileStorageMock;
+
+  @TempDir Path rootDir;
+
+  @BeforeEach
+  void setUp() {
+    MockitoAnnotations.initMocks(this);
+    when(fileStorageMock.get(FILE_NAME_1)).thenReturn(new ByteArrayResource(DATA));
+    when(fileStorageMock.get(FILE_NAME_2)).thenReturn(new ByteArrayResource(DATA));
+    when(fileStorageMock.get(FILE_NAME_3)).thenReturn(new ByteArrayResource(DATA));
+  }
+
+  @Test
+  void get_whenRequestedTwice_thenSecondServedFromDisk() throws Exception {
+    // given
+    final DiskCacheFileStorage cache = new DiskCacheFileStorage(fileStorageMock, rootDir, 100);
+    // when
+    cache.get(FILE_NAME_1);
+    final Resource imageActual = cache.get(FILE_NAME_1);
+    // then
+    verify(fileStorageMock, times(1)).get(FILE_NAME_1);
+    assertThat(imageActual.contentLength(), is((long) DATA.length));
+    assertThat(readAllBytes(imageActual), is(DATA));
+  }
+
+  @Test
+  void get_whenRequestedTwice_thenFileWithMetadataReturned() throws Exception {
+    // given
+    final DiskCacheFileStorage cache = new DiskCacheFileStorage(fileStorageMock, rootDir, 100);
+    final FileMetadata metadataExpected = new FileMetadata("abc", 1, DATA.length);
+    when(fileStorageMock.get(FILE_NAME_1))
+        .thenReturn(new StoredByteArrayResource(DATA, metadataExpected));
+    cache.get(FILE_NAME_1);
+    // when
+    final Resource imageActual = cache.get(FILE_NAME_1);
+    // then
+    assertThat(imageActual.isFile(), is(true));
+    assertThat(Files.readAllBytes(imageActual.getFile().toPath()), is(DATA));
+    assertThat(StoredResource.metadataOf(imageActual).orElseThrow(), is(metadataExpected));
+  }
+
+  @Test
+  void get_whenImageReplacedAfterHit_thenPreviousContentStillRead() throws Exception {
+    // given
+    final DiskCacheFileStorage cache = new DiskCacheFileStorage(fileStorageMock, rootDir, 100);
+    cache.get(FILE_NAME_1);
+    final Resource imageActual = cache.get(FILE_NAME_1);
+    // when
+    cache.put(new ByteArrayResource(new byte[] {5, 6}), FILE_NAME_1);
+    // then
+    assertThat(readAllBytes(imageActual), is(DATA));
+    assertThat(readAllBytes(cache.get(FILE_NAME_1)), is(new byte[] {5, 6}));
+    assertThat(cache.sizeBytes(), is(2L));
+  }
+
+  @Test
+  void get_whenImageDeletedAfterHit_thenContentStillRead() throws Exception {
+    // given
+    final DiskCacheFileStorage cache = new DiskCacheFileStorage(fileStorageMock, rootDir, 100);
+    cache.get(FILE_NAME_1);
+    final Resource imageActual = cache.get(FILE_NAME_1);
+    // when
+    cache.deleteOne(FILE_NAME_1);
+    // then
+    assertThat(isOnDisk(FILE_NAME_1), is(false));
+    assertThat(readAllBytes(imageActual), is(DATA));
+  }
+
+  @Test
+  void get_whenImageBiggerThanCapacity_thenNotCached() throws Exception {
+    // given
+    final DiskCacheFileStorage cache = new DiskCacheFileStorage(fileStorageMock, rootDir, 8);
+    cache.get(FILE_NAME_2);
+    when(fileStorageMock.get(FILE_NAME_1)).thenReturn(new ByteArrayResource(new byte[10]));
+    // when
+    final Resource imageActual = cache.get(FILE_NAME_1);
+    // then
+    assertThat(readAllBytes(imageActual).length, is(10));
+    assertThat(isOnDisk(FILE_NAME_1), is(false));
+    assertThat(cache.evictions(), is(0L));
+    assertThat(cache.sizeBytes(), is(4L));
+  }
+
+  @Test
+  void get_whenCapacityExceeded_thenLeastRecentlyUsedEvicted() {
+    // given
+    final DiskCacheFileStorage cache = new DiskCacheFileStorage(fileStorageMock, rootDir, 8);
+    // when
+    cache.get(FILE_NAME_1);
+    cache.get(FILE_NAME_2);
+    cache.get(FILE_NAME_1);
+    cache.get(FILE_NAME_3);
+    // then
+    assertThat(cache.evictions(), is(1L));
+    assertThat(cache.sizeBytes(), is(8L));
+    assertThat(isOnDisk(FILE_NAME_1), is(true));
+    assertThat(isOnDisk(FILE_NAME_2), is(false));
+    assertThat(isOnDisk(FILE_NAME_3), is(true));
+  }
+
+  @Test
+  void create_whenDirectoryContainsImages_thenIndexRebuilt() {
+    // given
+    new DiskCacheFileStorage(fileStorageMock, rootDir, 100).get(FILE_NAME_1);
+    // when
+    final DiskCacheFileStorage cache = new DiskCacheFileStorage(fileStorageMock, rootDir, 100);
+    cache.get(FILE_NAME_1);
+    // then
+    verify(fileStorageMock, times(1)).get(FILE_NAME_1);
+    assertThat(cache.sizeBytes(), is(4L));
+    assertThat(cache.hits(), is(1L));
+  }
+
+  @Test
+  void create_whenDirectoryContainsPreviousGenerations_thenOnlyLatestRestored() throws Exception {
+    // given
+    final DiskCacheFileStorage previous = new DiskCacheFileStorage(fileStorageMock, rootDir, 100);
+    previous.get(FILE_NAME_1);
+    final Path file = rootDir.resolve(FILE_NAME_1);
+    Files.write(file.resolveSibling(file.getFileName() + ".0"), new byte[] {5, 6});
+    Files.createDirectories(rootDir.resolve(FILE_NAME_2).getParent());
+    Files.write(rootDir.resolve(FILE_NAME_2), DATA);
+    // when
+    final DiskCacheFileStorage cache = new DiskCacheFileStorage(fileStorageMock, rootDir, 100);
+    // then
+    assertThat(readAllBytes(cache.get(FILE_NAME_1)), is(DATA));
+    assertThat(cache.sizeBytes(), is(4L));
+    assertThat(Files.exists(file.resolveSibling(file.getFileName() + ".0")), is(false));
+    assertThat(Files.exists(rootDir.resolve(FILE_NAME_2)), is(false));
+  }
+
+  @Test
+  void deleteMany_whenImagesCached_thenFilesDeleted() {
+    // given
+    final DiskCacheFileStorage cache = new DiskCacheFileStorage(fileStorageMock, rootDir, 100);
+    cache.get(FILE_NAME_1);
+    cache.get(FILE_NAME_2);
+    // when
+    cache.deleteMany(List.of(FILE_NAME_1, FILE_NAME_2));
+    // then
+    verify(fileStorageMock, times(1)).deleteMany(List.of(FILE_NAME_1, FILE_NAME_2));
+    assertThat(isOnDisk(FILE_NAME_1), is(false));
+    assertThat(isOnDisk(FILE_NAME_2), is(false));
+    assertThat(cache.sizeBytes(), is(0L));
+  }
+
+  @Test
+  void put_whenImagePut_thenServedFromDisk() {
+    // given
+    final DiskCacheFileStorage cache = new DiskCacheFileStorage(fileStorageMock, rootDir, 100);
+    final Resource image = new ByteArrayResource(DATA);
+    // when
+    cache.put(image, FILE_NAME_1);
+    cache.get(FILE_NAME_1);
+    // then
+    verify(fileStorageMock, times(1)).put(image, FILE_NAME_1);
+    verify(fileStorageMock, times(0)).get(FILE_NAME_1);
+  }
+
+  @Test
+  void getRange_whenImageCached_thenRangeReadFromDisk() throws Exception {
+    // given
+    final DiskCacheFileStorage cache = new DiskCacheFileStorage(fileStorageMock, rootDir, 100);
+    final FileMetadata metadata = new FileMetadata("abc", 1, DATA.length);
+    when(fileStorageMock.get(FILE_NAME_1)).thenReturn(new StoredByteArrayResource(DATA, metadata));
+    cache.get(FILE_NAME_1);
+    // when
+    final Resource range = cache.getRange(FILE_NAME_1, metadata, 1, 2);
+    // then
+    assertThat(readAllBytes(range), is(new byte[] {2, 3}));
+    verify(fileStorageMock, times(0)).getRange(FILE_NAME_1, metadata, 1, 2);
+  }
+
+  @Test
+  void getRange_whenCachedImageNotMatchesMetadata_thenRangeReadFromUnderlyingStorage() {
+    // given
+    final DiskCacheFileStorage cache = new DiskCacheFileStorage(fileStorageMock, rootDir, 100);
+    when(fileStorageMock.get(FILE_NAME_1))
+        .thenReturn(new StoredByteArrayResource(DATA, new FileMetadata("abc", 1, DATA.length)));
+    cache.get(FILE_NAME_1);
+    final FileMetadata metadata = new FileMetadata("def", 2, DATA.length);
+    // when
+    cache.getRange(FILE_NAME_1, metadata, 1, 2);
+    // then
+    verify(fileStorageMock, times(1)).getRange(FILE_NAME_1, metadata, 1, 2);
+  }
+
+  @Test
+  void head_whenImageCachedWithMetadata_thenMetadataOfUnderlyingStorageFromMemory() {
+    // given
+    final DiskCacheFileStorage cache = new DiskCacheFileStorage(fileStorageMock, rootDir, 100);
+    final FileMetadata metadataExpected = new FileMetadata("abc", 1, DATA.length);
+    when(fileStorageMock.get(FILE_NAME_1))
+        .thenReturn(new StoredByteArrayResource(DATA, metadataExpected));
+    // when
+    final Resource imageActual = cache.get(FILE_NAME_1);
+    final FileMetadata metadataActual = cache.head(FILE_NAME_1);
+    // then
+    assertThat(metadataActual, is(metadataExpected));
+    assertThat(StoredResource.metadataOf(imageActual).orElseThrow(), is(metadataExpected));
+    verify(fileStorageMock, times(0)).head(FILE_NAME_1);
+  }
+
+  @Test
+  void head_whenImageCachedWithoutMetadata_thenMetadataRequestedOnce() {
+    // given
+    final DiskCacheFileStorage cache = new DiskCacheFileStorage(fileStorageMock, rootDir, 100);
+    final FileMetadata metadataExpected = new FileMetadata("abc", 1, DATA.length);
+    when(fileStorageMock.head(FILE_NAME_1)).thenReturn(metadataExpected);
+    cache.get(FILE_NAME_1);
+    // when
+    cache.head(FILE_NAME_1);
+    final FileMetadata metadataActual = cache.head(FILE_NAME_1);
+    // then
+    assertThat(metadataActual, is(metadataExpected));
+    verify(fileStorageMock, times(1)).head(FILE_NAME_1);
+  }
+
+  /** @return {@code true} if any generation of the item is kept on disk. */
+  private boolean isOnDisk(String fileName) {
+    final Path path = rootDir.resolve(fileName);
+    if (!Files.isDirectory(path.getParent())) {
+      return false;
+    }
+    final String generations = Pattern.quote(path.getFileName().toString()) + "\\.[0-9]+";
+    try (Stream<Path> files = Files.list(path.getParent())) {
+      return files.anyMatch(file -> file.getFileName().toString().matches(generations));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static byte[] readAllBytes(Resource resource) throws Exception {
+    try (InputStream inputStream = resource.getInputStream()) {
+      return inputStream.readAllBytes();
+    }
+  }
+}
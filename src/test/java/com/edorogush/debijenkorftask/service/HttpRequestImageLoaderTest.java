@@ -0,0 +1,117 @@
+package com.edorogush.debijenkorftask.service;
+
+import com.edorogush.debijenkorftask.WireMockExtension;
+import com.edorogush.debijenkorftask.exception.ImageLoaderRequestException;
+import com.edorogush.debijenkorftask.exception.NotFoundInSourceException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.core.io.Resource;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/** Tests for {@link HttpRequestImageLoader}. */
+class HttpRequestImageLoaderTest {
+  @RegisterExtension static WireMockExtension wireMock = new WireMockExtension();
+  private MeterRegistry meterRegistry;
+  private HttpRequestImageLoader imageLoader;
+
+  @BeforeEach
+  void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+    imageLoader =
+        new HttpRequestImageLoader(
+            "http://localhost:" + wireMock.getPort(), 1, 1000, 300, 1, 1, meterRegistry);
+  }
+
+  @AfterEach
+  void tearDown() {
+    imageLoader.shutdown();
+  }
+
+  @Test
+  void getImageFromSource_whenFound_thenReturnImage() throws Exception {
+    // given
+    stubFor(get(urlEqualTo("/abc.jpg")).willReturn(aResponse().withBody(new byte[] {1, 2})));
+    // when
+    final Resource image = imageLoader.getImageFromSource("abc.jpg");
+    // then
+    assertThat(image.getInputStream().readAllBytes(), is(new byte[] {1, 2}));
+    assertThat(requests("success"), is(1L));
+  }
+
+  @Test
+  void getImageFromSource_whenNotFound_thenThrowNotFoundInSourceException() {
+    // given
+    stubFor(get(urlEqualTo("/abc.jpg")).willReturn(aResponse().withStatus(404)));
+    // when
+    assertThrows(
+        NotFoundInSourceException.class, () -> imageLoader.getImageFromSource("abc.jpg"));
+    // then
+    assertThat(requests("not_found"), is(1L));
+  }
+
+  @Test
+  void getImageFromSource_whenSourceTooSlow_thenThrowAfterTimeout() {
+    // given
+    stubFor(
+        get(urlEqualTo("/abc.jpg"))
+            .willReturn(aResponse().withBody(new byte[] {1}).withFixedDelay(2000)));
+    // when
+    assertThrows(
+        ImageLoaderRequestException.class, () -> imageLoader.getImageFromSource("abc.jpg"));
+    // then
+    assertThat(requests("timeout"), is(1L));
+  }
+
+  @Test
+  void getImageFromSourceAsync_whenCancelled_thenTurnGivenToNextRequest() throws Exception {
+    // given
+    stubFor(
+        get(urlEqualTo("/slow.jpg"))
+            .willReturn(aResponse().withBody(new byte[] {1}).withFixedDelay(2000)));
+    stubFor(get(urlEqualTo("/abc.jpg")).willReturn(aResponse().withBody(new byte[] {1, 2})));
+    final CompletableFuture<Resource> slow = imageLoader.getImageFromSourceAsync("slow.jpg");
+    final CompletableFuture<Resource> next = imageLoader.getImageFromSourceAsync("abc.jpg");
+    // when
+    slow.cancel(true);
+    // then
+    final Resource image = next.get(200, TimeUnit.MILLISECONDS);
+    assertThat(image.getInputStream().readAllBytes(), is(new byte[] {1, 2}));
+  }
+
+  @Test
+  void getImageFromSourceAsync_whenCancelledWhileBodyReceived_thenTurnGivenToNextRequest()
+      throws Exception {
+    // given
+    stubFor(
+        get(urlEqualTo("/slow.jpg"))
+            .willReturn(
+                aResponse().withBody(new byte[] {1, 2, 3, 4}).withChunkedDribbleDelay(4, 2000)));
+    stubFor(get(urlEqualTo("/abc.jpg")).willReturn(aResponse().withBody(new byte[] {1, 2})));
+    final CompletableFuture<Resource> slow = imageLoader.getImageFromSourceAsync("slow.jpg");
+    final CompletableFuture<Resource> next = imageLoader.getImageFromSourceAsync("abc.jpg");
+    // when
+    Thread.sleep(100);
+    slow.cancel(true);
+    // then
+    final Resource image = next.get(200, TimeUnit.MILLISECONDS);
+    assertThat(image.getInputStream().readAllBytes(), is(new byte[] {1, 2}));
+  }
+
+  private long requests(String outcome) {
+    return meterRegistry.get("image.loader.requests").tag("outcome", outcome).timer().count();
+  }
+}
@@ -0,0 +1,101 @@
+package com.edorogush.debijenkorftask.service;
+
+import com.edorogush.debijenkorftask.exception.NotFoundInSourceException;
+import com.edorogush.debijenkorftask.exception.ServiceUnavailableException;
+import com.edorogush.debijenkorftask.model.BatchItem;
+import com.edorogush.debijenkorftask.model.BatchItemResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.core.io.ByteArrayResource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Mockito.when;
+
+/** Tests for {@link ImageBatchService}. */
+class ImageBatchServiceTest {
+  private static final String IMAGE_TYPE = "thumbnail";
+  private ImageBatchService imageBatchService;
+
+  @Mock private ImageService imageServiceMock;
+
+  @Mock private RequestValidator requestValidatorMock;
+
+  @BeforeEach
+  void setUp() {
+    MockitoAnnotations.initMocks(this);
+    imageBatchService =
+        new ImageBatchService(
+            imageServiceMock, requestValidatorMock, 2, 1, new SimpleMeterRegistry());
+  }
+
+  @AfterEach
+  void tearDown() {
+    imageBatchService.shutdown();
+  }
+
+  @Test
+  void findAll_whenOneImageMissing_thenOtherImagesFound() {
+    // given
+    final BatchItem found = new BatchItem(IMAGE_TYPE, "found.jpg");
+    final BatchItem missing = new BatchItem(IMAGE_TYPE, "missing.jpg");
+    when(imageServiceMock.findByName("found.jpg", IMAGE_TYPE))
+        .thenReturn(new ByteArrayResource(new byte[] {1, 2}));
+    when(imageServiceMock.findByName("missing.jpg", IMAGE_TYPE))
+        .thenThrow(new NotFoundInSourceException("missing"));
+    final List<BatchItemResult> results = new ArrayList<>();
+    // when
+    imageBatchService.findAll(List.of(found, missing), results::add);
+    // then
+    final Map<BatchItem, BatchItemResult> resultsByItem =
+        results.stream().collect(Collectors.toMap(BatchItemResult::getItem, Function.identity()));
+    assertThat(results.size(), is(2));
+    assertThat(resultsByItem.get(found).getImage(), is(new byte[] {1, 2}));
+    assertThat(resultsByItem.get(found).getError(), is(nullValue()));
+    assertThat(
+        resultsByItem.get(missing).getError(), instanceOf(NotFoundInSourceException.class));
+  }
+
+  @Test
+  void findAll_whenQueueFull_thenRejectedImagesFailedWithServiceUnavailable() throws Exception {
+    // given
+    final CountDownLatch released = new CountDownLatch(1);
+    when(imageServiceMock.findByName("slow.jpg", IMAGE_TYPE))
+        .thenAnswer(
+            invocation -> {
+              released.await(5, TimeUnit.SECONDS);
+              return new ByteArrayResource(new byte[] {1});
+            });
+    final List<BatchItem> items = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      items.add(new BatchItem(IMAGE_TYPE, "slow.jpg"));
+    }
+    final List<BatchItemResult> results = new ArrayList<>();
+    // when
+    imageBatchService.findAll(
+        items,
+        result -> {
+          results.add(result);
+          released.countDown();
+        });
+    // then
+    assertThat(results.size(), is(4));
+    assertThat(results.get(0).getError(), instanceOf(ServiceUnavailableException.class));
+    assertThat(
+        results.stream().filter(result -> result.getError() == null).count(), is(3L));
+  }
+}
@@ -0,0 +1,65 @@
+package com.edorogush.debijenkorftask.service;
+
+import com.edorogush.debijenkorftask.model.ImageType.ScalingQuality;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/** Tests for {@link ImageScaler}. */
+class ImageScalerTest {
+
+  @Test
+  void scale_whenDownscaled_thenNewSizeForEachQuality() {
+    // given
+    final BufferedImage image = new BufferedImage(3000, 1000, BufferedImage.TYPE_3BYTE_BGR);
+    for (ScalingQuality quality : ScalingQuality.values()) {
+      // when
+      final BufferedImage scaled = ImageScaler.scale(image, 200, 300, quality);
+      // then
+      assertThat(scaled.getWidth(), is(200));
+      assertThat(scaled.getHeight(), is(300));
+      assertThat(scaled.getType(), is(BufferedImage.TYPE_INT_RGB));
+    }
+  }
+
+  @Test
+  void scale_whenUpscaled_thenNewSize() {
+    // given
+    final BufferedImage image = new BufferedImage(120, 90, BufferedImage.TYPE_INT_RGB);
+    // when
+    final BufferedImage scaled = ImageScaler.scale(image, 200, 200, ScalingQuality.HIGH);
+    // then
+    assertThat(scaled.getWidth(), is(200));
+    assertThat(scaled.getHeight(), is(200));
+  }
+
+  @Test
+  void scale_whenProgressive_thenColorsAveraged() {
+    // given
+    final BufferedImage image = new BufferedImage(1600, 1600, BufferedImage.TYPE_INT_RGB);
+    for (int y = 0; y < image.getHeight(); y++) {
+      for (int x = 0; x < image.getWidth(); x++) {
+        image.setRGB(x, y, (x + y) % 2 == 0 ? 0xffffff : 0x000000);
+      }
+    }
+    // when
+    final BufferedImage scaled = ImageScaler.scale(image, 100, 100, ScalingQuality.BALANCED);
+    // then
+    final int blue = scaled.getRGB(50, 50) & 0xff;
+    assertThat(Math.abs(blue - 0x80) < 8, is(true));
+  }
+
+  @Test
+  void scale_whenTransparent_thenTransparencyKept() {
+    // given
+    final BufferedImage image = new BufferedImage(400, 400, BufferedImage.TYPE_INT_ARGB);
+    // when
+    final BufferedImage scaled = ImageScaler.scale(image, 200, 200, ScalingQuality.BALANCED);
+    // then
+    assertThat(scaled.getType(), is(BufferedImage.TYPE_INT_ARGB));
+    assertThat(scaled.getRGB(100, 100) >>> 24, is(0));
+  }
+}
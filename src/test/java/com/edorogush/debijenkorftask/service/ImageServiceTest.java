@@ -1,7 +1,12 @@
 package com.edorogush.debijenkorftask.service;
 
 import com.edorogush.debijenkorftask.exception.NotFoundException;
+import com.edorogush.debijenkorftask.exception.NotFoundInSourceException;
+import com.edorogush.debijenkorftask.exception.ServiceUnavailableException;
+import com.edorogush.debijenkorftask.model.DeleteResult;
+import com.edorogush.debijenkorftask.model.FileMetadata;
 import com.edorogush.debijenkorftask.model.ImageType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
@@ -11,17 +16,29 @@ import org.springframework.core.io.Resource;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /** Tests for {@link ImageService}. */
 class ImageServiceTest {
+  private static final String THUMBNAIL_DIRECTORY = ImageType.THUMBNAIL.getStorageDirectory();
+  private static final String[] LEGACY_TYPE_DIRECTORIES = {THUMBNAIL_DIRECTORY};
   private ImageService imageService;
 
   @Mock private FileStorage fileStorageMock;
@@ -30,10 +47,27 @@ class ImageServiceTest {
 
   @Mock ImageLoader imageLoaderMock;
 
+  private final WriteBehindUploader variantUploader =
+      new WriteBehindUploader(1, 10, 5, 1, new SimpleMeterRegistry());
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final MissingImageCache missingImageCache =
+      new MissingImageCache(300, 10, new SimpleMeterRegistry());
+
   @BeforeEach
   void setUp() {
     MockitoAnnotations.initMocks(this);
-    imageService = new ImageService(fileStorageMock, imageProcessorMock, imageLoaderMock);
+    imageService =
+        new ImageService(
+            fileStorageMock,
+            imageProcessorMock,
+            imageLoaderMock,
+            new ResizeExecutor(1, 1, 1, 1, new SimpleMeterRegistry()),
+            missingImageCache,
+            meterRegistry,
+            1000,
+            false,
+            LEGACY_TYPE_DIRECTORIES);
   }
 
   @Test
@@ -42,7 +76,7 @@ class ImageServiceTest {
     final String fileName = "abcdefghi.jpg";
     final String optimizerStyle = ImageType.THUMBNAIL.getName();
 
-    final String imageOptimizedPathExpected = optimizerStyle + "/abcd/efgh/" + fileName;
+    final String imageOptimizedPathExpected = THUMBNAIL_DIRECTORY + "/abcd/efgh/" + fileName;
     final Resource imageExpected = new ByteArrayResource(new byte[] {});
     // when
     when(fileStorageMock.get(imageOptimizedPathExpected)).thenReturn(imageExpected);
@@ -53,6 +87,56 @@ class ImageServiceTest {
     verify(fileStorageMock, times(1)).get(any());
     verify(fileStorageMock, times(0)).put(any(), any());
     verify(imageLoaderMock, times(0)).getImageFromSource(any());
+    assertThat(meterRegistry.counter("image.lookups", "found", "processed").count(), is(1.0));
+  }
+
+  @Test
+  void findById_whenDefinitionChangedSinceTypesVersioned_thenLegacyImageIgnored() {
+    // given
+    imageService =
+        new ImageService(
+            fileStorageMock,
+            imageProcessorMock,
+            imageLoaderMock,
+            new ResizeExecutor(1, 1, 1, 1, new SimpleMeterRegistry()),
+            missingImageCache,
+            meterRegistry,
+            1000,
+            false,
+            new String[] {"thumbnail/v00000000"});
+    final String fileName = "abc.jpg";
+    final Resource imageOriginal = new ByteArrayResource(new byte[] {1});
+    final Resource imageProcessed = new ByteArrayResource(new byte[] {2});
+    when(fileStorageMock.get(THUMBNAIL_DIRECTORY + "/" + fileName))
+        .thenThrow(NotFoundException.class);
+    when(fileStorageMock.get("original/" + fileName)).thenReturn(imageOriginal);
+    when(imageProcessorMock.processImage(imageOriginal, ImageType.THUMBNAIL.getName()))
+        .thenReturn(imageProcessed);
+    // when
+    final Resource imageActual = imageService.findByName(fileName, ImageType.THUMBNAIL.getName());
+    // then
+    assertThat(imageActual, is(imageProcessed));
+    verify(fileStorageMock, times(0)).get("thumbnail/" + fileName);
+    verify(fileStorageMock).put(imageProcessed, THUMBNAIL_DIRECTORY + "/" + fileName);
+  }
+
+  @Test
+  void findById_whenStoredBeforeTypesVersioned_thenLegacyImageCopiedAndReturned()
+      throws Exception {
+    // given
+    final String fileName = "abc.jpg";
+    final String imageLegacyPath = "thumbnail/" + fileName;
+    when(fileStorageMock.get(THUMBNAIL_DIRECTORY + "/" + fileName))
+        .thenThrow(NotFoundException.class);
+    when(fileStorageMock.get(imageLegacyPath))
+        .thenReturn(new ByteArrayResource(new byte[] {1, 2, 3}));
+    // when
+    final Resource imageActual = imageService.findByName(fileName, ImageType.THUMBNAIL.getName());
+    // then
+    assertThat(imageActual.getInputStream().readAllBytes(), is(new byte[] {1, 2, 3}));
+    verify(fileStorageMock).putInBackground(any(), eq(THUMBNAIL_DIRECTORY + "/" + fileName));
+    verify(fileStorageMock, times(0)).get("original/" + fileName);
+    assertThat(meterRegistry.counter("image.lookups", "found", "legacy").count(), is(1.0));
   }
 
   @Test
@@ -63,17 +147,18 @@ class ImageServiceTest {
 
     final String imageOriginalPathExpected = "original/" + fileName;
     final Resource imageOriginalExpected = new ByteArrayResource(new byte[] {});
-    final String imageOptimizedPathExpected = optimizerStyle + "/" + fileName;
+    final String imageOptimizedPathExpected = THUMBNAIL_DIRECTORY + "/" + fileName;
     final Resource imageOptimizedExpected = new ByteArrayResource(new byte[] {1, 2, 3});
     // when
     when(fileStorageMock.get(imageOptimizedPathExpected)).thenThrow(NotFoundException.class);
+    when(fileStorageMock.get("thumbnail/" + fileName)).thenThrow(NotFoundException.class);
     when(fileStorageMock.get(imageOriginalPathExpected)).thenReturn(imageOriginalExpected);
     when(imageProcessorMock.processImage(imageOriginalExpected, optimizerStyle))
         .thenReturn(imageOptimizedExpected);
     Resource imageActual = imageService.findByName(fileName, optimizerStyle);
     // then
     assertThat(imageActual, is(imageOptimizedExpected));
-    verify(fileStorageMock, times(2)).get(any());
+    verify(fileStorageMock, times(3)).get(any());
     verify(fileStorageMock, times(1)).put(imageOptimizedExpected, imageOptimizedPathExpected);
     verify(imageLoaderMock, times(0)).getImageFromSource(any());
   }
@@ -86,10 +171,11 @@ class ImageServiceTest {
 
     final String imageOriginalPathExpected = "original/" + fileName;
     final Resource imageOriginalExpected = new ByteArrayResource(new byte[] {});
-    final String imageOptimizedPathExpected = optimizerStyle + "/" + fileName;
+    final String imageOptimizedPathExpected = THUMBNAIL_DIRECTORY + "/" + fileName;
     final Resource imageOptimizedExpected = new ByteArrayResource(new byte[] {1, 2, 3});
     // when
     when(fileStorageMock.get(imageOptimizedPathExpected)).thenThrow(NotFoundException.class);
+    when(fileStorageMock.get("thumbnail/" + fileName)).thenThrow(NotFoundException.class);
     when(fileStorageMock.get(imageOriginalPathExpected)).thenThrow(NotFoundException.class);
     when(imageLoaderMock.getImageFromSource(fileName)).thenReturn(imageOriginalExpected);
     when(imageProcessorMock.processImage(imageOriginalExpected, optimizerStyle))
@@ -97,41 +183,236 @@ class ImageServiceTest {
     Resource imageActual = imageService.findByName(fileName, optimizerStyle);
     // then
     assertThat(imageActual, is(imageOptimizedExpected));
-    verify(fileStorageMock, times(2)).get(any());
+    verify(fileStorageMock, times(3)).get(any());
     verify(fileStorageMock, times(1)).put(imageOptimizedExpected, imageOptimizedPathExpected);
     verify(fileStorageMock, times(1)).put(imageOriginalExpected, imageOriginalPathExpected);
     verify(imageLoaderMock, times(1)).getImageFromSource(any());
   }
 
+  @Test
+  void findById_whenEagerVariantsAndLoadedFromSource_thenAllVariantsStored() throws Exception {
+    // given
+    imageService =
+        new ImageService(
+            fileStorageMock,
+            imageProcessorMock,
+            imageLoaderMock,
+            new ResizeExecutor(1, 1, 1, 1, new SimpleMeterRegistry()),
+            missingImageCache,
+            meterRegistry,
+            1000,
+            true,
+            LEGACY_TYPE_DIRECTORIES);
+    final String fileName = "abc.jpg";
+    final String optimizerStyle = "pre-def-style1";
+    final Resource imageOriginalExpected = new ByteArrayResource(new byte[] {});
+    final Resource imageOptimizedExpected = new ByteArrayResource(new byte[] {1, 2, 3});
+    final Resource imageVariantExpected = new ByteArrayResource(new byte[] {4, 5, 6});
+    final List<String> imageTypes = List.of("pre-def-style1", "pre-def-style2");
+    // when
+    when(fileStorageMock.get(any())).thenThrow(NotFoundException.class);
+    when(imageLoaderMock.getImageFromSource(fileName)).thenReturn(imageOriginalExpected);
+    when(imageProcessorMock.imageTypes()).thenReturn(imageTypes);
+    when(imageProcessorMock.processImages(imageOriginalExpected, imageTypes))
+        .thenReturn(
+            Map.of(
+                "pre-def-style1", imageOptimizedExpected, "pre-def-style2", imageVariantExpected));
+    Resource imageActual = imageService.findByName(fileName, optimizerStyle);
+    // then
+    assertThat(imageActual, is(imageOptimizedExpected));
+    verify(imageProcessorMock, times(1)).processImages(any(), any());
+    verify(imageProcessorMock, times(0)).processImage(any(), any());
+    verify(fileStorageMock, times(1)).put(imageOriginalExpected, "original/" + fileName);
+    verify(fileStorageMock, times(1)).put(imageOptimizedExpected, "pre-def-style1/" + fileName);
+    verify(fileStorageMock, times(1))
+        .putInBackground(imageVariantExpected, "pre-def-style2/" + fileName);
+  }
+
+  @Test
+  void findById_whenVariantWaitsForUpload_thenVariantReturnedWithoutProcessing() throws Exception {
+    // given
+    imageService =
+        new ImageService(
+            new WriteBehindFileStorage(fileStorageMock, variantUploader, false),
+            imageProcessorMock,
+            imageLoaderMock,
+            new ResizeExecutor(1, 1, 1, 1, new SimpleMeterRegistry()),
+            missingImageCache,
+            meterRegistry,
+            1000,
+            true,
+            LEGACY_TYPE_DIRECTORIES);
+    final String fileName = "abc.jpg";
+    final Resource imageOriginal = new ByteArrayResource(new byte[] {});
+    final Resource imageVariant = new ByteArrayResource(new byte[] {4, 5, 6});
+    final List<String> imageTypes = List.of("pre-def-style1", "pre-def-style2");
+    when(fileStorageMock.get(any())).thenThrow(NotFoundException.class);
+    when(imageLoaderMock.getImageFromSource(fileName)).thenReturn(imageOriginal);
+    when(imageProcessorMock.imageTypes()).thenReturn(imageTypes);
+    when(imageProcessorMock.processImages(imageOriginal, imageTypes))
+        .thenReturn(
+            Map.of(
+                "pre-def-style1",
+                new ByteArrayResource(new byte[] {1, 2, 3}),
+                "pre-def-style2",
+                imageVariant));
+    final CountDownLatch uploaderReleased = new CountDownLatch(1);
+    variantUploader.submit("blocker", 0, () -> awaitQuietly(uploaderReleased));
+    imageService.findByName(fileName, "pre-def-style1");
+    // when
+    final Resource imageActual = imageService.findByName(fileName, "pre-def-style2");
+    uploaderReleased.countDown();
+    variantUploader.drain();
+    // then
+    assertThat(imageActual, is(imageVariant));
+    verify(imageLoaderMock, times(1)).getImageFromSource(fileName);
+    verify(imageProcessorMock, times(1)).processImages(any(), any());
+  }
+
+  @Test
+  void deleteImage_whenVariantWaitsForUpload_thenUploadCancelled() throws Exception {
+    // given
+    imageService =
+        new ImageService(
+            new WriteBehindFileStorage(fileStorageMock, variantUploader, false),
+            imageProcessorMock,
+            imageLoaderMock,
+            new ResizeExecutor(1, 1, 1, 1, new SimpleMeterRegistry()),
+            missingImageCache,
+            meterRegistry,
+            1000,
+            true,
+            LEGACY_TYPE_DIRECTORIES);
+    final String fileName = "abc.jpg";
+    final Resource imageOriginal = new ByteArrayResource(new byte[] {});
+    final Resource imageOptimized = new ByteArrayResource(new byte[] {1, 2, 3});
+    final Resource imageVariant = new ByteArrayResource(new byte[] {4, 5, 6});
+    final List<String> imageTypes = List.of("pre-def-style1", "pre-def-style2");
+    when(fileStorageMock.get(any())).thenThrow(NotFoundException.class);
+    when(imageLoaderMock.getImageFromSource(fileName)).thenReturn(imageOriginal);
+    when(imageProcessorMock.imageTypes()).thenReturn(imageTypes);
+    when(imageProcessorMock.processImages(imageOriginal, imageTypes))
+        .thenReturn(Map.of("pre-def-style1", imageOptimized, "pre-def-style2", imageVariant));
+    when(fileStorageMock.deleteMany(any())).thenReturn(DeleteResult.deleted(List.of()));
+    final CountDownLatch uploaderReleased = new CountDownLatch(1);
+    variantUploader.submit("blocker", 0, () -> awaitQuietly(uploaderReleased));
+    imageService.findByName(fileName, "pre-def-style1");
+    // when
+    imageService.deleteImage(fileName, "original");
+    uploaderReleased.countDown();
+    variantUploader.drain();
+    // then
+    verify(fileStorageMock, times(0)).put(imageVariant, "pre-def-style2/" + fileName);
+    verify(fileStorageMock, times(1))
+        .deleteMany(
+            List.of(
+                "pre-def-style1/" + fileName,
+                "pre-def-style2/" + fileName,
+                "original/" + fileName));
+  }
+
+  @Test
+  void prewarm_whenSomeVariantsStored_thenOnlyMissingProcessed() {
+    // given
+    final String fileName = "abc.jpg";
+    final Resource imageOriginalExpected = new ByteArrayResource(new byte[] {});
+    final Resource imageVariantExpected = new ByteArrayResource(new byte[] {4, 5, 6});
+    when(imageProcessorMock.imageTypes()).thenReturn(List.of("pre-def-style1", "pre-def-style2"));
+    when(fileStorageMock.head("pre-def-style1/" + fileName))
+        .thenReturn(new FileMetadata("abc", 1, 1));
+    when(fileStorageMock.head("pre-def-style2/" + fileName)).thenThrow(NotFoundException.class);
+    when(fileStorageMock.get("original/" + fileName)).thenReturn(imageOriginalExpected);
+    when(imageProcessorMock.processImages(imageOriginalExpected, List.of("pre-def-style2")))
+        .thenReturn(Map.of("pre-def-style2", imageVariantExpected));
+    // when
+    final boolean processed = imageService.prewarm(fileName);
+    // then
+    assertThat(processed, is(true));
+    verify(imageLoaderMock, times(0)).getImageFromSource(any());
+    verify(fileStorageMock, times(1)).put(imageVariantExpected, "pre-def-style2/" + fileName);
+    verify(fileStorageMock, times(1)).put(any(), any());
+  }
+
+  @Test
+  void prewarm_whenAllVariantsStored_thenSkipped() {
+    // given
+    when(imageProcessorMock.imageTypes()).thenReturn(List.of("pre-def-style1"));
+    when(fileStorageMock.head("pre-def-style1/abc.jpg")).thenReturn(new FileMetadata("abc", 1, 1));
+    // when
+    final boolean processed = imageService.prewarm("abc.jpg");
+    // then
+    assertThat(processed, is(false));
+    verify(fileStorageMock, times(0)).get(any());
+  }
+
   @Test
   void findById_whenImageNotExist_thenThrowNotFoundException() {
     // given
     final String fileName = "abc.jpg";
     final String optimizerStyle = ImageType.THUMBNAIL.getName();
     final String imageOriginalPathExpected = "original/" + fileName;
-    final String imageOptimizedPathExpected = optimizerStyle + "/" + fileName;
+    final String imageOptimizedPathExpected = THUMBNAIL_DIRECTORY + "/" + fileName;
     // when
     when(fileStorageMock.get(imageOptimizedPathExpected)).thenThrow(NotFoundException.class);
+    when(fileStorageMock.get("thumbnail/" + fileName)).thenThrow(NotFoundException.class);
     when(fileStorageMock.get(imageOriginalPathExpected)).thenThrow(NotFoundException.class);
     when(imageLoaderMock.getImageFromSource(fileName)).thenThrow(NotFoundException.class);
     // then
     assertThrows(NotFoundException.class, () -> imageService.findByName(fileName, optimizerStyle));
-    verify(fileStorageMock, times(2)).get(any());
+    verify(fileStorageMock, times(3)).get(any());
     verify(fileStorageMock, times(0)).put(any(), any());
     verify(imageLoaderMock, times(1)).getImageFromSource(fileName);
   }
 
+  @Test
+  void findById_whenRecentlyNotFoundInSource_thenNotSearchedAgain() {
+    // given
+    final String fileName = "abc.jpg";
+    final String optimizerStyle = ImageType.THUMBNAIL.getName();
+    when(fileStorageMock.get(any())).thenThrow(NotFoundException.class);
+    when(imageLoaderMock.getImageFromSource(fileName))
+        .thenThrow(new NotFoundInSourceException("missing"));
+    assertThrows(
+        NotFoundInSourceException.class, () -> imageService.findByName(fileName, optimizerStyle));
+    // when
+    assertThrows(
+        NotFoundInSourceException.class, () -> imageService.findByName(fileName, optimizerStyle));
+    // then
+    verify(fileStorageMock, times(3)).get(any());
+    verify(imageLoaderMock, times(1)).getImageFromSource(fileName);
+  }
+
+  @Test
+  void findById_whenMissingImageDeleted_thenSearchedAgain() {
+    // given
+    final String fileName = "abc.jpg";
+    final String optimizerStyle = ImageType.THUMBNAIL.getName();
+    when(fileStorageMock.get(any())).thenThrow(NotFoundException.class);
+    when(imageLoaderMock.getImageFromSource(fileName))
+        .thenThrow(new NotFoundInSourceException("missing"));
+    assertThrows(
+        NotFoundInSourceException.class, () -> imageService.findByName(fileName, optimizerStyle));
+    // when
+    imageService.deleteImage(fileName, optimizerStyle);
+    assertThrows(
+        NotFoundInSourceException.class, () -> imageService.findByName(fileName, optimizerStyle));
+    // then
+    verify(imageLoaderMock, times(2)).getImageFromSource(fileName);
+  }
+
   @Test
   void findById_whenNameContainsSlash_thenSymbolReplaced() {
     // given
     final String fileName = "abc/defg/ijk.jpg";
     final String optimizerStyle = ImageType.THUMBNAIL.getName();
     final String imageOriginalPathExpected = "original/abc_/defg/abc_defg_ijk.jpg";
-    final String imageOptimizedPathExpected = optimizerStyle + "/abc_/defg/abc_defg_ijk.jpg";
+    final String imageOptimizedPathExpected = THUMBNAIL_DIRECTORY + "/abc_/defg/abc_defg_ijk.jpg";
     final Resource imageOriginalExpected = new ByteArrayResource(new byte[] {});
     final Resource imageOptimizedExpected = new ByteArrayResource(new byte[] {1, 2, 3});
     // when
     when(fileStorageMock.get(imageOptimizedPathExpected)).thenThrow(NotFoundException.class);
+    when(fileStorageMock.get("thumbnail/abc_/defg/abc_defg_ijk.jpg"))
+        .thenThrow(NotFoundException.class);
     when(fileStorageMock.get(imageOriginalPathExpected)).thenThrow(NotFoundException.class);
     when(imageLoaderMock.getImageFromSource(fileName)).thenReturn(imageOriginalExpected);
     when(imageProcessorMock.processImage(imageOriginalExpected, optimizerStyle))
@@ -139,12 +420,60 @@ class ImageServiceTest {
     Resource imageActual = imageService.findByName(fileName, optimizerStyle);
     // then
     assertThat(imageActual, is(imageOptimizedExpected));
-    verify(fileStorageMock, times(2)).get(any());
+    verify(fileStorageMock, times(3)).get(any());
     verify(fileStorageMock, times(1)).put(imageOptimizedExpected, imageOptimizedPathExpected);
     verify(fileStorageMock, times(1)).put(imageOriginalExpected, imageOriginalPathExpected);
     verify(imageLoaderMock, times(1)).getImageFromSource(fileName);
   }
 
+  @Test
+  void findById_whenConcurrentMisses_thenImageProcessedOnce() throws Exception {
+    // given
+    final String fileName = "abc.jpg";
+    final String optimizerStyle = ImageType.THUMBNAIL.getName();
+    final String imageOriginalPathExpected = "original/" + fileName;
+    final String imageOptimizedPathExpected = THUMBNAIL_DIRECTORY + "/" + fileName;
+    final Resource imageOriginalExpected = new ByteArrayResource(new byte[] {});
+    final Resource imageOptimizedExpected = new ByteArrayResource(new byte[] {1, 2, 3});
+    final CountDownLatch processingStarted = new CountDownLatch(1);
+    final CompletableFuture<Void> processingAllowed = new CompletableFuture<>();
+    // when
+    when(fileStorageMock.get(imageOptimizedPathExpected)).thenThrow(NotFoundException.class);
+    when(fileStorageMock.get("thumbnail/" + fileName)).thenThrow(NotFoundException.class);
+    when(fileStorageMock.get(imageOriginalPathExpected)).thenReturn(imageOriginalExpected);
+    when(imageProcessorMock.processImage(imageOriginalExpected, optimizerStyle))
+        .thenAnswer(
+            invocation -> {
+              processingStarted.countDown();
+              processingAllowed.get(1, TimeUnit.SECONDS);
+              return imageOptimizedExpected;
+            });
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    final CompletableFuture<Resource> followerResult = new CompletableFuture<>();
+    try {
+      final Future<Resource> leader =
+          executor.submit(() -> imageService.findByName(fileName, optimizerStyle));
+      processingStarted.await(1, TimeUnit.SECONDS);
+      final Thread follower =
+          new Thread(
+              () -> followerResult.complete(imageService.findByName(fileName, optimizerStyle)));
+      follower.start();
+      // wait until follower joins the leader's request
+      while (follower.getState() != Thread.State.TIMED_WAITING && follower.isAlive()) {
+        Thread.sleep(1);
+      }
+      processingAllowed.complete(null);
+      follower.join(1000);
+      // then
+      assertThat(leader.get(1, TimeUnit.SECONDS), is(imageOptimizedExpected));
+      assertThat(followerResult.get(1, TimeUnit.SECONDS), is(imageOptimizedExpected));
+    } finally {
+      executor.shutdownNow();
+    }
+    verify(imageProcessorMock, times(1)).processImage(any(), any());
+    verify(fileStorageMock, times(1)).put(imageOptimizedExpected, imageOptimizedPathExpected);
+  }
+
   @Test
   void deleteImage_WhenOriginal_ThenDeleteAllReplicas() {
     // given
@@ -156,11 +485,29 @@ class ImageServiceTest {
     filePathsToDeleteExpected.add("original/abc_/abc_d.jpg");
     // when
     when(imageProcessorMock.imageTypes()).thenReturn(List.of("pre-def-style1", "pre-def-style2"));
+    when(fileStorageMock.deleteMany(filePathsToDeleteExpected))
+        .thenReturn(DeleteResult.deleted(filePathsToDeleteExpected));
     imageService.deleteImage(fileName, optimizerStyle);
     // then
     verify(fileStorageMock, times(1)).deleteMany(filePathsToDeleteExpected);
   }
 
+  @Test
+  void deleteImage_WhenOriginalAndReplicaNotDeleted_ThenServiceUnavailable() {
+    // given
+    final List<String> filePathsToDelete = List.of("pre-def-style1/abc.jpg", "original/abc.jpg");
+    when(imageProcessorMock.imageTypes()).thenReturn(List.of("pre-def-style1"));
+    when(fileStorageMock.deleteMany(filePathsToDelete))
+        .thenReturn(
+            new DeleteResult(
+                List.of("original/abc.jpg"), Map.of("pre-def-style1/abc.jpg", "Internal error")));
+    // when
+    assertThrows(
+        ServiceUnavailableException.class, () -> imageService.deleteImage("abc.jpg", "original"));
+    // then
+    verify(fileStorageMock, times(1)).deleteMany(filePathsToDelete);
+  }
+
   @Test
   void deleteImage_WhenOptimizedImage_ThenDeleteOne() {
     // given
@@ -172,4 +519,94 @@ class ImageServiceTest {
     // then
     verify(fileStorageMock, times(1)).deleteOne(filePathsToDeleteExpected);
   }
+
+  @Test
+  void listStored_whenPrefixShort_thenTypeDirectoryFiltered() {
+    // given
+    stubList("thumbnail/", "thumbnail/ab.jpg", "thumbnail/abcd/abcde.jpg", "thumbnail/bc.jpg");
+    final List<String> fileNames = new ArrayList<>();
+    // when
+    imageService.listStored("thumbnail", "ab", fileNames::addAll);
+    // then
+    assertThat(fileNames, is(List.of("thumbnail/ab.jpg", "thumbnail/abcd/abcde.jpg")));
+  }
+
+  @Test
+  void listStored_whenPrefixResolved_thenOnlyItsLocationListed() {
+    // given
+    final String fileNameExpected = THUMBNAIL_DIRECTORY + "/abcd/efgh/abcdefghij.jpg";
+    stubList(THUMBNAIL_DIRECTORY + "/abcd/efgh/abcdefghij", fileNameExpected);
+    final List<String> fileNames = new ArrayList<>();
+    // when
+    imageService.listStored("thumbnail", "abcdefghij", fileNames::addAll);
+    // then
+    assertThat(fileNames, is(List.of(fileNameExpected)));
+  }
+
+  @Test
+  void listStored_whenOriginal_thenReplicasOfAllTypesListed() {
+    // given
+    when(imageProcessorMock.imageTypes()).thenReturn(List.of("thumbnail"));
+    final String replicaName = THUMBNAIL_DIRECTORY + "/abcd/efgh/abcdefghij.jpg";
+    stubList("original/abcd/efgh/abcdefghij", "original/abcd/efgh/abcdefghij.jpg");
+    stubList(THUMBNAIL_DIRECTORY + "/abcd/efgh/abcdefghij", replicaName);
+    final List<String> fileNames = new ArrayList<>();
+    // when
+    imageService.listStored("original", "abcdefghij", fileNames::addAll);
+    // then
+    assertThat(fileNames, is(List.of("original/abcd/efgh/abcdefghij.jpg", replicaName)));
+  }
+
+  @Test
+  void listStaleDirectories_whenPreviousVersionsStored_thenOnlyTheyListed() {
+    // given
+    when(fileStorageMock.listDirectories("thumbnail/"))
+        .thenReturn(List.of("thumbnail/abcd/", "thumbnail/v00000000/", THUMBNAIL_DIRECTORY + "/"));
+    // when
+    final List<String> directories = imageService.listStaleDirectories("thumbnail");
+    // then
+    assertThat(directories, is(List.of("thumbnail/abcd/", "thumbnail/v00000000/")));
+  }
+
+  @Test
+  void listStaleDirectories_whenTypeNotVersioned_thenNothingListed() {
+    // when
+    final List<String> directories = imageService.listStaleDirectories("original");
+    // then
+    assertThat(directories, is(List.of()));
+    verify(fileStorageMock, times(0)).listDirectories(any());
+  }
+
+  @Test
+  void listStale_whenDirectoriesGiven_thenImagesOfEveryOneListed() {
+    // given
+    stubList("thumbnail/abcd/", "thumbnail/abcd/efgh/abcdefghij.jpg");
+    stubList("thumbnail/v00000000/", "thumbnail/v00000000/ab.jpg");
+    final List<String> fileNames = new ArrayList<>();
+    // when
+    imageService.listStale(List.of("thumbnail/abcd/", "thumbnail/v00000000/"), fileNames::addAll);
+    // then
+    assertThat(
+        fileNames,
+        is(List.of("thumbnail/abcd/efgh/abcdefghij.jpg", "thumbnail/v00000000/ab.jpg")));
+  }
+
+  private void stubList(String prefix, String... fileNames) {
+    doAnswer(
+            invocation -> {
+              final Consumer<List<String>> pageConsumer = invocation.getArgument(1);
+              pageConsumer.accept(List.of(fileNames));
+              return null;
+            })
+        .when(fileStorageMock)
+        .list(eq(prefix), any());
+  }
+
+  private static void awaitQuietly(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
 }
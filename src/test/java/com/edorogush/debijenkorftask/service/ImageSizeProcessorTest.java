@@ -0,0 +1,126 @@
+package com.edorogush.debijenkorftask.service;
+
+import com.edorogush.debijenkorftask.model.ImageType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/** Tests for {@link ImageSizeProcessor}. */
+class ImageSizeProcessorTest {
+  private final ImageSizeProcessor imageProcessor =
+      new ImageSizeProcessor(new SimpleMeterRegistry());
+
+  @Test
+  void processImage_whenLargeImage_thenResizedToImageTypeSize() throws Exception {
+    // given
+    final Resource original = createImage(3000, 2000, "png");
+    for (ImageType imageType : ImageType.values()) {
+      // when
+      final BufferedImage processed =
+          read(imageProcessor.processImage(original, imageType.getName()));
+      // then
+      assertThat(processed.getWidth(), is(imageType.getWidthPx()));
+      assertThat(processed.getHeight(), is(imageType.getHeightPx()));
+    }
+  }
+
+  @Test
+  void processImage_whenSmallImage_thenResizedToImageTypeSize() throws Exception {
+    // given
+    final Resource original = createImage(120, 90, "jpg");
+    for (ImageType imageType : ImageType.values()) {
+      // when
+      final BufferedImage processed =
+          read(imageProcessor.processImage(original, imageType.getName()));
+      // then
+      assertThat(processed.getWidth(), is(imageType.getWidthPx()));
+      assertThat(processed.getHeight(), is(imageType.getHeightPx()));
+    }
+  }
+
+  @Test
+  void processImage_whenCrop_thenSameAsCropOfFullyDecodedImage() throws Exception {
+    // given
+    final ImageType imageType = ImageType.THUMBNAIL;
+    final Resource original = createImage(3000, 2000, "png");
+    final BufferedImage expected =
+        new BufferedImage(
+            imageType.getWidthPx(), imageType.getHeightPx(), BufferedImage.TYPE_INT_RGB);
+    final Graphics2D graphics = expected.createGraphics();
+    graphics.drawImage(read(original), 0, 0, Color.WHITE, null);
+    graphics.dispose();
+    // when
+    final Resource processed = imageProcessor.processImage(original, imageType.getName());
+    // then
+    assertThat(processed.getInputStream().readAllBytes(), is(encode(expected, "jpg")));
+  }
+
+  @Test
+  void processImages_whenAllImageTypes_thenEachResizedToImageTypeSize() throws Exception {
+    // given
+    final Resource original = createImage(3000, 2000, "jpg");
+    // when
+    final Map<String, Resource> processed =
+        imageProcessor.processImages(original, imageProcessor.imageTypes());
+    // then
+    assertThat(processed.keySet(), is(Set.copyOf(imageProcessor.imageTypes())));
+    for (ImageType imageType : ImageType.values()) {
+      final BufferedImage image = read(processed.get(imageType.getName()));
+      assertThat(image.getWidth(), is(imageType.getWidthPx()));
+      assertThat(image.getHeight(), is(imageType.getHeightPx()));
+    }
+  }
+
+  @Test
+  void processImages_whenCropAndFill_thenSameAsProcessedOneByOne() throws Exception {
+    // given
+    final Resource original = createImage(3000, 2000, "png");
+    final List<String> imageTypes =
+        List.of(ImageType.THUMBNAIL.getName(), ImageType.TECH_DRAWING.getName());
+    // when
+    final Map<String, Resource> processed = imageProcessor.processImages(original, imageTypes);
+    // then
+    for (String imageType : imageTypes) {
+      assertThat(
+          processed.get(imageType).getInputStream().readAllBytes(),
+          is(imageProcessor.processImage(original, imageType).getInputStream().readAllBytes()));
+    }
+  }
+
+  private static Resource createImage(int width, int height, String format) throws IOException {
+    final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        image.setRGB(x, y, (x * 255 / width) << 16 | (y * 255 / height) << 8 | (x ^ y) & 0xff);
+      }
+    }
+    return new ByteArrayResource(encode(image, format));
+  }
+
+  private static byte[] encode(BufferedImage image, String format) throws IOException {
+    try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
+      ImageIO.write(image, format, outputStream);
+      return outputStream.toByteArray();
+    }
+  }
+
+  private static BufferedImage read(Resource resource) throws IOException {
+    try (InputStream inputStream = resource.getInputStream()) {
+      return ImageIO.read(inputStream);
+    }
+  }
+}
@@ -0,0 +1,126 @@
+package com.edorogush.debijenkorftask.service;
+
+import com.edorogush.debijenkorftask.exception.NotFoundException;
+import com.edorogush.debijenkorftask.model.DeleteResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/** Tests for {@link IndexedFileStorage}. */
+class IndexedFileStorageTest {
+  private static final Resource DATA = new ByteArrayResource(new byte[] {1, 2, 3});
+
+  @Mock private FileStorage fileStorageMock;
+
+  private IndexedFileStorage indexedFileStorage;
+
+  @BeforeEach
+  void setUp() {
+    MockitoAnnotations.initMocks(this);
+    indexedFileStorage = new IndexedFileStorage(fileStorageMock, Duration.ofMinutes(1));
+    when(fileStorageMock.list("")).thenReturn(List.of("original/a.jpg"));
+  }
+
+  @Test
+  void get_whenNotBuilt_thenDelegated() {
+    // given
+    when(fileStorageMock.get("thumbnail/a.jpg")).thenReturn(DATA);
+    // when
+    final Resource resource = indexedFileStorage.get("thumbnail/a.jpg");
+    // then
+    assertThat(resource, is(DATA));
+  }
+
+  @Test
+  void get_whenBuiltAndAbsent_thenNotFoundWithoutStorage() {
+    // given
+    indexedFileStorage.build();
+    // when
+    assertThrows(NotFoundException.class, () -> indexedFileStorage.get("thumbnail/a.jpg"));
+    // then
+    assertThat(indexedFileStorage.isBuilt(), is(true));
+    verify(fileStorageMock, times(0)).get("thumbnail/a.jpg");
+  }
+
+  @Test
+  void get_whenPutAfterBuilt_thenDelegated() {
+    // given
+    indexedFileStorage.build();
+    when(fileStorageMock.get("thumbnail/a.jpg")).thenReturn(DATA);
+    // when
+    indexedFileStorage.put(DATA, "thumbnail/a.jpg");
+    // then
+    assertThat(indexedFileStorage.get("thumbnail/a.jpg"), is(DATA));
+  }
+
+  @Test
+  void head_whenDeletedAfterBuilt_thenNotFoundWithoutStorage() {
+    // given
+    indexedFileStorage.build();
+    when(fileStorageMock.deleteMany(List.of("original/a.jpg")))
+        .thenReturn(DeleteResult.deleted(List.of("original/a.jpg")));
+    // when
+    indexedFileStorage.deleteMany(List.of("original/a.jpg"));
+    // then
+    assertThrows(NotFoundException.class, () -> indexedFileStorage.head("original/a.jpg"));
+    verify(fileStorageMock, times(0)).head("original/a.jpg");
+    verify(fileStorageMock, times(1)).deleteMany(List.of("original/a.jpg"));
+  }
+
+  @Test
+  void get_whenPutByOtherInstanceAndRebuilt_thenDelegated() {
+    // given
+    indexedFileStorage.build();
+    when(fileStorageMock.list("")).thenReturn(List.of("original/a.jpg", "thumbnail/a.jpg"));
+    when(fileStorageMock.get("thumbnail/a.jpg")).thenReturn(DATA);
+    // when
+    indexedFileStorage.build();
+    // then
+    assertThat(indexedFileStorage.get("thumbnail/a.jpg"), is(DATA));
+  }
+
+  @Test
+  void build_whenItemsPutAndDeletedWhileListing_thenChangesMerged() {
+    // given
+    indexedFileStorage.build();
+    when(fileStorageMock.get(any())).thenReturn(DATA);
+    when(fileStorageMock.list(""))
+        .thenAnswer(
+            invocation -> {
+              indexedFileStorage.put(DATA, "thumbnail/a.jpg");
+              indexedFileStorage.deleteOne("original/a.jpg");
+              return List.of("original/a.jpg");
+            });
+    // when
+    indexedFileStorage.build();
+    // then
+    assertThat(indexedFileStorage.get("thumbnail/a.jpg"), is(DATA));
+    assertThrows(NotFoundException.class, () -> indexedFileStorage.get("original/a.jpg"));
+  }
+
+  @Test
+  void get_whenIndexOlderThanMaxAge_thenDelegated() {
+    // given
+    indexedFileStorage = new IndexedFileStorage(fileStorageMock, Duration.ZERO);
+    indexedFileStorage.build();
+    when(fileStorageMock.get("thumbnail/a.jpg")).thenReturn(DATA);
+    // when
+    final Resource resource = indexedFileStorage.get("thumbnail/a.jpg");
+    // then
+    assertThat(resource, is(DATA));
+  }
+}
@@ -0,0 +1,207 @@
+package com.edorogush.debijenkorftask.service;
+
+import com.edorogush.debijenkorftask.model.Job;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/** Tests for {@link JobRunner}. */
+class JobRunnerTest {
+  private final JobRunner jobRunner = new JobRunner(2, 2, 1, 1, 5);
+
+  @AfterEach
+  void tearDown() throws Exception {
+    jobRunner.shutdown();
+  }
+
+  @Test
+  void submit_whenItemsProcessed_thenProgressReported() throws Exception {
+    // when
+    final Job job =
+        jobRunner.submit(
+            "test",
+            List.of("done", "skip", "fail", "fail"),
+            item -> {
+              if (item.equals("fail")) {
+                throw new IllegalStateException("failed");
+              }
+              return item.equals("done");
+            });
+    awaitFinished(job);
+    // then
+    assertThat(job.getState(), is(Job.State.COMPLETED));
+    assertThat(job.getSucceeded(), is(1L));
+    assertThat(job.getSkipped(), is(1L));
+    assertThat(job.getFailed(), is(2L));
+    assertThat(job.getFailures().size(), is(1));
+    assertThat(job.getFailures().get(0).getItem(), is("fail"));
+  }
+
+  @Test
+  void cancel_whenJobRunning_thenItemsNotStartedAreLeft() throws Exception {
+    // given
+    final CountDownLatch started = new CountDownLatch(2);
+    final CountDownLatch released = new CountDownLatch(1);
+    final Job job =
+        jobRunner.submit(
+            "test",
+            List.of("1", "2", "3", "4"),
+            item -> {
+              started.countDown();
+              try {
+                released.await(5, TimeUnit.SECONDS);
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+              return true;
+            });
+    started.await(5, TimeUnit.SECONDS);
+    // when
+    jobRunner.cancel(job.getId());
+    released.countDown();
+    awaitFinished(job);
+    // then
+    assertThat(job.getState(), is(Job.State.CANCELLED));
+    assertThat(job.getSucceeded(), is(2L));
+  }
+
+  @Test
+  void submit_whenJobRunning_thenAnotherJobRunAtOnce() throws Exception {
+    // given
+    final CountDownLatch released = new CountDownLatch(1);
+    final Job blocked = jobRunner.submit("test", List.of("1"), item -> await(released));
+    // when
+    final Job job = jobRunner.submit("test", List.of("1", "2"), item -> true);
+    awaitFinished(job);
+    // then
+    assertThat(job.getState(), is(Job.State.COMPLETED));
+    assertThat(blocked.isFinished(), is(false));
+    released.countDown();
+  }
+
+  @Test
+  void shutdown_whenJobRunning_thenItemInProgressCompletedAndJobCancelled() throws Exception {
+    // given
+    final CountDownLatch started = new CountDownLatch(2);
+    final CountDownLatch released = new CountDownLatch(1);
+    final Job job =
+        jobRunner.submit(
+            "test",
+            List.of("1", "2", "3", "4"),
+            item -> {
+              started.countDown();
+              return await(released);
+            });
+    started.await(5, TimeUnit.SECONDS);
+    // when
+    final CompletableFuture<Void> shutdown =
+        CompletableFuture.runAsync(
+            () -> {
+              try {
+                jobRunner.shutdown();
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+            });
+    while (!job.isCancelRequested()) {
+      Thread.sleep(1);
+    }
+    released.countDown();
+    shutdown.get(5, TimeUnit.SECONDS);
+    // then
+    assertThat(job.getState(), is(Job.State.CANCELLED));
+    assertThat(job.getSucceeded(), is(2L));
+  }
+
+  @Test
+  void submit_whenHistoryExceeded_thenOldestFinishedJobForgotten() throws Exception {
+    // given
+    final Job first = jobRunner.submit("test", List.of("1"), item -> true);
+    awaitFinished(first);
+    final Job second = jobRunner.submit("test", List.of("1"), item -> true);
+    awaitFinished(second);
+    // when
+    final Job third = jobRunner.submit("test", List.of("1"), item -> true);
+    // then
+    assertThat(jobRunner.find(first.getId()).isPresent(), is(false));
+    assertThat(jobRunner.find(second.getId()).isPresent(), is(true));
+    assertThat(jobRunner.find(third.getId()).isPresent(), is(true));
+  }
+
+  private static boolean await(CountDownLatch latch) {
+    try {
+      return latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  private static void awaitFinished(Job job) throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + 5000;
+    while (!job.isFinished() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+  }
+
+  @Test
+  void submitBatches_whenItemsListed_thenBatchesProcessedAndFailuresReported() throws Exception {
+    // when
+    final Job job =
+        jobRunner.submitBatches(
+            "test",
+            pageConsumer -> {
+              pageConsumer.accept(List.of("1", "2", "3"));
+              pageConsumer.accept(List.of("4", "5"));
+            },
+            2,
+            items -> items.contains("5") ? Map.of("5", "failed") : Map.of());
+    awaitFinished(job);
+    // then
+    assertThat(job.getState(), is(Job.State.COMPLETED));
+    assertThat(job.getTotal(), is(5L));
+    assertThat(job.isListed(), is(true));
+    assertThat(job.getSucceeded(), is(4L));
+    assertThat(job.getFailed(), is(1L));
+    assertThat(job.getFailures().get(0).getItem(), is("5"));
+  }
+
+  @Test
+  void submitBatches_whenFirstPageListed_thenItProcessedBeforeListingEnds() throws Exception {
+    // given
+    final CountDownLatch firstPageProcessed = new CountDownLatch(1);
+    final CountDownLatch listingAllowed = new CountDownLatch(1);
+    // when
+    final Job job =
+        jobRunner.submitBatches(
+            "test",
+            pageConsumer -> {
+              pageConsumer.accept(List.of("1", "2"));
+              await(listingAllowed);
+              pageConsumer.accept(List.of("3"));
+            },
+            2,
+            items -> {
+              if (items.contains("1")) {
+                firstPageProcessed.countDown();
+              }
+              return Map.of();
+            });
+    // then
+    assertThat(await(firstPageProcessed), is(true));
+    assertThat(job.getTotal(), is(2L));
+    assertThat(job.isListed(), is(false));
+    listingAllowed.countDown();
+    awaitFinished(job);
+    assertThat(job.getTotal(), is(3L));
+    assertThat(job.getSucceeded(), is(3L));
+  }
+}
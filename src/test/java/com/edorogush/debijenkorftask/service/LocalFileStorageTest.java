@@ -0,0 +1,158 @@
+package com.edorogush.debijenkorftask.service;
+
+import com.edorogush.debijenkorftask.exception.NotFoundException;
+import com.edorogush.debijenkorftask.model.FileMetadata;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/** Tests for {@link LocalFileStorage}. */
+class LocalFileStorageTest {
+  private static final String FILE_NAME_1 = "thumbnail/abcd/efgh/abcdefghi.jpg";
+  private static final String FILE_NAME_2 = "thumbnail/c.jpg";
+  private static final byte[] DATA = {1, 2, 3, 4};
+
+  @TempDir Path rootDir;
+
+  private LocalFileStorage fileStorage;
+
+  @BeforeEach
+  void setUp() {
+    fileStorage = new LocalFileStorage(rootDir);
+  }
+
+  @Test
+  void get_whenPut_thenFileReturned() throws Exception {
+    // given
+    fileStorage.put(new ByteArrayResource(DATA), FILE_NAME_1);
+    // when
+    final Resource resource = fileStorage.get(FILE_NAME_1);
+    // then
+    assertThat(resource.isFile(), is(true));
+    try (InputStream inputStream = resource.getInputStream()) {
+      assertThat(inputStream.readAllBytes(), is(DATA));
+    }
+    try (Stream<Path> files = Files.list(rootDir.resolve("thumbnail/abcd/efgh"))) {
+      assertThat(files.count(), is(1L));
+    }
+  }
+
+  @Test
+  void get_whenPut_thenMetadataOfContentReturned() {
+    // given
+    fileStorage.put(new ByteArrayResource(DATA), FILE_NAME_1);
+    // when
+    final Resource resource = fileStorage.get(FILE_NAME_1);
+    // then
+    assertThat(resource, is(instanceOf(StoredResource.class)));
+    assertThat(((StoredResource) resource).getMetadata(), is(fileStorage.head(FILE_NAME_1)));
+    assertThat(((StoredResource) resource).getMetadata().getContentLength(), is(4L));
+  }
+
+  @Test
+  void get_whenReplacedAndDeletedAfterGet_thenPreviousContentStillRead() throws Exception {
+    // given
+    fileStorage.put(new ByteArrayResource(DATA), FILE_NAME_1);
+    final Resource resource = fileStorage.get(FILE_NAME_1);
+    // when
+    fileStorage.put(new ByteArrayResource(new byte[] {5, 6}), FILE_NAME_1);
+    fileStorage.deleteOne(FILE_NAME_1);
+    // then
+    assertThat(resource.isFile(), is(true));
+    try (InputStream inputStream = resource.getInputStream()) {
+      assertThat(inputStream.readAllBytes(), is(DATA));
+    }
+    assertThat(fileStorage.list(""), is(List.of()));
+    assertThat(fileStorage.listDirectories(""), containsInAnyOrder("thumbnail/"));
+  }
+
+  @Test
+  void put_whenFileResource_thenContentCopied() throws Exception {
+    // given
+    final Path source = Files.write(rootDir.resolve("source.jpg"), DATA);
+    // when
+    fileStorage.put(new FileSystemResource(source), FILE_NAME_2);
+    // then
+    assertThat(Files.readAllBytes(rootDir.resolve(FILE_NAME_2)), is(DATA));
+    final FileMetadata metadata = fileStorage.head(FILE_NAME_2);
+    assertThat(metadata.getETag(), is(ContentHash.of(DATA)));
+    assertThat(metadata.getContentLength(), is((long) DATA.length));
+  }
+
+  @Test
+  void getRange_whenPut_thenOnlyRangeReturned() throws Exception {
+    // given
+    fileStorage.put(new ByteArrayResource(DATA), FILE_NAME_1);
+    // when
+    final Resource range = fileStorage.getRange(FILE_NAME_1, fileStorage.head(FILE_NAME_1), 1, 2);
+    // then
+    try (InputStream inputStream = range.getInputStream()) {
+      assertThat(inputStream.readAllBytes(), is(new byte[] {2, 3}));
+    }
+  }
+
+  @Test
+  void getRange_whenReplaced_thenNotFound() {
+    // given
+    fileStorage.put(new ByteArrayResource(DATA), FILE_NAME_1);
+    final FileMetadata metadata = fileStorage.head(FILE_NAME_1);
+    // when
+    fileStorage.put(new ByteArrayResource(new byte[] {5, 6, 7, 8}), FILE_NAME_1);
+    // then
+    assertThrows(
+        NotFoundException.class, () -> fileStorage.getRange(FILE_NAME_1, metadata, 1, 2));
+  }
+
+  @Test
+  void list_whenPrefixGiven_thenOnlyMatchingReturned() {
+    // given
+    fileStorage.put(new ByteArrayResource(DATA), FILE_NAME_1);
+    fileStorage.put(new ByteArrayResource(DATA), FILE_NAME_2);
+    fileStorage.put(new ByteArrayResource(DATA), "original/c.jpg");
+    // when
+    final List<String> fileNames = fileStorage.list("thumbnail/");
+    // then
+    assertThat(fileNames, containsInAnyOrder(FILE_NAME_1, FILE_NAME_2));
+  }
+
+  @Test
+  void listDirectories_whenPrefixGiven_thenOnlyDirectoriesUnderItReturned() {
+    // given
+    fileStorage.put(new ByteArrayResource(DATA), "thumbnail/v00000000/abcd/a.jpg");
+    fileStorage.put(new ByteArrayResource(DATA), "thumbnail/v11111111/abcd/b.jpg");
+    fileStorage.put(new ByteArrayResource(DATA), "thumbnail/c.jpg");
+    // when
+    final List<String> directories = fileStorage.listDirectories("thumbnail/");
+    // then
+    assertThat(directories, containsInAnyOrder("thumbnail/v00000000/", "thumbnail/v11111111/"));
+  }
+
+  @Test
+  void get_whenDeleted_thenNotFound() {
+    // given
+    fileStorage.put(new ByteArrayResource(DATA), FILE_NAME_1);
+    // when
+    fileStorage.deleteMany(List.of(FILE_NAME_1));
+    // then
+    assertThrows(NotFoundException.class, () -> fileStorage.get(FILE_NAME_1));
+    assertThrows(NotFoundException.class, () -> fileStorage.head(FILE_NAME_1));
+    assertThrows(
+        NotFoundException.class,
+        () -> fileStorage.getRange(FILE_NAME_1, new FileMetadata("abc", 1, 4), 0, 1));
+  }
+}
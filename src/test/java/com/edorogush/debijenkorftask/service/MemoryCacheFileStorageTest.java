@@ -0,0 +1,213 @@
+package com.edorogush.debijenkorftask.service;
+
+import com.edorogush.debijenkorftask.model.FileMetadata;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/** Tests for {@link MemoryCacheFileStorage}. */
+class MemoryCacheFileStorageTest {
+  private static final String FILE_NAME_1 = "thumbnail/abc.jpg";
+  private static final String FILE_NAME_2 = "thumbnail/def.jpg";
+  private static final String FILE_NAME_3 = "thumbnail/ghi.jpg";
+
+  @Mock private FileStorage fileStorageMock;
+
+  @BeforeEach
+  void setUp() {
+    MockitoAnnotations.initMocks(this);
+    when(fileStorageMock.get(FILE_NAME_1)).thenReturn(resourceOfSize(4));
+    when(fileStorageMock.get(FILE_NAME_2)).thenReturn(resourceOfSize(4));
+    when(fileStorageMock.get(FILE_NAME_3)).thenReturn(resourceOfSize(4));
+  }
+
+  @Test
+  void get_whenRequestedTwice_thenSecondServedFromMemory() {
+    // given
+    final MemoryCacheFileStorage cache = lruCache(10, 10);
+    // when
+    cache.get(FILE_NAME_1);
+    final Resource imageActual = cache.get(FILE_NAME_1);
+    // then
+    assertThat(imageActual.exists(), is(true));
+    verify(fileStorageMock, times(1)).get(FILE_NAME_1);
+    assertThat(cache.hits(), is(1L));
+    assertThat(cache.misses(), is(1L));
+  }
+
+  @Test
+  void get_whenCapacityExceeded_thenLeastRecentlyUsedEvicted() {
+    // given
+    final MemoryCacheFileStorage cache = lruCache(8, 8);
+    // when
+    cache.get(FILE_NAME_1);
+    cache.get(FILE_NAME_2);
+    cache.get(FILE_NAME_1);
+    cache.get(FILE_NAME_3);
+    cache.get(FILE_NAME_1);
+    cache.get(FILE_NAME_2);
+    // then
+    verify(fileStorageMock, times(1)).get(FILE_NAME_1);
+    verify(fileStorageMock, times(2)).get(FILE_NAME_2);
+    assertThat(cache.evictions(), is(2L));
+    assertThat(cache.sizeBytes(), is(8L));
+  }
+
+  @Test
+  void get_whenItemTooBig_thenNotCached() {
+    // given
+    final MemoryCacheFileStorage cache = lruCache(10, 3);
+    // when
+    cache.get(FILE_NAME_1);
+    cache.get(FILE_NAME_1);
+    // then
+    verify(fileStorageMock, times(2)).get(FILE_NAME_1);
+    assertThat(cache.sizeBytes(), is(0L));
+  }
+
+  @Test
+  void deleteMany_whenItemsCached_thenInvalidated() {
+    // given
+    final MemoryCacheFileStorage cache = lruCache(10, 10);
+    cache.get(FILE_NAME_1);
+    cache.get(FILE_NAME_2);
+    // when
+    cache.deleteMany(List.of(FILE_NAME_1, FILE_NAME_2));
+    cache.get(FILE_NAME_1);
+    // then
+    verify(fileStorageMock, times(1)).deleteMany(List.of(FILE_NAME_1, FILE_NAME_2));
+    verify(fileStorageMock, times(2)).get(FILE_NAME_1);
+    assertThat(cache.sizeBytes(), is(4L));
+  }
+
+  @Test
+  void put_whenItemPut_thenServedFromMemory() {
+    // given
+    final MemoryCacheFileStorage cache = lruCache(10, 10);
+    final Resource image = resourceOfSize(4);
+    // when
+    cache.put(image, FILE_NAME_1);
+    cache.get(FILE_NAME_1);
+    // then
+    verify(fileStorageMock, times(1)).put(image, FILE_NAME_1);
+    verify(fileStorageMock, times(0)).get(FILE_NAME_1);
+  }
+
+  @Test
+  void getRange_whenItemCached_thenRangeCopiedFromMemory() throws Exception {
+    // given
+    final MemoryCacheFileStorage cache = lruCache(10, 10);
+    final FileMetadata metadata = new FileMetadata("abc", 1, 3);
+    when(fileStorageMock.get(FILE_NAME_1))
+        .thenReturn(new StoredByteArrayResource(new byte[] {1, 2, 3}, metadata));
+    cache.get(FILE_NAME_1);
+    // when
+    final Resource range = cache.getRange(FILE_NAME_1, metadata, 1, 5);
+    // then
+    assertThat(range.getInputStream().readAllBytes(), is(new byte[] {2, 3}));
+    verify(fileStorageMock, times(0)).getRange(any(), any(), anyLong(), anyLong());
+  }
+
+  @Test
+  void head_whenItemCachedWithMetadata_thenMetadataOfUnderlyingStorageFromMemory() {
+    // given
+    final MemoryCacheFileStorage cache = lruCache(10, 10);
+    final FileMetadata metadataExpected = new FileMetadata("abc", 1, 4);
+    when(fileStorageMock.get(FILE_NAME_1))
+        .thenReturn(new StoredByteArrayResource(new byte[4], metadataExpected));
+    // when
+    final Resource imageActual = cache.get(FILE_NAME_1);
+    final FileMetadata metadataActual = cache.head(FILE_NAME_1);
+    // then
+    assertThat(metadataActual, is(metadataExpected));
+    assertThat(StoredResource.metadataOf(imageActual).orElseThrow(), is(metadataExpected));
+    verify(fileStorageMock, times(0)).head(FILE_NAME_1);
+  }
+
+  @Test
+  void head_whenItemCachedWithoutMetadata_thenMetadataRequestedOnce() {
+    // given
+    final MemoryCacheFileStorage cache = lruCache(10, 10);
+    final FileMetadata metadataExpected = new FileMetadata("abc", 1, 4);
+    when(fileStorageMock.head(FILE_NAME_1)).thenReturn(metadataExpected);
+    cache.put(resourceOfSize(4), FILE_NAME_1);
+    // when
+    cache.head(FILE_NAME_1);
+    final FileMetadata metadataActual = cache.head(FILE_NAME_1);
+    // then
+    assertThat(metadataActual, is(metadataExpected));
+    assertThat(
+        StoredResource.metadataOf(cache.get(FILE_NAME_1)).orElseThrow(), is(metadataExpected));
+    verify(fileStorageMock, times(1)).head(FILE_NAME_1);
+  }
+
+  @Test
+  void get_whenTinyLfuAndNewItemRequestedRarely_thenPopularItemKept() {
+    // given
+    final MemoryCacheFileStorage cache =
+        new MemoryCacheFileStorage(fileStorageMock, new TinyLfuEvictionPolicy(16), 4, 4);
+    // when
+    cache.get(FILE_NAME_1);
+    cache.get(FILE_NAME_1);
+    cache.get(FILE_NAME_1);
+    cache.get(FILE_NAME_2);
+    cache.get(FILE_NAME_1);
+    // then
+    verify(fileStorageMock, times(1)).get(FILE_NAME_1);
+    assertThat(cache.evictions(), is(0L));
+  }
+
+  @Test
+  void get_whenTinyLfuAdmitsOnlySomeVictims_thenNothingEvicted() {
+    // given
+    final MemoryCacheFileStorage cache =
+        new MemoryCacheFileStorage(fileStorageMock, new TinyLfuEvictionPolicy(16), 8, 8);
+    when(fileStorageMock.get(FILE_NAME_3)).thenReturn(resourceOfSize(8));
+    cache.get(FILE_NAME_1);
+    cache.get(FILE_NAME_2);
+    cache.get(FILE_NAME_2);
+    cache.get(FILE_NAME_2);
+    // when
+    cache.get(FILE_NAME_3);
+    cache.get(FILE_NAME_3);
+    cache.get(FILE_NAME_1);
+    // then
+    assertThat(cache.evictions(), is(0L));
+    verify(fileStorageMock, times(1)).get(FILE_NAME_1);
+  }
+
+  @Test
+  void put_whenPreviousItemReadDuringPut_thenPreviousItemNotCached() {
+    // given
+    final MemoryCacheFileStorage cache = lruCache(10, 4);
+    doAnswer(invocation -> cache.get(FILE_NAME_1)).when(fileStorageMock).put(any(), any());
+    // when
+    cache.put(resourceOfSize(5), FILE_NAME_1);
+    cache.get(FILE_NAME_1);
+    // then
+    verify(fileStorageMock, times(2)).get(FILE_NAME_1);
+  }
+
+  private MemoryCacheFileStorage lruCache(long maxSizeBytes, long maxItemSizeBytes) {
+    return new MemoryCacheFileStorage(
+        fileStorageMock, new LruEvictionPolicy(), maxSizeBytes, maxItemSizeBytes);
+  }
+
+  private static Resource resourceOfSize(int size) {
+    return new ByteArrayResource(new byte[size]);
+  }
+}
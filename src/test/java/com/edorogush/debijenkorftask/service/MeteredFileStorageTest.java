@@ -0,0 +1,57 @@
+package com.edorogush.debijenkorftask.service;
+
+import com.edorogush.debijenkorftask.exception.NotFoundException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/** Tests for {@link MeteredFileStorage}. */
+class MeteredFileStorageTest {
+  private final FileStorage fileStorageMock = mock(FileStorage.class);
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final MeteredFileStorage meteredFileStorage =
+      new MeteredFileStorage(fileStorageMock, "amazon-s3", meterRegistry);
+
+  @Test
+  void get_whenFound_thenSuccessRecorded() {
+    // given
+    final Resource imageExpected = new ByteArrayResource(new byte[] {1, 2, 3});
+    when(fileStorageMock.get("a.jpg")).thenReturn(imageExpected);
+    // when
+    final Resource imageActual = meteredFileStorage.get("a.jpg");
+    // then
+    assertThat(imageActual, is(imageExpected));
+    assertThat(count("get", "success"), is(1L));
+  }
+
+  @Test
+  void get_whenNotFound_thenNotFoundRecordedAndRethrown() {
+    // given
+    when(fileStorageMock.get("a.jpg")).thenThrow(new NotFoundException("not found"));
+    // when
+    assertThrows(NotFoundException.class, () -> meteredFileStorage.get("a.jpg"));
+    // then
+    assertThat(count("get", "not_found"), is(1L));
+    assertThat(count("get", "success"), is(0L));
+  }
+
+  private long count(String operation, String outcome) {
+    return meterRegistry
+        .timer(
+            "image.storage.requests",
+            "storage",
+            "amazon-s3",
+            "operation",
+            operation,
+            "outcome",
+            outcome)
+        .count();
+  }
+}
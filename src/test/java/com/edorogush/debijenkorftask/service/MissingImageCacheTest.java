@@ -0,0 +1,69 @@
+package com.edorogush.debijenkorftask.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/** Tests for {@link MissingImageCache}. */
+class MissingImageCacheTest {
+  private static final Instant NOW = Instant.parse("2021-01-01T00:00:00Z");
+
+  @Test
+  void isMissing_whenTtlExpired_thenFalse() {
+    // given
+    final MutableClock clock = new MutableClock();
+    final MissingImageCache cache = new MissingImageCache(10, 10, new SimpleMeterRegistry(), clock);
+    cache.addMissing("a.jpg");
+    // when
+    clock.instant = NOW.plus(Duration.ofSeconds(11));
+    // then
+    assertThat(cache.isMissing("a.jpg"), is(false));
+    assertThat(cache.size(), is(0));
+  }
+
+  @Test
+  void addMissing_whenMaxSizeExceeded_thenOldestForgotten() {
+    // given
+    final MissingImageCache cache = cache(10, 2, NOW);
+    cache.addMissing("a.jpg");
+    cache.addMissing("b.jpg");
+    // when
+    cache.addMissing("c.jpg");
+    // then
+    assertThat(cache.isMissing("a.jpg"), is(false));
+    assertThat(cache.isMissing("b.jpg"), is(true));
+    assertThat(cache.isMissing("c.jpg"), is(true));
+  }
+
+  private static MissingImageCache cache(long ttlSeconds, int maxSize, Instant now) {
+    return new MissingImageCache(
+        ttlSeconds, maxSize, new SimpleMeterRegistry(), Clock.fixed(now, ZoneOffset.UTC));
+  }
+
+  private static final class MutableClock extends Clock {
+    private Instant instant = NOW;
+
+    @Override
+    public ZoneOffset getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      return this;
+    }
+
+    @Override
+    public Instant instant() {
+      return instant;
+    }
+  }
+}
@@ -0,0 +1,88 @@
+package com.edorogush.debijenkorftask.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/** Tests for {@link PinnedFiles}. */
+class PinnedFilesTest {
+  private static final byte[] DATA = {1, 2, 3, 4};
+
+  @TempDir Path rootDir;
+
+  @Test
+  void pin_whenFileReplaced_thenPinnedContentKept() throws Exception {
+    // given
+    final PinnedFiles pinnedFiles = new PinnedFiles(rootDir.resolve(".pinned"));
+    final Path file = Files.write(rootDir.resolve("a.jpg"), DATA);
+    final Path link = pinnedFiles.pin(file);
+    // when
+    Files.move(
+        Files.write(rootDir.resolve("b.jpg"), new byte[] {5}),
+        file,
+        StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    Files.delete(file);
+    // then
+    assertThat(Files.readAllBytes(link), is(DATA));
+  }
+
+  @Test
+  void pin_whenPinnedTwice_thenLinkReused() throws Exception {
+    // given
+    final PinnedFiles pinnedFiles = new PinnedFiles(rootDir.resolve(".pinned"));
+    final Path file = Files.write(rootDir.resolve("a.jpg"), DATA);
+    // when
+    final Path first = pinnedFiles.pin(file);
+    final Path second = pinnedFiles.pin(file);
+    // then
+    assertThat(second, is(first));
+    assertThat(pinnedFiles.size(), is(1));
+  }
+
+  @Test
+  void pin_whenRetentionElapsed_thenLinkDeleted() throws Exception {
+    // given
+    final PinnedFiles pinnedFiles = new PinnedFiles(rootDir.resolve(".pinned"), Duration.ZERO);
+    final Path first = pinnedFiles.pin(Files.write(rootDir.resolve("a.jpg"), DATA));
+    // when
+    final Path second = pinnedFiles.pin(Files.write(rootDir.resolve("b.jpg"), DATA));
+    // then
+    assertThat(Files.exists(first), is(false));
+    assertThat(second, not(first));
+    assertThat(pinnedFiles.size(), is(1));
+  }
+
+  @Test
+  void pin_whenNotRegularFile_thenNoSuchFile() throws Exception {
+    // given
+    final PinnedFiles pinnedFiles = new PinnedFiles(rootDir.resolve(".pinned"));
+    final Path file = rootDir.resolve("a.jpg");
+    // when
+    Files.createDirectory(file);
+    // then
+    assertThrows(NoSuchFileException.class, () -> pinnedFiles.pin(file));
+    assertThrows(NoSuchFileException.class, () -> pinnedFiles.pin(rootDir.resolve("b.jpg")));
+  }
+
+  @Test
+  void create_whenLinksLeftBeforeRestart_thenDeleted() throws Exception {
+    // given
+    final Path file = Files.write(rootDir.resolve("a.jpg"), DATA);
+    final Path link = new PinnedFiles(rootDir.resolve(".pinned")).pin(file);
+    // when
+    new PinnedFiles(rootDir.resolve(".pinned"));
+    // then
+    assertThat(Files.exists(link), is(false));
+  }
+}
@@ -0,0 +1,141 @@
+package com.edorogush.debijenkorftask.service;
+
+import com.edorogush.debijenkorftask.exception.ImageLoaderRequestException;
+import com.edorogush.debijenkorftask.exception.NotFoundInSourceException;
+import com.edorogush.debijenkorftask.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.jodah.failsafe.CircuitBreaker;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/** Tests for {@link ResilientImageLoader}. */
+class ResilientImageLoaderTest {
+  private static final String IMAGE_ID = "abc.jpg";
+  private MeterRegistry meterRegistry;
+
+  @Mock private ImageLoader imageLoaderMock;
+
+  @BeforeEach
+  void setUp() {
+    MockitoAnnotations.initMocks(this);
+    meterRegistry = new SimpleMeterRegistry();
+  }
+
+  @Test
+  void getImageFromSource_whenSourceFailing_thenFailFastWithoutRequest() {
+    // given
+    final ResilientImageLoader imageLoader = loader(Duration.ZERO);
+    when(imageLoaderMock.getImageFromSourceAsync(IMAGE_ID))
+        .thenReturn(CompletableFuture.failedFuture(new ImageLoaderRequestException("failed")));
+    assertThrows(
+        ImageLoaderRequestException.class, () -> imageLoader.getImageFromSource(IMAGE_ID));
+    assertThrows(
+        ImageLoaderRequestException.class, () -> imageLoader.getImageFromSource(IMAGE_ID));
+    // when
+    assertThrows(
+        ServiceUnavailableException.class, () -> imageLoader.getImageFromSource(IMAGE_ID));
+    // then
+    verify(imageLoaderMock, times(2)).getImageFromSourceAsync(IMAGE_ID);
+    assertThat(state("open"), is(1.0));
+    assertThat(
+        meterRegistry.get("image.loader.circuit-breaker.rejected").counter().count(), is(1.0));
+  }
+
+  @Test
+  void getImageFromSource_whenNotFoundInSource_thenBreakerKeptClosed() {
+    // given
+    final ResilientImageLoader imageLoader = loader(Duration.ZERO);
+    when(imageLoaderMock.getImageFromSourceAsync(IMAGE_ID))
+        .thenReturn(CompletableFuture.failedFuture(new NotFoundInSourceException("missing")));
+    // when
+    for (int i = 0; i < 3; i++) {
+      assertThrows(
+          NotFoundInSourceException.class, () -> imageLoader.getImageFromSource(IMAGE_ID));
+    }
+    // then
+    verify(imageLoaderMock, times(3)).getImageFromSourceAsync(IMAGE_ID);
+    assertThat(state("closed"), is(1.0));
+  }
+
+  @Test
+  void getImageFromSource_whenResponseSlow_thenHedgedResponseReturned() {
+    // given
+    final ResilientImageLoader imageLoader = loader(Duration.ofMillis(50));
+    final Resource imageExpected = new ByteArrayResource(new byte[] {1});
+    when(imageLoaderMock.getImageFromSourceAsync(IMAGE_ID))
+        .thenReturn(new CompletableFuture<>())
+        .thenReturn(CompletableFuture.completedFuture(imageExpected));
+    // when
+    final Resource imageActual = imageLoader.getImageFromSource(IMAGE_ID);
+    // then
+    assertThat(imageActual, is(imageExpected));
+    assertThat(meterRegistry.get("image.loader.hedged").counter().count(), is(1.0));
+  }
+
+  @Test
+  void getImageFromSource_whenHedgedResponseReturned_thenFirstRequestCancelled() {
+    // given
+    final ResilientImageLoader imageLoader = loader(Duration.ofMillis(50));
+    final Resource imageExpected = new ByteArrayResource(new byte[] {1});
+    final CompletableFuture<Resource> slowRequest = new CompletableFuture<>();
+    when(imageLoaderMock.getImageFromSourceAsync(IMAGE_ID))
+        .thenReturn(slowRequest)
+        .thenReturn(CompletableFuture.completedFuture(imageExpected));
+    // when
+    imageLoader.getImageFromSource(IMAGE_ID);
+    // then
+    assertThrows(CancellationException.class, () -> slowRequest.get(1, TimeUnit.SECONDS));
+  }
+
+  @Test
+  void getImageFromSource_whenRejectedLocally_thenNotCountedByBreaker() {
+    // given
+    final ResilientImageLoader imageLoader = loader(Duration.ZERO);
+    when(imageLoaderMock.getImageFromSourceAsync(IMAGE_ID))
+        .thenReturn(CompletableFuture.failedFuture(new ImageLoaderRequestException("failed")))
+        .thenReturn(
+            CompletableFuture.failedFuture(new ServiceUnavailableException("busy", null, 1)))
+        .thenReturn(CompletableFuture.failedFuture(new ImageLoaderRequestException("failed")));
+    assertThrows(
+        ImageLoaderRequestException.class, () -> imageLoader.getImageFromSource(IMAGE_ID));
+    // when
+    assertThrows(
+        ServiceUnavailableException.class, () -> imageLoader.getImageFromSource(IMAGE_ID));
+    // then
+    assertThat(state("closed"), is(1.0));
+    assertThrows(
+        ImageLoaderRequestException.class, () -> imageLoader.getImageFromSource(IMAGE_ID));
+    assertThat(state("open"), is(1.0));
+  }
+
+  private ResilientImageLoader loader(Duration hedgeDelay) {
+    final CircuitBreaker<Resource> circuitBreaker =
+        new CircuitBreaker<Resource>().withFailureThreshold(2).withDelay(Duration.ofMinutes(1));
+    return new ResilientImageLoader(imageLoaderMock, circuitBreaker, hedgeDelay, meterRegistry);
+  }
+
+  private double state(String state) {
+    return meterRegistry
+        .get("image.loader.circuit-breaker.state")
+        .tag("state", state)
+        .gauge()
+        .value();
+  }
+}
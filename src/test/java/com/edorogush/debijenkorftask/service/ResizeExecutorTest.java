@@ -0,0 +1,119 @@
+package com.edorogush.debijenkorftask.service;
+
+import com.edorogush.debijenkorftask.exception.ImageProcessingException;
+import com.edorogush.debijenkorftask.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/** Tests for {@link ResizeExecutor}. */
+class ResizeExecutorTest {
+  private MeterRegistry meterRegistry;
+  private ResizeExecutor resizeExecutor;
+  private ExecutorService callers;
+
+  @BeforeEach
+  void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+    resizeExecutor = new ResizeExecutor(1, 1, 1, 5, meterRegistry);
+    callers = Executors.newFixedThreadPool(3);
+  }
+
+  @AfterEach
+  void tearDown() {
+    callers.shutdownNow();
+    resizeExecutor.shutdown();
+  }
+
+  @Test
+  void execute_whenTaskSucceeded_thenReturnResult() {
+    assertThat(resizeExecutor.execute(() -> "image"), is("image"));
+  }
+
+  @Test
+  void execute_whenTaskFailed_thenThrowSameException() {
+    assertThrows(
+        ImageProcessingException.class,
+        () ->
+            resizeExecutor.execute(
+                () -> {
+                  throw new ImageProcessingException("failed", null);
+                }));
+  }
+
+  @Test
+  void execute_whenQueueFull_thenThrowServiceUnavailableException() throws Exception {
+    // given
+    final CountDownLatch taskStarted = new CountDownLatch(1);
+    final CompletableFuture<String> taskAllowed = new CompletableFuture<>();
+    callers.submit(
+        () ->
+            resizeExecutor.execute(
+                () -> {
+                  taskStarted.countDown();
+                  return taskAllowed.join();
+                }));
+    taskStarted.await(1, TimeUnit.SECONDS);
+    callers.submit(() -> resizeExecutor.execute(taskAllowed::join));
+    while (meterRegistry.get("image.resize.queue.size").gauge().value() < 1) {
+      Thread.sleep(1);
+    }
+    // when
+    final ServiceUnavailableException exception =
+        assertThrows(ServiceUnavailableException.class, () -> resizeExecutor.execute(() -> ""));
+    taskAllowed.complete("image");
+    // then
+    assertThat(exception.getRetryAfterSeconds(), is(5L));
+    assertThat(meterRegistry.get("image.resize.rejected").counter().count(), is(1.0));
+  }
+
+  @Test
+  void executeInBackground_whenBackgroundTaskRunning_thenQueueLeftForClients() throws Exception {
+    // given
+    resizeExecutor.shutdown();
+    // room for the background task after the client's one completes while it is still queued
+    meterRegistry = new SimpleMeterRegistry();
+    resizeExecutor = new ResizeExecutor(1, 2, 1, 5, meterRegistry);
+    final CountDownLatch taskStarted = new CountDownLatch(1);
+    final CompletableFuture<String> taskAllowed = new CompletableFuture<>();
+    callers.submit(
+        () ->
+            resizeExecutor.executeInBackground(
+                () -> {
+                  taskStarted.countDown();
+                  return taskAllowed.join();
+                }));
+    taskStarted.await(1, TimeUnit.SECONDS);
+    final Future<String> waitingTask =
+        callers.submit(() -> resizeExecutor.executeInBackground(() -> "background"));
+    // when
+    final Future<String> clientTask = callers.submit(() -> resizeExecutor.execute(() -> "client"));
+    while (queueSize() < 1) {
+      Thread.sleep(1);
+    }
+    final double queueSize = queueSize();
+    taskAllowed.complete("image");
+    // then
+    assertThat(queueSize, is(1.0));
+    assertThat(clientTask.get(1, TimeUnit.SECONDS), is("client"));
+    assertThat(waitingTask.get(1, TimeUnit.SECONDS), is("background"));
+    assertThat(meterRegistry.get("image.resize.rejected").counter().count(), is(0.0));
+  }
+
+  private double queueSize() {
+    return meterRegistry.get("image.resize.queue.size").gauge().value();
+  }
+}
@@ -0,0 +1,131 @@
+package com.edorogush.debijenkorftask.service;
+
+import com.edorogush.debijenkorftask.exception.NotFoundInSourceException;
+import com.edorogush.debijenkorftask.exception.ServiceUnavailableException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/** Tests for {@link SingleFlight}. */
+class SingleFlightTest {
+  private static final String KEY = "thumbnail/abc.jpg";
+  private ExecutorService executor;
+  private CountDownLatch leaderStarted;
+  private CompletableFuture<String> leaderResult;
+
+  @BeforeEach
+  void setUp() {
+    executor = Executors.newSingleThreadExecutor();
+    leaderStarted = new CountDownLatch(1);
+    leaderResult = new CompletableFuture<>();
+  }
+
+  @AfterEach
+  void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  void execute_whenSameKeyInFlight_thenWaiterReceivesLeaderResult() throws Exception {
+    // given
+    final SingleFlight<String> singleFlight = new SingleFlight<>(Duration.ofSeconds(1));
+    final CompletableFuture<String> waiterResult = new CompletableFuture<>();
+    // when
+    final Future<String> leader = executor.submit(() -> singleFlight.execute(KEY, this::lead));
+    leaderStarted.await(1, TimeUnit.SECONDS);
+    final Thread waiter =
+        startWaiter(() -> waiterResult.complete(singleFlight.execute(KEY, () -> "not expected")));
+    leaderResult.complete("image");
+    waiter.join(1000);
+    // then
+    assertThat(leader.get(1, TimeUnit.SECONDS), is("image"));
+    assertThat(waiterResult.get(1, TimeUnit.SECONDS), is("image"));
+  }
+
+  @Test
+  void execute_whenLeaderFailed_thenWaiterReceivesSameException() throws Exception {
+    // given
+    final SingleFlight<String> singleFlight = new SingleFlight<>(Duration.ofSeconds(1));
+    final CompletableFuture<String> waiterResult = new CompletableFuture<>();
+    // when
+    final Future<String> leader = executor.submit(() -> singleFlight.execute(KEY, this::lead));
+    leaderStarted.await(1, TimeUnit.SECONDS);
+    final Thread waiter =
+        startWaiter(
+            () -> {
+              try {
+                waiterResult.complete(singleFlight.execute(KEY, () -> "not expected"));
+              } catch (RuntimeException e) {
+                waiterResult.completeExceptionally(e);
+              }
+            });
+    leaderResult.completeExceptionally(new NotFoundInSourceException("not found"));
+    waiter.join(1000);
+    // then
+    final ExecutionException leaderException =
+        assertThrows(ExecutionException.class, () -> leader.get(1, TimeUnit.SECONDS));
+    final ExecutionException waiterException =
+        assertThrows(ExecutionException.class, () -> waiterResult.get(1, TimeUnit.SECONDS));
+    assertThat(leaderException.getCause(), instanceOf(NotFoundInSourceException.class));
+    assertThat(waiterException.getCause(), instanceOf(NotFoundInSourceException.class));
+  }
+
+  @Test
+  void execute_whenLeaderTooSlow_thenThrowServiceUnavailableException() throws Exception {
+    // given
+    final SingleFlight<String> singleFlight = new SingleFlight<>(Duration.ofMillis(10));
+    // when
+    executor.submit(() -> singleFlight.execute(KEY, this::lead));
+    leaderStarted.await(1, TimeUnit.SECONDS);
+    // then
+    assertThrows(
+        ServiceUnavailableException.class,
+        () -> singleFlight.execute(KEY, () -> "not expected"));
+    leaderResult.complete("image");
+  }
+
+  @Test
+  void execute_whenPreviousCallFinished_thenTaskExecutedAgain() {
+    // given
+    final SingleFlight<String> singleFlight = new SingleFlight<>(Duration.ofSeconds(1));
+    // when
+    singleFlight.execute(KEY, () -> "first");
+    final String result = singleFlight.execute(KEY, () -> "second");
+    // then
+    assertThat(result, is("second"));
+  }
+
+  private String lead() {
+    leaderStarted.countDown();
+    try {
+      return leaderResult.join();
+    } catch (CompletionException e) {
+      throw (RuntimeException) e.getCause();
+    }
+  }
+
+  /** Starts {@code task} in a new thread and returns once the thread waits for the leader. */
+  private static Thread startWaiter(Runnable task) throws InterruptedException {
+    final Thread thread = new Thread(task);
+    thread.start();
+    while (thread.getState() != Thread.State.TIMED_WAITING && thread.isAlive()) {
+      Thread.sleep(1);
+    }
+    return thread;
+  }
+}
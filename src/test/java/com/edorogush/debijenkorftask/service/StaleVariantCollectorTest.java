@@ -0,0 +1,99 @@
+package com.edorogush.debijenkorftask.service;
+
+import com.edorogush.debijenkorftask.model.Job;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/** Tests for {@link StaleVariantCollector}. */
+class StaleVariantCollectorTest {
+  @Mock ImageService imageServiceMock;
+
+  @Mock ImageProcessor imageProcessorMock;
+
+  @Mock JobRunner jobRunnerMock;
+
+  @BeforeEach
+  void setUp() {
+    MockitoAnnotations.initMocks(this);
+    when(imageProcessorMock.imageTypes()).thenReturn(List.of("thumbnail", "icon"));
+    when(imageServiceMock.listStaleDirectories("thumbnail"))
+        .thenReturn(List.of("thumbnail/v00000000/"));
+    when(imageServiceMock.listStaleDirectories("icon")).thenReturn(List.of("icon/v00000000/"));
+  }
+
+  @Test
+  void collect_whenPreviousJobRunning_thenTypeSkipped() {
+    // given
+    final StaleVariantCollector collector =
+        new StaleVariantCollector(imageServiceMock, imageProcessorMock, jobRunnerMock, true, 0);
+    final Job finished = new Job("1", StaleVariantCollector.JOB_TYPE, 0, 1);
+    finished.start();
+    finished.finish();
+    when(jobRunnerMock.submitBatches(
+            eq(StaleVariantCollector.JOB_TYPE),
+            any(),
+            eq(StaleVariantCollector.BATCH_SIZE),
+            any()))
+        .thenReturn(new Job("2", StaleVariantCollector.JOB_TYPE, 0, 1), finished);
+    // when
+    collector.collect();
+    collector.collect();
+    // then
+    verify(jobRunnerMock, times(3))
+        .submitBatches(
+            eq(StaleVariantCollector.JOB_TYPE),
+            any(),
+            eq(StaleVariantCollector.BATCH_SIZE),
+            any());
+  }
+
+  @Test
+  void collect_whenGracePeriodNotElapsed_thenNothingSubmitted() {
+    // given
+    final StaleVariantCollector collector =
+        new StaleVariantCollector(
+            imageServiceMock, imageProcessorMock, jobRunnerMock, true, 60_000);
+    // when
+    collector.collect();
+    collector.collect();
+    // then
+    verify(imageServiceMock, times(2)).listStaleDirectories("thumbnail");
+    verify(jobRunnerMock, times(0))
+        .submitBatches(any(), any(), eq(StaleVariantCollector.BATCH_SIZE), any());
+  }
+
+  @Test
+  void collect_whenNothingStale_thenNothingSubmitted() {
+    // given
+    final StaleVariantCollector collector =
+        new StaleVariantCollector(imageServiceMock, imageProcessorMock, jobRunnerMock, true, 0);
+    when(imageServiceMock.listStaleDirectories(any())).thenReturn(List.of());
+    // when
+    collector.collect();
+    // then
+    verify(jobRunnerMock, times(0))
+        .submitBatches(any(), any(), eq(StaleVariantCollector.BATCH_SIZE), any());
+  }
+
+  @Test
+  void collect_whenDisabled_thenNothingSubmitted() {
+    // given
+    final StaleVariantCollector collector =
+        new StaleVariantCollector(imageServiceMock, imageProcessorMock, jobRunnerMock, false, 0);
+    // when
+    collector.collect();
+    // then
+    verify(jobRunnerMock, times(0))
+        .submitBatches(any(), any(), eq(StaleVariantCollector.BATCH_SIZE), any());
+  }
+}
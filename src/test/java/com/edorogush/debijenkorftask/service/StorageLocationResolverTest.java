@@ -2,6 +2,8 @@ package com.edorogush.debijenkorftask.service;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.Optional;
+
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
 
@@ -40,4 +42,20 @@ class StorageLocationResolverTest {
     final String locationExpected = "/abcd/efgh/";
     assertThat(locationActual4Symbols, is(locationExpected));
   }
+
+  @Test
+  void resolvePrefix_whenPrefixCoversFolders_thenTwoFolders() {
+    // when
+    final Optional<String> locationActual = StorageLocationResolver.resolvePrefix("abcdefghi");
+    // then
+    assertThat(locationActual, is(Optional.of("/abcd/efgh/")));
+  }
+
+  @Test
+  void resolvePrefix_whenPrefixCutByExtension_thenEmpty() {
+    // when
+    final Optional<String> locationActual = StorageLocationResolver.resolvePrefix("abcdefgh.jpg");
+    // then
+    assertThat(locationActual, is(Optional.empty()));
+  }
 }
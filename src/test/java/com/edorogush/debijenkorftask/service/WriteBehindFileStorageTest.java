@@ -0,0 +1,183 @@
+package com.edorogush.debijenkorftask.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/** Tests for {@link WriteBehindFileStorage}. */
+class WriteBehindFileStorageTest {
+  private static final String FILE_NAME_1 = "thumbnail/abc.jpg";
+  private static final String FILE_NAME_2 = "thumbnail/def.jpg";
+
+  @Mock private FileStorage fileStorageMock;
+  private final CountDownLatch uploadAllowed = new CountDownLatch(1);
+  private final WriteBehindUploader uploader =
+      new WriteBehindUploader(1, 10, 5, 1, new SimpleMeterRegistry());
+  private WriteBehindFileStorage writeBehind;
+
+  @BeforeEach
+  void setUp() {
+    MockitoAnnotations.initMocks(this);
+    doAnswer(
+            invocation -> {
+              uploadAllowed.await();
+              return null;
+            })
+        .when(fileStorageMock)
+        .put(any(), any());
+    writeBehind = new WriteBehindFileStorage(fileStorageMock, uploader);
+  }
+
+  @Test
+  void put_whenUploadNotFinished_thenItemServedFromMemory() throws Exception {
+    // given
+    final Resource image = new ByteArrayResource(new byte[] {1, 2, 3});
+    // when
+    writeBehind.put(image, FILE_NAME_1);
+    final Resource imageActual = writeBehind.get(FILE_NAME_1);
+    uploadAllowed.countDown();
+    uploader.drain();
+    // then
+    assertThat(imageActual, is(sameInstance(image)));
+    verify(fileStorageMock, never()).get(FILE_NAME_1);
+    verify(fileStorageMock).put(image, FILE_NAME_1);
+  }
+
+  @Test
+  void put_whenOnlyBackgroundPutsDeferred_thenPendingUploadReplacedByCaller() throws Exception {
+    // given
+    writeBehind = new WriteBehindFileStorage(fileStorageMock, uploader, false);
+    final Resource variant = new ByteArrayResource(new byte[] {1});
+    final Resource image = new ByteArrayResource(new byte[] {2});
+    final CountDownLatch uploaderReleased = new CountDownLatch(1);
+    uploadAllowed.countDown();
+    uploader.submit(FILE_NAME_2, 0, () -> awaitQuietly(uploaderReleased));
+    writeBehind.putInBackground(variant, FILE_NAME_1);
+    final Resource variantActual = writeBehind.get(FILE_NAME_1);
+    // when
+    writeBehind.put(image, FILE_NAME_1);
+    uploaderReleased.countDown();
+    uploader.drain();
+    // then
+    assertThat(variantActual, is(sameInstance(variant)));
+    verify(fileStorageMock).put(image, FILE_NAME_1);
+    verify(fileStorageMock, never()).put(variant, FILE_NAME_1);
+  }
+
+  @Test
+  void deleteOne_whenUploadQueued_thenUploadCancelled() throws Exception {
+    // given
+    writeBehind.put(new ByteArrayResource(new byte[] {1}), FILE_NAME_1);
+    writeBehind.put(new ByteArrayResource(new byte[] {2}), FILE_NAME_2);
+    // when
+    writeBehind.deleteOne(FILE_NAME_2);
+    uploadAllowed.countDown();
+    uploader.drain();
+    // then
+    verify(fileStorageMock).put(any(), eq(FILE_NAME_1));
+    verify(fileStorageMock, never()).put(any(), eq(FILE_NAME_2));
+    verify(fileStorageMock).deleteOne(FILE_NAME_2);
+  }
+
+  @Test
+  void put_whenUploadFailed_thenItemRequestedFromStorage() throws Exception {
+    // given
+    final Resource stored = new ByteArrayResource(new byte[] {4});
+    doThrow(new RuntimeException("upload failed")).when(fileStorageMock).put(any(), any());
+    when(fileStorageMock.get(FILE_NAME_1)).thenReturn(stored);
+    // when
+    writeBehind.put(new ByteArrayResource(new byte[] {1}), FILE_NAME_1);
+    uploader.drain();
+    // then
+    assertThat(writeBehind.get(FILE_NAME_1), is(sameInstance(stored)));
+  }
+
+  @Test
+  void put_whenUploaderShutDown_thenItemPutByCaller() throws Exception {
+    // given
+    final Resource image = new ByteArrayResource(new byte[] {1});
+    uploadAllowed.countDown();
+    uploader.drain();
+    // when
+    writeBehind.put(image, FILE_NAME_1);
+    // then
+    verify(fileStorageMock).put(image, FILE_NAME_1);
+    when(fileStorageMock.get(FILE_NAME_1)).thenReturn(image);
+    writeBehind.get(FILE_NAME_1);
+    verify(fileStorageMock).get(FILE_NAME_1);
+  }
+
+  @Test
+  void put_whenPendingSizeExceeded_thenItemPutByCaller() throws Exception {
+    // given
+    final Resource image = new ByteArrayResource(new byte[1024 * 1024 + 1]);
+    uploadAllowed.countDown();
+    // when
+    writeBehind.put(image, FILE_NAME_1);
+    // then
+    verify(fileStorageMock).put(image, FILE_NAME_1);
+    uploader.drain();
+  }
+
+  @Test
+  void put_whenPreviousUploadStarted_thenNewUploadStartedAfterItFinished() throws Exception {
+    // given
+    final WriteBehindUploader twoThreadUploader =
+        new WriteBehindUploader(2, 10, 5, 1, new SimpleMeterRegistry());
+    final WriteBehindFileStorage storage =
+        new WriteBehindFileStorage(fileStorageMock, twoThreadUploader);
+    final Resource first = new ByteArrayResource(new byte[] {1});
+    final Resource second = new ByteArrayResource(new byte[] {2});
+    final CountDownLatch firstStarted = new CountDownLatch(1);
+    final List<Resource> stored = new CopyOnWriteArrayList<>();
+    doAnswer(
+            invocation -> {
+              firstStarted.countDown();
+              uploadAllowed.await();
+              stored.add(first);
+              return null;
+            })
+        .when(fileStorageMock)
+        .put(first, FILE_NAME_1);
+    doAnswer(invocation -> stored.add(second)).when(fileStorageMock).put(second, FILE_NAME_1);
+    storage.put(first, FILE_NAME_1);
+    firstStarted.await();
+    // when
+    storage.put(second, FILE_NAME_1);
+    // then
+    assertThat(storage.get(FILE_NAME_1), is(sameInstance(second)));
+    verify(fileStorageMock, after(200).never()).put(second, FILE_NAME_1);
+    uploadAllowed.countDown();
+    twoThreadUploader.drain();
+    assertThat(stored, is(List.of(first, second)));
+  }
+
+  private static void awaitQuietly(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}